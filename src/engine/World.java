@@ -1,25 +1,36 @@
 package engine;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import engine.entity.Entity;
+import engine.entity.SpatialHash;
 import engine.model.Mesh;
 import engine.model.Texture;
 import engine.render.light.Light;
+import engine.util.math.Transform;
 import engine.voxel.VoxelGrid;
 
 public class World {
 	
+	/** The width of each cell of the spatial index. */
+	private static final float CELL_SIZE = 8.0F;
+	
 	private Optional<VoxelGrid> voxels = Optional.empty();
 	
 	private Set<Entity> entities = new HashSet<>();
+	
+	//Transforms compare by value, so they are kept by identity.
+	private Set<Transform> transforms = Collections.newSetFromMap(new IdentityHashMap<>());
 	private Map<Mesh, Map<Texture, Set<Entity>>> indexedEntities = new HashMap<>();
+	private SpatialHash spatialIndex = new SpatialHash(CELL_SIZE);
 	
 	private List<Light> lights = new ArrayList<>();
 	
@@ -27,6 +38,29 @@ public class World {
 		return indexedEntities;
 	}
 	
+	/**
+	 * Returns the spatial index of every entity in this world, for proximity queries.
+	 */
+	public SpatialHash getSpatialIndex() { return spatialIndex; }
+	
+	/**
+	 * Re-indexes every entity at its current position.
+	 * Only needed for entities moved other than by Entity.move(), such as by setting their transform.
+	 */
+	public void updateSpatialIndex() {
+		for(Entity entity : entities) spatialIndex.update(entity);
+	}
+	
+	/**
+	 * Brings the world matrix of every entity up to date, along with anything attached to them,
+	 * skipping those which haven't moved. Separate hierarchies are updated in parallel.
+	 */
+	public void updateTransforms() {
+		Transform.updateAll(transforms);
+	}
+	
+	public Optional<VoxelGrid> getVoxelGrid() { return voxels; }
+	
 	public void setVoxelGrid(VoxelGrid voxels) {
 		this.voxels = Optional.of(voxels);
 	}
@@ -34,6 +68,8 @@ public class World {
 	public void addEntity(Entity entity) {
 		
 		entities.add(entity);
+		transforms.add(entity.getTransform());
+		spatialIndex.add(entity);
 		
 		Mesh mesh = entity.getModel().getMesh();
 		Texture texture = entity.getModel().getMaterial().getTexture();
@@ -54,6 +90,8 @@ public class World {
 	public void removeEntity(Entity entity) {
 		
 		entities.remove(entity);
+		transforms.remove(entity.getTransform());
+		spatialIndex.remove(entity);
 		
 		Mesh mesh = entity.getModel().getMesh();
 		Texture texture = entity.getModel().getMaterial().getTexture();
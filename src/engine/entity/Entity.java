@@ -1,8 +1,14 @@
 package engine.entity;
 
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
 import engine.World;
 import engine.model.Model;
+import engine.util.math.AABB;
 import engine.util.math.Transform;
+import engine.voxel.VoxelCollider;
 
 public abstract class Entity {
 	
@@ -12,6 +18,26 @@ public abstract class Entity {
 	
 	private Model model;
 	
+	/** Half the size of the bounding box along each axis, centred on the position. */
+	private float halfWidth = 0.5F, halfDepth = 0.5F, halfHeight = 0.5F;
+	
+	/** The tallest obstacle this entity can step up onto while moving. */
+	private float stepHeight = 0.0F;
+	
+	private boolean onGround = false;
+	
+	/** Reused for the bounding box and motion, to avoid allocating every tick. */
+	private final AABB bounds = new AABB();
+	private final Vector3f position = new Vector3f(), motion = new Vector3f();
+	
+	/** Reused to convert motion into the space of the parent transformation, if there is one. */
+	private final Matrix4f parentInverse = new Matrix4f();
+	private final Vector4f parentMotion = new Vector4f();
+	
+	/** The cell of the world's spatial index containing this entity, see SpatialHash. */
+	long spatialCell;
+	boolean indexed = false;
+	
 	public Entity(World world, Model model) {
 		this(world, model, new Transform());
 	}
@@ -19,13 +45,78 @@ public abstract class Entity {
 	public Entity(World world, Model model, Transform transform) {
 		this.world = world;
 		this.model = model;
-		world.addEntity(this);
 		transf.loadTransformation(transform);
+		world.addEntity(this);
 	}
 	
 	public Model getModel() { return model; }
 	
 	public Transform getTransform() { return transf; }
 	
+	public World getWorld() { return world; }
+	
+	/**
+	 * Returns the bounding box of this entity at its current position in world space,
+	 * which differs from its local position if its transformation has a parent.
+	 * The same box is updated and returned on every call.
+	 */
+	public AABB getBounds() {
+		transf.getWorldPosition(position);
+		return bounds.setCentred(position.x, position.y, position.z, halfWidth, halfDepth, halfHeight);
+	}
+	
+	/**
+	 * Sets the size of the bounding box of this entity, along x, y and z respectively.
+	 */
+	public void setSize(float width, float depth, float height) {
+		halfWidth = width / 2;
+		halfDepth = depth / 2;
+		halfHeight = height / 2;
+	}
+	
+	public float getStepHeight() { return stepHeight; }
+	
+	public void setStepHeight(float stepHeight) { this.stepHeight = stepHeight; }
+	
+	/**
+	 * Returns whether this entity was resting on a solid block after it last moved.
+	 */
+	public boolean isOnGround() { return onGround; }
+	
+	/**
+	 * Moves this entity by the given amount in world space,
+	 * sliding along (and stepping up onto) any solid blocks in the way.
+	 * @return a combination of the VoxelCollider.COLLIDED_* flags.
+	 */
+	public int move(float dx, float dy, float dz) {
+		
+		int collided = 0;
+		
+		if(world.getVoxelGrid().isPresent()) {
+			
+			VoxelCollider collider = world.getVoxelGrid().get().getCollider();
+			collided = collider.move(getBounds(), dx, dy, dz, stepHeight);
+			dx = collider.getMovedX();
+			dy = collider.getMovedY();
+			dz = collider.getMovedZ();
+			onGround = collider.isOnGround();
+		}
+		
+		//The motion is in world space, but the transformation is relative to its parent.
+		Transform parent = transf.getParent();
+		if(parent != null) {
+			
+			Matrix4f.invert(parent.getWorldMatrix(parentInverse), parentInverse);
+			parentMotion.set(dx, dy, dz, 0.0F);
+			Matrix4f.transform(parentInverse, parentMotion, parentMotion);
+			motion.set(parentMotion.x, parentMotion.y, parentMotion.z);
+		
+		} else motion.set(dx, dy, dz);
+		
+		transf.Translate(motion);
+		world.getSpatialIndex().update(this);
+		return collided;
+	}
+	
 	public void delete() { world.removeEntity(this); }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import org.lwjgl.util.vector.Vector3f;
 
 import engine.World;
 import engine.event.Event;
+import engine.event.EventQueue;
 import engine.event.input.InputEvent.KeyboardEvent.KeyHoldEvent;
 import engine.event.input.InputEvent.MouseEvent.MouseMoveEvent;
 import engine.model.Material;
@@ -23,32 +24,49 @@ public class LocalPlayer extends Entity {
 	
 	private static final float MOVE_SPEED = 0.5F;
 	
+	private static final float STEP_HEIGHT = 0.5F;
+	
+	/** Reused to convert movement into world space. */
+	private final Vector3f direction = new Vector3f();
+	
 	public LocalPlayer(World world) {
 		
 		super(world, MODEL);
+		setStepHeight(STEP_HEIGHT);
 		
 		Event.addHandler(KeyHoldEvent.class, e -> {
-			switch(e.KEY_NAME) {
+			switch(e.getKeyName()) {
 				case "W":
-					getTransform().translate(new Vector3f(0.0F, MOVE_SPEED, 0.0F)); break;
+					walk(0.0F, MOVE_SPEED); break;
 				case "A":
-					getTransform().translate(new Vector3f(-MOVE_SPEED, 0.0F, 0.0F)); break;
+					walk(-MOVE_SPEED, 0.0F); break;
 				case "S":
-					getTransform().translate(new Vector3f(0.0F, -MOVE_SPEED, 0.0F)); break;
+					walk(0.0F, -MOVE_SPEED); break;
 				case "D":
-					getTransform().translate(new Vector3f(MOVE_SPEED, 0.0F, 0.0F)); break;
+					walk(MOVE_SPEED, 0.0F); break;
 				case "F":
 					getTransform().loadMatrix(Matrix.remRotation(getTransform().asMatrix()));
 			}
 		});
 		
-		Event.addHandler(MouseMoveEvent.class, e -> {
+		//Turned on the tick thread rather than the input thread, at most once per tick.
+		Event.addHandler(MouseMoveEvent.class, EventQueue.TICK, e -> {
 			int cx = Display.getWidth() / 2;
 			int cy = Display.getHeight() / 2;
-			int rx = e.MOUSE_X - cx;
-			int ry = e.MOUSE_Y - cy;
+			int rx = e.getMouseX() - cx;
+			int ry = e.getMouseY() - cy;
 			float a = (float) (180 / Math.PI * Math.atan2(ry, rx)) - 90.0F;
 			getTransform().setOrientation(new Vector3f(0.0F, 0.0F, a));
 		});
 	}
+	
+	/**
+	 * Moves relative to the direction the player is facing, colliding with the voxel grid.
+	 */
+	private void walk(float x, float y) {
+		
+		direction.set(x, y, 0.0F);
+		getTransform().toGlobal(direction, direction);
+		move(direction.x, direction.y, direction.z);
+	}
 }
\ No newline at end of file
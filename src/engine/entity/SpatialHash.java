@@ -0,0 +1,326 @@
+package engine.entity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import engine.util.math.AABB;
+
+/**
+ * A spatial index of entities, bucketing each entity by the cell of a uniform grid
+ * containing its position. Supports radius, box and k-nearest queries which only
+ * examine the cells near the query, rather than every entity in the world.
+ * Entities must be re-indexed with update() whenever they move; Entity.move() does so.
+ * Not thread safe; should only be used by the game-tick thread.
+ * @author Alec
+ */
+public class SpatialHash {
+	
+	private final float cellSize;
+	
+	/** Entities in each occupied cell, by packed cell coordinates. */
+	private final Map<Long, List<Entity>> cells = new HashMap<>();
+	
+	private int size = 0;
+	
+	/** The largest half-extent of any entity added, used to widen box queries. */
+	private float maxHalfExtent = 0;
+	
+	/**
+	 * The k nearest entities found so far by queryNearest(), as a binary max-heap
+	 * on their squared distances. Kept between queries to avoid allocating.
+	 */
+	private Entity[] heap = new Entity[8];
+	private float[] heapDistances = new float[8];
+	private int heapSize = 0;
+	
+	/**
+	 * @param cellSize the width of each cell, ideally around the typical query radius.
+	 */
+	public SpatialHash(float cellSize) {
+		
+		if(cellSize <= 0) throw new IllegalArgumentException("Cell size must be positive.");
+		this.cellSize = cellSize;
+	}
+	
+	/**
+	 * Adds an entity to the index, at its current position.
+	 */
+	public void add(Entity entity) {
+		
+		AABB bounds = entity.getBounds();
+		long cell = cellOf(bounds.getCentreX(), bounds.getCentreY(), bounds.getCentreZ());
+		
+		cells.computeIfAbsent(cell, c -> new ArrayList<>(4)).add(entity);
+		entity.spatialCell = cell;
+		entity.indexed = true;
+		size++;
+		
+		widen(bounds);
+	}
+	
+	/**
+	 * Removes an entity from the index.
+	 */
+	public void remove(Entity entity) {
+		
+		if(!entity.indexed) return;
+		
+		removeFromCell(entity, entity.spatialCell);
+		entity.indexed = false;
+		size--;
+	}
+	
+	/**
+	 * Moves an entity to the cell containing its current position, if it has changed.
+	 * Cheap if the entity is still in the same cell.
+	 */
+	public void update(Entity entity) {
+		
+		if(!entity.indexed) return;
+		
+		AABB bounds = entity.getBounds();
+		long cell = cellOf(bounds.getCentreX(), bounds.getCentreY(), bounds.getCentreZ());
+		widen(bounds);
+		
+		if(cell != entity.spatialCell) {
+			removeFromCell(entity, entity.spatialCell);
+			cells.computeIfAbsent(cell, c -> new ArrayList<>(4)).add(entity);
+			entity.spatialCell = cell;
+		}
+	}
+	
+	/**
+	 * Finds every entity whose position is within the given distance of a point.
+	 * @param out the list to which the entities are added.
+	 * @return out.
+	 */
+	public List<Entity> queryRadius(float x, float y, float z, float radius, List<Entity> out) {
+		
+		float r2 = radius * radius;
+		int x0 = cell(x - radius), x1 = cell(x + radius);
+		int y0 = cell(y - radius), y1 = cell(y + radius);
+		int z0 = cell(z - radius), z1 = cell(z + radius);
+		
+		for(int cx = x0; cx <= x1; cx++) {
+			for(int cy = y0; cy <= y1; cy++) {
+				for(int cz = z0; cz <= z1; cz++) {
+					
+					List<Entity> entities = cells.get(key(cx, cy, cz));
+					if(entities == null) continue;
+					
+					for(Entity entity : entities) {
+						if(distanceSquared(entity, x, y, z) <= r2) out.add(entity);
+					}
+				}
+			}
+		}
+		return out;
+	}
+	
+	/**
+	 * Finds every entity whose bounding box intersects the given box.
+	 * @param out the list to which the entities are added.
+	 * @return out.
+	 */
+	public List<Entity> queryBox(AABB box, List<Entity> out) {
+		
+		//Entities are indexed by their centre, so look slightly further out.
+		float m = maxHalfExtent;
+		int x0 = cell(box.getMinX() - m), x1 = cell(box.getMaxX() + m);
+		int y0 = cell(box.getMinY() - m), y1 = cell(box.getMaxY() + m);
+		int z0 = cell(box.getMinZ() - m), z1 = cell(box.getMaxZ() + m);
+		
+		for(int cx = x0; cx <= x1; cx++) {
+			for(int cy = y0; cy <= y1; cy++) {
+				for(int cz = z0; cz <= z1; cz++) {
+					
+					List<Entity> entities = cells.get(key(cx, cy, cz));
+					if(entities == null) continue;
+					
+					for(Entity entity : entities) {
+						if(entity.getBounds().intersects(box)) out.add(entity);
+					}
+				}
+			}
+		}
+		return out;
+	}
+	
+	/**
+	 * Finds the k entities whose positions are nearest to a point, nearest first.
+	 * Searches outwards one shell of cells at a time, stopping as soon as
+	 * no unexamined cell could contain anything nearer. Should the search reach
+	 * more cells than there are entities (such as when they are few or far away),
+	 * every entity is examined directly instead.
+	 * @param out the list to which the entities are added.
+	 * @return out.
+	 */
+	public List<Entity> queryNearest(float x, float y, float z, int k, List<Entity> out) {
+		
+		if(k <= 0 || size == 0) return out;
+		
+		k = Math.min(k, size);
+		if(heap.length < k) {
+			heap = new Entity[k];
+			heapDistances = new float[k];
+		}
+		heapSize = 0;
+		
+		int cx = cell(x), cy = cell(y), cz = cell(z);
+		int seen = 0;
+		
+		for(int r = 0; seen < size; r++) {
+			
+			//The shells so far and this one span (2r + 1)^3 cells.
+			long width = 2L * r + 1;
+			if(width * width * width > size) {
+				
+				heapSize = 0;
+				for(List<Entity> entities : cells.values()) {
+					for(Entity entity : entities) offer(entity, distanceSquared(entity, x, y, z), k);
+				}
+				break;
+			}
+			
+			for(int i = -r; i <= r; i++) {
+				for(int j = -r; j <= r; j++) {
+					
+					//Only the surface of the cube; the inside was examined by earlier shells.
+					boolean surface = Math.abs(i) == r || Math.abs(j) == r;
+					for(int l = -r; l <= r; l += surface ? 1 : Math.max(1, 2 * r)) {
+						
+						List<Entity> entities = cells.get(key(cx + i, cy + j, cz + l));
+						if(entities == null) continue;
+						
+						for(Entity entity : entities) {
+							seen++;
+							offer(entity, distanceSquared(entity, x, y, z), k);
+						}
+					}
+				}
+			}
+			
+			//Everything within r cells of the point's cell has now been examined,
+			//which covers at least this distance in every direction.
+			float covered = r * cellSize;
+			if(heapSize == k && heapDistances[0] <= covered * covered) break;
+		}
+		
+		//Taken furthest first, so reverse them afterwards.
+		int start = out.size();
+		while(heapSize > 0) out.add(poll());
+		for(int i = start, j = out.size() - 1; i < j; i++, j--) {
+			Entity e = out.get(i);
+			out.set(i, out.get(j));
+			out.set(j, e);
+		}
+		return out;
+	}
+	
+	/**
+	 * Adds an entity to the heap of nearest entities, if it is among the k nearest so far.
+	 */
+	private void offer(Entity entity, float distance, int k) {
+		
+		if(heapSize < k) {
+			
+			//Sift up from the end.
+			int i = heapSize++;
+			while(i > 0) {
+				int parent = (i - 1) >> 1;
+				if(heapDistances[parent] >= distance) break;
+				heap[i] = heap[parent];
+				heapDistances[i] = heapDistances[parent];
+				i = parent;
+			}
+			heap[i] = entity;
+			heapDistances[i] = distance;
+		
+		} else if(distance < heapDistances[0]) siftDown(entity, distance);
+	}
+	
+	/**
+	 * Removes and returns the furthest entity in the heap.
+	 */
+	private Entity poll() {
+		
+		Entity furthest = heap[0];
+		int last = --heapSize;
+		Entity entity = heap[last];
+		float distance = heapDistances[last];
+		heap[last] = null;
+		if(last > 0) siftDown(entity, distance);
+		return furthest;
+	}
+	
+	/**
+	 * Replaces the furthest entity in the heap with the given one.
+	 */
+	private void siftDown(Entity entity, float distance) {
+		
+		int i = 0;
+		while(true) {
+			
+			int child = 2 * i + 1;
+			if(child >= heapSize) break;
+			if(child + 1 < heapSize && heapDistances[child + 1] > heapDistances[child]) child++;
+			if(heapDistances[child] <= distance) break;
+			
+			heap[i] = heap[child];
+			heapDistances[i] = heapDistances[child];
+			i = child;
+		}
+		heap[i] = entity;
+		heapDistances[i] = distance;
+	}
+	
+	/**
+	 * Returns the number of entities in the index.
+	 */
+	public int size() { return size; }
+	
+	public float getCellSize() { return cellSize; }
+	
+	private void removeFromCell(Entity entity, long cell) {
+		
+		List<Entity> entities = cells.get(cell);
+		if(entities == null) return;
+		
+		//Order within a cell doesn't matter, so swap with the last entity.
+		int i = entities.indexOf(entity);
+		if(i == -1) return;
+		
+		int last = entities.size() - 1;
+		entities.set(i, entities.get(last));
+		entities.remove(last);
+		if(entities.isEmpty()) cells.remove(cell);
+	}
+	
+	private void widen(AABB bounds) {
+		
+		float half = Math.max(bounds.getMaxX() - bounds.getMinX(),
+				Math.max(bounds.getMaxY() - bounds.getMinY(), bounds.getMaxZ() - bounds.getMinZ())) / 2;
+		if(half > maxHalfExtent) maxHalfExtent = half;
+	}
+	
+	private static float distanceSquared(Entity entity, float x, float y, float z) {
+		
+		AABB bounds = entity.getBounds();
+		float dx = bounds.getCentreX() - x, dy = bounds.getCentreY() - y, dz = bounds.getCentreZ() - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+	
+	private int cell(float v) {
+		return (int) Math.floor(v / cellSize);
+	}
+	
+	private long cellOf(float x, float y, float z) {
+		return key(cell(x), cell(y), cell(z));
+	}
+	
+	private static long key(int cx, int cy, int cz) {
+		return ((long) (cx & 0x1FFFFF) << 42) | ((long) (cy & 0x1FFFFF) << 21) | (cz & 0x1FFFFF);
+	}
+}
\ No newline at end of file
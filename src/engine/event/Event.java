@@ -1,22 +1,37 @@
 package engine.event;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
  * Implementation of an event system.
  * Allows for the registration of event handlers and the triggering of events.
  * An instance of a subclass of Event represents a single given occurrence of an event.
+ * Handlers may be added, removed and triggered from any thread. The registry is
+ * copy-on-write, so triggering never locks, and sees either all or none of any change.
+ * Handlers are run by the triggering thread, unless they are registered with an EventQueue,
+ * in which case they are run by whichever thread drains that queue.
  * @author Alec
  */
 public abstract class Event {
 	
-	/** List of all registered EventHandlers, grouped by Event type. */
-	private static Map<Class<?>, List<EventHandler>>
-			events = new HashMap<>();
+	/** Snapshot of all registered EventHandlers, replaced whenever one is added or removed. */
+	private static volatile Registry registry = new Registry(new HashMap<>());
+	
+	private static final AtomicIntegerFieldUpdater<Event>
+			REFS = AtomicIntegerFieldUpdater.newUpdater(Event.class, "refs");
+	
+	/** The pool this event belongs to, if it is reused; and the number of references to it. */
+	EventPool<?> pool;
+	volatile int refs;
 	
 	/**
 	 * Register an EventHandler. This EventHandler will be triggered
@@ -28,7 +43,21 @@ public abstract class Event {
 	public static <E extends Event> void addHandler(
 			Class<E> event, Consumer<E> action) {
 		
-		addHandler(event, null, action);
+		addHandler(event, null, null, action);
+	}
+	
+	/**
+	 * Register an EventHandler which is run by whichever thread drains the given queue,
+	 * rather than by the thread which triggers the event.
+	 * No key will be associated with this handler.
+	 * @param event an event type.
+	 * @param queue the queue through which to deliver events, or null to run handlers immediately.
+	 * @param handler an event handler (an action to take).
+	 */
+	public static <E extends Event> void addHandler(
+			Class<E> event, EventQueue queue, Consumer<E> action) {
+		
+		addHandler(event, queue, null, action);
 	}
 	
 	/**
@@ -43,15 +72,30 @@ public abstract class Event {
 	public static <E extends Event> void addHandler(
 			Class<E> event, Object key, Consumer<E> action) {
 		
-		//If no EventHandlers of the given event type have yet been added,
-		//create a new list to put such handlers in.
-		if(!events.containsKey(event)) {
-			events.put(event, new ArrayList<>());
-		}
+		addHandler(event, null, key, action);
+	}
+	
+	/**
+	 * Register an EventHandler which is run by whichever thread drains the given queue.
+	 * This handler can be removed later by calling removeHandler(handler)
+	 * or removeHandlers(key).
+	 * @param event an event type.
+	 * @param queue the queue through which to deliver events, or null to run handlers immediately.
+	 * @param handler an event handler (an action to take).
+	 * @param key a key to use for later removal.
+	 */
+	public static synchronized <E extends Event> void addHandler(
+			Class<E> event, EventQueue queue, Object key, Consumer<E> action) {
+		
+		Map<Class<?>, EventHandler[]> events = new HashMap<>(registry.events);
 		
-		//Add this handler to the list.
-		events.get(event).add(
-				new EventHandler(action, event, key));
+		//Add this handler to a copy of the list for the given event type.
+		EventHandler[] handlers = events.getOrDefault(event, new EventHandler[0]);
+		handlers = Arrays.copyOf(handlers, handlers.length + 1);
+		handlers[handlers.length - 1] = new EventHandler(action, event, key, queue);
+		events.put(event, handlers);
+		
+		registry = new Registry(events);
 	}
 	
 	/**
@@ -59,17 +103,26 @@ public abstract class Event {
 	 * Alternatively, a key can be used to remove handlers, using removeHandlers().
 	 * @param handler the handler to remove.
 	 */
-	public static void removeHandler(Consumer<?> action) {
+	public static synchronized void removeHandler(Consumer<?> action) {
+		
+		Map<Class<?>, EventHandler[]> events = registry.events;
 		
 		//Check every event handler for every event.
-		loop: for(Class<?> event : events.keySet()) {
+		for(Class<?> event : events.keySet()) {
 			
-			for(int i = 0; i < events.get(event).size(); i++) {
+			EventHandler[] handlers = events.get(event);
+			for(int i = 0; i < handlers.length; i++) {
 				
-				//If it matches, remove it, and finish.
-				if(events.get(event).get(i).action == action) {
-					events.get(event).remove(i);
-					break loop;
+				//If it matches, remove it from a copy, and finish.
+				if(handlers[i].action == action) {
+					
+					List<EventHandler> remaining = new ArrayList<>(Arrays.asList(handlers));
+					remaining.remove(i);
+					
+					events = new HashMap<>(events);
+					events.put(event, remaining.toArray(new EventHandler[remaining.size()]));
+					registry = new Registry(events);
+					return;
 				}
 			}
 		}
@@ -82,51 +135,135 @@ public abstract class Event {
 	 * Alternatively, handlers can be removed directly with removeHandler().
 	 * @param key a key to refer to particular handlers.
 	 */
-	public static void removeHandlers(Object key) {
+	public static synchronized void removeHandlers(Object key) {
 		
-		//Check every event handler for every event.
-		for(Class<?> event : events.keySet()) {
+		Map<Class<?>, EventHandler[]> events = new HashMap<>();
+		
+		//Check every event handler for every event, keeping those which don't match.
+		for(Map.Entry<Class<?>, EventHandler[]> entry : registry.events.entrySet()) {
 			
-			for(int i = 0; i < events.get(event).size(); i++) {
-				
-				//If it matches, remove it.
-				if(events.get(event).get(i).key == key) {
-					events.get(event).remove(i);
-				}
+			List<EventHandler> remaining = new ArrayList<>();
+			for(EventHandler handler : entry.getValue()) {
+				if(handler.key != key) remaining.add(handler);
 			}
+			
+			if(!remaining.isEmpty())
+				events.put(entry.getKey(), remaining.toArray(new EventHandler[remaining.size()]));
 		}
+		registry = new Registry(events);
+	}
+	
+	/**
+	 * Returns whether any EventHandler would receive an event of the given type,
+	 * including those registered for its supertypes. Frequently triggered events
+	 * can check this first, to avoid constructing events which nobody handles.
+	 * @param type the concrete event class.
+	 */
+	public static boolean hasHandlers(Class<? extends Event> type) {
+		return registry.handlersFor(type).length > 0;
 	}
 	
 	/**
 	 * Trigger this event. All EventHandlers of matching type will
 	 * subsequently be triggered, using the given event as a parameter.
+	 * Those registered with a queue are triggered once it is next drained.
 	 */
-	@SuppressWarnings("unchecked")
 	protected void trigger() {
 		
-		//Concurrency.newThread("event_handler", () -> {
+		//Look up the handlers for this type of event, finding them on first use.
+		EventHandler[] handlers = registry.handlersFor(getClass());
+		
+		//Trigger each event handler for this event type.
+		for(EventHandler handler : handlers) {
 			
-			//For each type of event registered.
-			for(Class<?> eventType : events.keySet()) {
-				
-				//If the type matches the current event.
-				if(eventType.isInstance(this)) {
-					
-					//Trigger each event handler for this event type.
-					for(EventHandler handler : events.get(eventType)) {
-						
-						handler.action.accept(this);
-					}
-				}
+			if(handler.queue == null) handler.deliver(this);
+			else handler.queue.post(handler, this);
+		}
+	}
+	
+	/**
+	 * Keeps this event valid after the handler it was given to has returned.
+	 * Only necessary for pooled events (see EventPool), which are otherwise
+	 * reused as soon as every handler has run. Must be matched by a call to release().
+	 */
+	public void retain() {
+		if(pool != null) REFS.incrementAndGet(this);
+	}
+	
+	/**
+	 * Gives up a reference to this event, obtained from retain() or EventPool.acquire().
+	 * Once none remain, a pooled event is returned to its pool for reuse.
+	 */
+	public void release() {
+		
+		if(pool == null) return;
+		
+		int remaining = REFS.decrementAndGet(this);
+		if(remaining == 0) pool.recycle(this);
+		else if(remaining < 0) throw new IllegalStateException("Event released too many times.");
+	}
+	
+	/**
+	 * Returns whether this event may be merged with later events of the same type,
+	 * while they wait in an EventQueue. Such events are delivered at most once per handler
+	 * per drain, as the result of coalesce(). Events are not coalescable by default.
+	 */
+	protected boolean isCoalescable() { return false; }
+	
+	/**
+	 * Returns a single event equivalent to this one followed by the given later one;
+	 * see isCoalescable(). By default, the later event simply replaces this one.
+	 * The result must not be triggered.
+	 * @param later a later event of the same type.
+	 * @return the merged event.
+	 */
+	protected Event coalesce(Event later) { return later; }
+	
+	/**
+	 * An immutable snapshot of every registered EventHandler,
+	 * along with the handlers which apply to each concrete event class.
+	 */
+	private static class Registry {
+		
+		/** Every registered EventHandler, grouped by Event type. Never modified. */
+		final Map<Class<?>, EventHandler[]> events;
+		
+		/**
+		 * Every handler which applies to each concrete event class (including those
+		 * registered for its supertypes), built on first use.
+		 */
+		final Map<Class<?>, EventHandler[]> dispatch = new ConcurrentHashMap<>();
+		
+		Registry(Map<Class<?>, EventHandler[]> events) {
+			this.events = Collections.unmodifiableMap(events);
+		}
+		
+		/**
+		 * Returns every handler registered for the given event class or any of its supertypes,
+		 * those for the most specific type first.
+		 */
+		EventHandler[] handlersFor(Class<?> eventType) {
+			
+			EventHandler[] handlers = dispatch.get(eventType);
+			if(handlers != null) return handlers;
+			
+			List<EventHandler> applicable = new ArrayList<>();
+			for(Class<?> c = eventType; c != null && Event.class.isAssignableFrom(c); c = c.getSuperclass()) {
+				if(events.containsKey(c)) applicable.addAll(Arrays.asList(events.get(c)));
 			}
-		//});
+			
+			//Racing threads build identical arrays, so either may win.
+			handlers = applicable.toArray(new EventHandler[applicable.size()]);
+			dispatch.put(eventType, handlers);
+			return handlers;
+		}
 	}
 	
 	/**
 	 * Used to represent an EventHandler function, and any associated data.
 	 */
 	@SuppressWarnings({ "rawtypes", "unused" })
-	private static class EventHandler {
+	static class EventHandler {
 		
 		/** The EventHandler itself. */
 		Consumer action;
@@ -137,16 +274,76 @@ public abstract class Event {
 		/** The key used to find and remove this handler. */
 		Object key;
 		
+		/** The queue through which events are delivered, or null to run immediately. */
+		EventQueue queue;
+		
+		/** A coalesced event waiting in the queue for this handler, if any. */
+		final AtomicReference<Event> pending = new AtomicReference<>();
+		
 		/**
 		 * Constructs a new EventHandler with the given values.
 		 * @param action the handler itself.
 		 * @param event the event type.
 		 * @param key the key used to find and remove this handler.
+		 * @param queue the queue through which to deliver events, or null.
 		 */
-		EventHandler(Consumer<?> action, Class event, Object key) {
+		EventHandler(Consumer<?> action, Class event, Object key, EventQueue queue) {
 			this.action = action;
 			this.event = event;
 			this.key = key;
+			this.queue = queue;
+		}
+		
+		@SuppressWarnings("unchecked")
+		void deliver(Event e) {
+			
+			if(!EventMetrics.enabled) {
+				action.accept(e);
+				return;
+			}
+			
+			long start = System.nanoTime();
+			Throwable error = null;
+			
+			try {
+				action.accept(e);
+			} catch(Throwable t) {
+				error = t;
+				throw t;
+			} finally {
+				EventMetrics.record(e.getClass(), key != null ? key : action,
+						System.nanoTime() - start, error);
+			}
+		}
+		
+		/**
+		 * Merges the given event into the one waiting for this handler.
+		 * @return whether nothing was waiting, in which case the event needs queueing.
+		 */
+		boolean offerPending(Event e) {
+			
+			while(true) {
+				Event previous = pending.get();
+				Event merged = previous == null ? e : previous.coalesce(e);
+				
+				if(pending.compareAndSet(previous, merged)) {
+					
+					//Whichever of the two events the merged one replaced are no longer held.
+					if(previous != null && previous != merged) previous.release();
+					if(merged != e) e.release();
+					return previous == null;
+				}
+				
+				//The waiting event was taken meanwhile, so a new merged event is never used.
+				if(merged != e && merged != previous) merged.release();
+			}
+		}
+		
+		/**
+		 * Removes and returns the event waiting for this handler.
+		 */
+		Event takePending() {
+			return pending.getAndSet(null);
 		}
 	}
 }
\ No newline at end of file
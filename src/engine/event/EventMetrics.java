@@ -0,0 +1,226 @@
+package engine.event;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional instrumentation of event handlers, recording how many times each handler runs
+ * for each event type, how long it takes, and how often it throws.
+ * Handlers are identified by their key, or by the handler itself if they have none,
+ * so handlers sharing a key are measured together.
+ * Disabled by default, in which case the only cost is a single branch per handler call.
+ * Can be enabled with the system property engine.event.metrics, and dumped to the file
+ * named by engine.event.metrics.file when the program exits.
+ * @author Alec
+ */
+public class EventMetrics {
+	
+	/** Whether handler calls are currently being measured. */
+	static volatile boolean enabled = Boolean.getBoolean("engine.event.metrics");
+	
+	/** Measurements by event type, then by handler key. */
+	private static final Map<Class<?>, Map<Object, Stats>> stats = new ConcurrentHashMap<>();
+	
+	static {
+		String file = System.getProperty("engine.event.metrics.file");
+		if(file != null) dumpOnShutdown(file);
+	}
+	
+	public static boolean isEnabled() { return enabled; }
+	
+	public static void setEnabled(boolean enabled) {
+		EventMetrics.enabled = enabled;
+	}
+	
+	/**
+	 * Discards every measurement taken so far.
+	 */
+	public static void reset() { stats.clear(); }
+	
+	/**
+	 * Records a single call of a handler.
+	 * @param eventType the concrete type of the event handled.
+	 * @param handler the key of the handler, or the handler itself.
+	 * @param nanos how long the handler took.
+	 * @param error anything the handler threw, or null.
+	 */
+	static void record(Class<?> eventType, Object handler, long nanos, Throwable error) {
+		
+		Map<Object, Stats> byHandler = stats.computeIfAbsent(eventType, t -> new ConcurrentHashMap<>());
+		byHandler.computeIfAbsent(handler, h -> new Stats()).record(nanos, error != null);
+	}
+	
+	/**
+	 * Returns a copy of every measurement taken so far,
+	 * those with the most total time first.
+	 */
+	public static List<HandlerMetrics> snapshot() {
+		
+		List<HandlerMetrics> snapshot = new ArrayList<>();
+		
+		for(Map.Entry<Class<?>, Map<Object, Stats>> type : stats.entrySet()) {
+			for(Map.Entry<Object, Stats> handler : type.getValue().entrySet()) {
+				snapshot.add(handler.getValue().snapshot(type.getKey(), handler.getKey()));
+			}
+		}
+		snapshot.sort(Comparator.comparingLong((HandlerMetrics m) -> m.TOTAL_NANOS).reversed());
+		return Collections.unmodifiableList(snapshot);
+	}
+	
+	/**
+	 * Writes every measurement taken so far to the given file, as a table.
+	 * @param fileName the file to write.
+	 */
+	public static void dump(String fileName) throws IOException {
+		
+		try(PrintWriter out = new PrintWriter(fileName, "UTF-8")) {
+			
+			out.printf("%-40s %-40s %10s %12s %10s %10s %10s %10s %10s %8s%n",
+					"event", "handler", "count", "total ms", "mean us",
+					"p50 us", "p90 us", "p99 us", "max us", "errors");
+			
+			for(HandlerMetrics m : snapshot()) out.println(m);
+		}
+	}
+	
+	/**
+	 * Arranges for every measurement to be written to the given file when the program exits.
+	 * @param fileName the file to write.
+	 */
+	public static void dumpOnShutdown(String fileName) {
+		
+		Runtime.getRuntime().addShutdownHook(new Thread("event-metrics") {
+			@Override public void run() {
+				try {
+					dump(fileName);
+				} catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * An immutable copy of the measurements of a single handler for a single event type.
+	 * Latencies are in nanoseconds; percentiles are accurate to within about 6%.
+	 */
+	public static class HandlerMetrics {
+		
+		public final Class<?> EVENT_TYPE;
+		public final String HANDLER;
+		
+		public final long COUNT, ERRORS;
+		public final long TOTAL_NANOS, MAX_NANOS;
+		public final long P50_NANOS, P90_NANOS, P99_NANOS;
+		
+		private HandlerMetrics(Class<?> eventType, String handler, long count, long errors,
+				long total, long max, long p50, long p90, long p99) {
+			
+			EVENT_TYPE = eventType;
+			HANDLER = handler;
+			COUNT = count;
+			ERRORS = errors;
+			TOTAL_NANOS = total;
+			MAX_NANOS = max;
+			P50_NANOS = p50;
+			P90_NANOS = p90;
+			P99_NANOS = p99;
+		}
+		
+		public double getMeanNanos() {
+			return COUNT == 0 ? 0.0 : (double) TOTAL_NANOS / COUNT;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%-40s %-40s %10d %12.3f %10.1f %10.1f %10.1f %10.1f %10.1f %8d",
+					EVENT_TYPE.getSimpleName(), HANDLER, COUNT, TOTAL_NANOS / 1e6, getMeanNanos() / 1e3,
+					P50_NANOS / 1e3, P90_NANOS / 1e3, P99_NANOS / 1e3, MAX_NANOS / 1e3, ERRORS);
+		}
+	}
+	
+	/**
+	 * Running measurements of a single handler for a single event type.
+	 */
+	private static class Stats {
+		
+		private long count, errors, total, max;
+		private final Histogram latencies = new Histogram();
+		
+		synchronized void record(long nanos, boolean error) {
+			
+			count++;
+			if(error) errors++;
+			total += nanos;
+			max = Math.max(max, nanos);
+			latencies.record(nanos);
+		}
+		
+		synchronized HandlerMetrics snapshot(Class<?> eventType, Object handler) {
+			return new HandlerMetrics(eventType, String.valueOf(handler), count, errors, total, max,
+					latencies.percentile(0.5), latencies.percentile(0.9), latencies.percentile(0.99));
+		}
+	}
+	
+	/**
+	 * A histogram of non-negative values with logarithmic buckets, each power of two being
+	 * divided into HALF linear sub-buckets, so that the relative error is fixed
+	 * while values of any magnitude can be recorded in a fixed amount of space.
+	 */
+	static class Histogram {
+		
+		/** The number of significant bits kept from each value. */
+		private static final int BITS = 5;
+		private static final int HALF = 1 << (BITS - 1);
+		
+		private final long[] counts = new long[64 * HALF];
+		private long total = 0;
+		
+		void record(long value) {
+			counts[indexOf(Math.max(0, value))]++;
+			total++;
+		}
+		
+		/**
+		 * Returns (an upper bound on) the value below which the given fraction of values lie.
+		 */
+		long percentile(double fraction) {
+			
+			if(total == 0) return 0;
+			
+			long rank = Math.max(1, (long) Math.ceil(fraction * total));
+			long seen = 0;
+			
+			for(int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if(seen >= rank) return highestValueOf(i);
+			}
+			return Long.MAX_VALUE;
+		}
+		
+		/**
+		 * Values below 2 * HALF are counted exactly; above that, each value
+		 * is reduced to its BITS most significant bits, and the number of bits dropped.
+		 */
+		private static int indexOf(long value) {
+			
+			int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - BITS);
+			return shift * HALF + (int) (value >>> shift);
+		}
+		
+		private static long highestValueOf(int index) {
+			
+			if(index < 2 * HALF) return index;
+			
+			int shift = index / HALF - 1;
+			long top = index % HALF + HALF;
+			return ((top + 1) << shift) - 1;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package engine.event;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A pool of reusable events, for event types which are triggered often enough
+ * that allocating a new instance each time would create a steady stream of garbage.
+ * A pooled event is borrowed from the pool, filled in, triggered, and released again.
+ * Handlers are lent the event only for the duration of the call; any handler which
+ * needs it for longer must retain() it, and release() it when done.
+ * Events waiting in an EventQueue are retained automatically.
+ * @author Alec
+ */
+public class EventPool<E extends Event> {
+	
+	private static final int DEFAULT_CAPACITY = 64;
+	
+	/** Creates new events when the pool is empty. These must not trigger themselves. */
+	private final Supplier<E> factory;
+	
+	/** Released events, waiting to be reused. Taking and returning events doesn't allocate. */
+	private final ArrayBlockingQueue<E> free;
+	
+	public EventPool(Supplier<E> factory) {
+		this(factory, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * @param factory creates new (untriggered) events when none are free.
+	 * @param capacity the largest number of released events to keep for reuse.
+	 */
+	public EventPool(Supplier<E> factory, int capacity) {
+		this.factory = factory;
+		free = new ArrayBlockingQueue<>(capacity);
+	}
+	
+	/**
+	 * Borrows an event from this pool, which must be released once it has been triggered.
+	 * @return an event with a single reference.
+	 */
+	public E acquire() {
+		
+		E event = free.poll();
+		if(event == null) {
+			event = factory.get();
+			event.pool = this;
+		}
+		event.refs = 1;
+		return event;
+	}
+	
+	/**
+	 * Returns the number of released events available for reuse.
+	 */
+	public int getFree() { return free.size(); }
+	
+	/**
+	 * Called once the last reference to the given event has been released.
+	 * If the pool is already full, the event is left for the garbage collector.
+	 */
+	void recycle(Event event) {
+		
+		@SuppressWarnings("unchecked")
+		E e = (E) event;
+		free.offer(e);
+	}
+}
\ No newline at end of file
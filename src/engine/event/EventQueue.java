@@ -0,0 +1,228 @@
+package engine.event;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import engine.event.Event.EventHandler;
+
+/**
+ * A queue of events waiting to be delivered to handlers on a particular thread.
+ * Handlers registered with a queue aren't run by the thread which triggers the event;
+ * instead the event is added to the queue, and the handler is run when the queue is drained.
+ * Any number of threads may add events, but only one may drain the queue at a time.
+ * The queue is a fixed-size ring buffer. Should it fill, threads adding to it wait for
+ * it to be drained (or, if they are themselves draining it, deliver the event immediately).
+ * Events which are coalescable (see Event.coalesce()) are merged while they wait,
+ * so that each handler receives at most one of them per drain.
+ * Pooled events are retained while they wait, and released once delivered.
+ * @author Alec
+ */
+public class EventQueue {
+	
+	/** Drained by the game-tick thread, before each tick. */
+	public static final EventQueue TICK = new EventQueue("tick");
+	
+	/** Drained by the render thread, before each frame. */
+	public static final EventQueue RENDER = new EventQueue("render");
+	
+	/** Drained on the common worker pool whenever it has events waiting. */
+	public static final EventQueue WORKER = new EventQueue("worker", ForkJoinPool.commonPool());
+	
+	private static final int DEFAULT_CAPACITY = 1024;
+	
+	private final String name;
+	
+	/** Handlers and events waiting to be delivered, and the sequence number of each slot. */
+	private final EventHandler[] handlers;
+	private final Event[] events;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	
+	/** The next position to write, claimed by producers; and the next to read. */
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head = 0;
+	
+	/** The executor which drains this queue, if it isn't drained manually. */
+	private final Executor executor;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	
+	/** The thread currently draining this queue, if any. */
+	private volatile Thread drainer;
+	
+	/** The thread which last drained this queue, if it is drained manually. */
+	private volatile Thread owner;
+	
+	/**
+	 * Constructs a new queue which must be drained manually, by calling drain().
+	 * @param name the name of this queue.
+	 */
+	public EventQueue(String name) {
+		this(name, DEFAULT_CAPACITY, null);
+	}
+	
+	/**
+	 * Constructs a new queue which is drained by the given executor whenever events are added.
+	 * @param name the name of this queue.
+	 * @param executor the executor on which to deliver events.
+	 */
+	public EventQueue(String name, Executor executor) {
+		this(name, DEFAULT_CAPACITY, executor);
+	}
+	
+	/**
+	 * @param name the name of this queue.
+	 * @param capacity the number of events which may wait at once (rounded up to a power of two).
+	 * @param executor the executor on which to deliver events, or null to drain manually.
+	 */
+	public EventQueue(String name, int capacity, Executor executor) {
+		
+		if(capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+		
+		this.name = name;
+		this.executor = executor;
+		
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity) size <<= 1;
+		
+		handlers = new EventHandler[size];
+		events = new Event[size];
+		sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++) sequences.set(i, i);
+		mask = size - 1;
+	}
+	
+	public String getName() { return name; }
+	
+	/**
+	 * Returns the number of events waiting to be delivered.
+	 */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head);
+	}
+	
+	/**
+	 * Delivers every event which is waiting, on the calling thread.
+	 * Events added while draining are left for the next drain.
+	 * A handler which throws an exception doesn't prevent delivery of the rest.
+	 * @return the number of handlers run.
+	 */
+	public int drain() {
+		
+		drainer = Thread.currentThread();
+		if(executor == null) owner = drainer;
+		int delivered = 0;
+		
+		try {
+			long end = tail.get();
+			while(head < end) {
+				
+				int slot = (int) (head & mask);
+				
+				//Wait for the producer which claimed this slot to finish writing it.
+				while(sequences.get(slot) != head + 1) Thread.yield();
+				
+				EventHandler handler = handlers[slot];
+				Event event = events[slot];
+				handlers[slot] = null;
+				events[slot] = null;
+				sequences.set(slot, head + mask + 1);
+				head++;
+				
+				//Coalesced events are held by the handler, and only marked in the queue.
+				if(event == null) event = handler.takePending();
+				
+				deliver(handler, event);
+				delivered++;
+			}
+		
+		} finally {
+			drainer = null;
+		}
+		return delivered;
+	}
+	
+	/**
+	 * Queues the given event for delivery to the given handler.
+	 */
+	void post(EventHandler handler, Event event) {
+		
+		//The queue holds its own reference, in case the event is pooled.
+		event.retain();
+		
+		//Only the first coalescable event since the last delivery needs a place in the queue.
+		if(event.isCoalescable() && !handler.offerPending(event)) return;
+		
+		Event queued = event.isCoalescable() ? null : event;
+		
+		while(true) {
+			
+			long position = tail.get();
+			int slot = (int) (position & mask);
+			long sequence = sequences.get(slot);
+			
+			if(sequence == position) {
+				
+				if(tail.compareAndSet(position, position + 1)) {
+					handlers[slot] = handler;
+					events[slot] = queued;
+					sequences.set(slot, position + 1);
+					break;
+				}
+			
+			} else if(sequence < position) {
+				
+				Thread current = Thread.currentThread();
+				
+				//Full; the draining thread can't wait for itself, but it is the right thread.
+				if(drainer == current) {
+					deliver(handler, queued == null ? handler.takePending() : queued);
+					return;
+				}
+				
+				//Nor can the thread which drains a manual queue, so it catches up now, in order.
+				if(executor == null && owner == current) {
+					drain();
+					continue;
+				}
+				Thread.yield();
+			}
+		}
+		
+		if(executor != null && scheduled.compareAndSet(false, true)) {
+			executor.execute(this::drainScheduled);
+		}
+	}
+	
+	/**
+	 * Runs the given handler, and releases the queue's reference to the event.
+	 */
+	private static void deliver(EventHandler handler, Event event) {
+		
+		try {
+			handler.deliver(event);
+		} catch(RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			event.release();
+		}
+	}
+	
+	private void drainScheduled() {
+		
+		do {
+			try {
+				drain();
+			} finally {
+				scheduled.set(false);
+			}
+		
+		//Events added during the drain didn't schedule another, so need another pass.
+		} while(size() > 0 && scheduled.compareAndSet(false, true));
+	}
+	
+	@Override
+	public String toString() { return name; }
+}
\ No newline at end of file
@@ -4,9 +4,6 @@ import static engine.event.input.InputEvent.KeyboardEvent.*;
 import static engine.event.input.InputEvent.MouseEvent.*;
 import static engine.event.input.InputEvent.MouseEvent.MouseButtonEvent.*;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.lwjgl.LWJGLException;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
@@ -22,11 +19,17 @@ import engine.util.Timing.GameTickEvent;
  */
 public class Input {
 	
-	/** The set of all keys which are currently held down. */
-	private static Set<Integer> heldKeys = new HashSet<>();
+	/** The largest number of mouse buttons tracked. */
+	private static final int MAX_BUTTONS = 16;
+	
+	/**
+	 * Whether each key is currently held down. Written by the input thread and read by
+	 * the tick thread, which may briefly see stale values, but never fails part way.
+	 */
+	private static boolean[] heldKeys = new boolean[Keyboard.KEYBOARD_SIZE];
 	
-	/** The set of all mouse buttons which are currently held down.  */
-	private static Set<Integer> heldButtons = new HashSet<>();
+	/** Whether each mouse button is currently held down. */
+	private static boolean[] heldButtons = new boolean[MAX_BUTTONS];
 	
 	public static void init(Window window) {
 		
@@ -42,13 +45,13 @@ public class Input {
 		Event.addHandler(GameTickEvent.class, event -> {
 			
 			//Trigger key hold events when appropriate.
-			for(int key : heldKeys) {
-				new KeyHoldEvent(key);
+			for(int key = 0; key < heldKeys.length; key++) {
+				if(heldKeys[key]) KeyHoldEvent.fire(key);
 			}
 			
 			//Trigger click hold events when appropriate.
-			for(int button : heldButtons) {
-				new ClickHoldEvent(button, Mouse.getX(), Mouse.getY());
+			for(int button = 0; button < heldButtons.length; button++) {
+				if(heldButtons[button]) ClickHoldEvent.fire(button, Mouse.getX(), Mouse.getY());
 			}
 		});
 		
@@ -84,12 +87,12 @@ public class Input {
 			//Key pressed.
 			if(Keyboard.getEventKeyState()) {
 				new KeyPressEvent(key);
-				heldKeys.add(key);
+				setHeld(heldKeys, key, true);
 				
 			//Key released.
 			} else {
 				new KeyReleaseEvent(key);
-				heldKeys.remove(key);
+				setHeld(heldKeys, key, false);
 			}
 		}
 	}
@@ -107,16 +110,24 @@ public class Input {
 			//Button pressed.
 			if(Mouse.getEventButtonState()) {
 				new ClickEvent(button, Mouse.getX(), Mouse.getY());
-				heldButtons.add(button);
+				setHeld(heldButtons, button, true);
 				
 			//Button released.
 			} else {
 				new ClickReleaseEvent(button, Mouse.getX(), Mouse.getY());
-				heldButtons.remove(button);
+				setHeld(heldButtons, button, false);
 			}
 		}
 	}
 	
+	/**
+	 * Records whether the given key or button is held, ignoring any out of range
+	 * (such as the button -1, reported for mouse movement).
+	 */
+	private static void setHeld(boolean[] held, int index, boolean state) {
+		if(index >= 0 && index < held.length) held[index] = state;
+	}
+	
 	/**
 	 * Trigger an appropriate event if the mouse has moved.
 	 */
@@ -126,7 +137,7 @@ public class Input {
 		int mouseDY = Mouse.getDY();
 		
 		if(mouseDX != 0 || mouseDY != 0) {
-			new MouseMoveEvent(mouseDX, mouseDY, Mouse.getX(), Mouse.getY());
+			MouseMoveEvent.fire(mouseDX, mouseDY, Mouse.getX(), Mouse.getY());
 		}
 	}
 	
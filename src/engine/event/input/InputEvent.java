@@ -3,6 +3,7 @@ package engine.event.input;
 import org.lwjgl.input.Keyboard;
 
 import engine.event.Event;
+import engine.event.EventPool;
 
 /**
  * Abstract superclass for events involving input.
@@ -15,21 +16,50 @@ public abstract class InputEvent extends Event {
 	 */
 	public static abstract class KeyboardEvent extends InputEvent {
 		
-		/** The key which triggered this event. */
-		public final int KEY_ID;
-		public final String KEY_NAME;
+		/**
+		 * The key which triggered this event. Only exposed through getters,
+		 * since pooled events are reused; see KeyHoldEvent.fire().
+		 */
+		private int keyId;
+		private String keyName;
+		
+		/** The name of each key, looked up on first use. */
+		private static final String[] KEY_NAMES = new String[Keyboard.KEYBOARD_SIZE];
 		
 		/**
 		 * Triggers a new KeyboardEvent for the given key value.
 		 * @param key
 		 */
 		private KeyboardEvent(int key) {
-			KEY_ID = key;
-			KEY_NAME = Keyboard.getKeyName(key);
+			setKey(key);
 			trigger();
 		}
 		
-		public String toString() { return KEY_NAME; }
+		/**
+		 * Constructs a KeyboardEvent for pooling, without triggering it.
+		 */
+		private KeyboardEvent() {}
+		
+		/**
+		 * Sets the key of this event; only for construction, and for reusing pooled events.
+		 */
+		void setKey(int key) {
+			
+			keyId = key;
+			
+			if(key >= 0 && key < KEY_NAMES.length) {
+				if(KEY_NAMES[key] == null) KEY_NAMES[key] = Keyboard.getKeyName(key);
+				keyName = KEY_NAMES[key];
+			} else keyName = Keyboard.getKeyName(key);
+		}
+		
+		/** Returns the id of the key which triggered this event. */
+		public int getKeyId() { return keyId; }
+		
+		/** Returns the name of the key which triggered this event. */
+		public String getKeyName() { return keyName; }
+		
+		public String toString() { return keyName; }
 		
 		/**
 		 * This event is triggered once whenever a key is pressed.
@@ -42,7 +72,28 @@ public abstract class InputEvent extends Event {
 		 * This event is triggered once per tick per key which is held down.
 		 */
 		public static class KeyHoldEvent extends KeyboardEvent {
+			
+			private static final EventPool<KeyHoldEvent> POOL = new EventPool<>(KeyHoldEvent::new);
+			
 			public KeyHoldEvent(int key) { super(key); }
+			
+			private KeyHoldEvent() {}
+			
+			/**
+			 * Triggers a KeyHoldEvent for the given key, reusing a pooled instance.
+			 * Handlers may only use the event during the call, unless they retain() it.
+			 * @param key the key which is held.
+			 */
+			public static void fire(int key) {
+				
+				KeyHoldEvent e = POOL.acquire();
+				try {
+					e.setKey(key);
+					e.trigger();
+				} finally {
+					e.release();
+				}
+			}
 		}
 		
 		/**
@@ -58,8 +109,11 @@ public abstract class InputEvent extends Event {
 	 */
 	public static abstract class MouseEvent extends InputEvent {
 		
-		/** Represents the position of the cursor (in pixels). (0, 0) is the bottom-left corner. */
-		public final int MOUSE_X, MOUSE_Y;
+		/**
+		 * Represents the position of the cursor (in pixels). (0, 0) is the bottom-left corner.
+		 * Only exposed through getters, since pooled events are reused; see ClickHoldEvent.fire().
+		 */
+		private int mouseX, mouseY;
 		
 		/**
 		 * Triggers a new MouseEvent at the given screen position.
@@ -67,17 +121,35 @@ public abstract class InputEvent extends Event {
 		 * @param mouseY the y position.
 		 */
 		private MouseEvent(int mouseX, int mouseY) {
-			MOUSE_X = mouseX;
-			MOUSE_Y = mouseY;
+			setMouse(mouseX, mouseY);
+		}
+		
+		/**
+		 * Constructs a MouseEvent for pooling.
+		 */
+		private MouseEvent() {}
+		
+		/**
+		 * Sets the cursor position of this event; only for construction, and for reusing pooled events.
+		 */
+		void setMouse(int mouseX, int mouseY) {
+			this.mouseX = mouseX;
+			this.mouseY = mouseY;
 		}
 		
+		/** Returns the x position of the cursor (in pixels). */
+		public int getMouseX() { return mouseX; }
+		
+		/** Returns the y position of the cursor (in pixels). */
+		public int getMouseY() { return mouseY; }
+		
 		/**
 		 * Abstract superclass for events involving clicking.
 		 */
 		public static abstract class MouseButtonEvent extends MouseEvent {
 			
-			/** The button which triggered this event. */
-			public final int BUTTON;
+			/** The button which triggered this event. Only exposed through a getter, since pooled events are reused. */
+			private int button;
 			
 			/**
 			 * Triggers a new MouseButtonEvent for the given button value.
@@ -85,10 +157,21 @@ public abstract class InputEvent extends Event {
 			 */
 			private MouseButtonEvent(int button, int mouseX, int mouseY) {
 				super(mouseX, mouseY);
-				BUTTON = button;
+				this.button = button;
 				trigger();
 			}
 			
+			/**
+			 * Constructs a MouseButtonEvent for pooling, without triggering it.
+			 */
+			private MouseButtonEvent() {}
+			
+			/** Sets the button of this event; only for reusing pooled events. */
+			void setButton(int button) { this.button = button; }
+			
+			/** Returns the button which triggered this event. */
+			public int getButton() { return button; }
+			
 			/**
 			 * This event is triggered once whenever a button is clicked.
 			 */
@@ -102,9 +185,40 @@ public abstract class InputEvent extends Event {
 			 * This event is triggered once per tick per mouse button which is held down.
 			 */
 			public static class ClickHoldEvent extends MouseButtonEvent {
+				
+				private static final EventPool<ClickHoldEvent> POOL = new EventPool<>(ClickHoldEvent::new);
+				
 				public ClickHoldEvent(int button, int mouseX, int mouseY) {
 					super(button, mouseX, mouseY);
 				}
+				
+				private ClickHoldEvent() {}
+				
+				/**
+				 * Refills a pooled event before it is triggered again.
+				 */
+				void reset(int button, int mouseX, int mouseY) {
+					setButton(button);
+					setMouse(mouseX, mouseY);
+				}
+				
+				/**
+				 * Triggers a ClickHoldEvent for the given button, reusing a pooled instance.
+				 * Handlers may only use the event during the call, unless they retain() it.
+				 * @param button the button which is held.
+				 * @param mouseX the x position.
+				 * @param mouseY the y position.
+				 */
+				public static void fire(int button, int mouseX, int mouseY) {
+					
+					ClickHoldEvent e = POOL.acquire();
+					try {
+						e.reset(button, mouseX, mouseY);
+						e.trigger();
+					} finally {
+						e.release();
+					}
+				}
 			}
 			
 			/**
@@ -122,8 +236,10 @@ public abstract class InputEvent extends Event {
 		 */
 		public static class MouseMoveEvent extends MouseEvent {
 			
-			/** Represents the change in the cursor position. */
-			public final int MOUSE_DX, MOUSE_DY;
+			private static final EventPool<MouseMoveEvent> POOL = new EventPool<>(MouseMoveEvent::new);
+			
+			/** The change in the cursor position. Only exposed through getters, since pooled events are reused. */
+			private int mouseDX, mouseDY;
 			
 			/**
 			 * Triggers a new MouseMoveEvent with the given movement and position.
@@ -134,10 +250,65 @@ public abstract class InputEvent extends Event {
 			 */
 			public MouseMoveEvent(int mouseDX, int mouseDY, int mouseX, int mouseY) {
 				super(mouseX, mouseY);
-				MOUSE_DX = mouseDX;
-				MOUSE_DY = mouseDY;
+				this.mouseDX = mouseDX;
+				this.mouseDY = mouseDY;
 				trigger();
 			}
+			
+			private MouseMoveEvent() {}
+			
+			/**
+			 * Refills a pooled event before it is triggered or merged.
+			 */
+			void reset(int mouseDX, int mouseDY, int mouseX, int mouseY) {
+				this.mouseDX = mouseDX;
+				this.mouseDY = mouseDY;
+				setMouse(mouseX, mouseY);
+			}
+			
+			/**
+			 * Triggers a MouseMoveEvent with the given movement and position, reusing a pooled instance.
+			 * Handlers may only use the event during the call, unless they retain() it.
+			 * @param mouseDX movement in the x direction.
+			 * @param mouseDY movement in the y direction.
+			 * @param mouseX the x position.
+			 * @param mouseY the y position.
+			 */
+			public static void fire(int mouseDX, int mouseDY, int mouseX, int mouseY) {
+				
+				MouseMoveEvent e = POOL.acquire();
+				try {
+					e.reset(mouseDX, mouseDY, mouseX, mouseY);
+					e.trigger();
+				} finally {
+					e.release();
+				}
+			}
+			
+			/** Returns the movement of the cursor in the x direction (in pixels). */
+			public int getMouseDX() { return mouseDX; }
+			
+			/** Returns the movement of the cursor in the y direction (in pixels). */
+			public int getMouseDY() { return mouseDY; }
+			
+			/**
+			 * Queued movements are merged into one, with the total movement and the latest position.
+			 */
+			@Override
+			protected boolean isCoalescable() { return true; }
+			
+			/**
+			 * The deltas are merged into an event from the pool rather than into this one,
+			 * since this one may be waiting for other handlers too, or already being delivered.
+			 */
+			@Override
+			protected Event coalesce(Event later) {
+				
+				MouseMoveEvent e = (MouseMoveEvent) later;
+				MouseMoveEvent merged = POOL.acquire();
+				merged.reset(mouseDX + e.mouseDX, mouseDY + e.mouseDY, e.getMouseX(), e.getMouseY());
+				return merged;
+			}
 		}
 		
 		/**
@@ -146,7 +317,7 @@ public abstract class InputEvent extends Event {
 		public static class ScrollWheelEvent extends MouseEvent {
 			
 			/** Represents the change in the scroll wheel orientation. */
-			public final int D_WHEEL;
+			private final int dWheel;
 			
 			/**
 			 * Triggers a new ScrollWheelEvent with the given wheel rotation and position.
@@ -156,9 +327,12 @@ public abstract class InputEvent extends Event {
 			 */
 			public ScrollWheelEvent(int dWheel, int mouseX, int mouseY) {
 				super(mouseX, mouseY);
-				D_WHEEL = dWheel;
+				this.dWheel = dWheel;
 				trigger();
 			}
+			
+			/** Returns the change in the scroll wheel orientation. */
+			public int getDWheel() { return dWheel; }
 		}
 	}
 }
\ No newline at end of file
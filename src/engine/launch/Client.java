@@ -34,7 +34,9 @@ public class Client {
 		Wall cube = new Wall(WORLD);
 		new DirectionalLight(WORLD, Colour.WHITE, new Vector3f(0.0F, -1.0F, -1.0F));
 		
-		Event.addHandler(GameTickEvent.class, e ->
-				cube.getTransform().rotate(new Vector3f(0.5F, 0.0F, 0.0F)));
+		Event.addHandler(GameTickEvent.class, e -> {
+			cube.getTransform().rotate(new Vector3f(0.5F, 0.0F, 0.0F));
+			WORLD.updateTransforms();
+		});
 	}
 }
\ No newline at end of file
@@ -17,7 +17,8 @@ public class Mesh {
 	
 	private final int vaoId, numVertices;
 	
-	
+	/** Bounding sphere in model space; see setBounds(). */
+	private float boundsX, boundsY, boundsZ, boundsRadius = Float.POSITIVE_INFINITY;
 	
 	public Mesh(String fileName, Format fileFormat) {
 		vaoId = 0;
@@ -33,6 +34,63 @@ public class Mesh {
 	
 	public int getNumVertices() { return numVertices; }
 	
+	/**
+	 * Sets the bounding sphere of this mesh, in model space, used for frustum culling.
+	 * @return this.
+	 */
+	public Mesh setBounds(float x, float y, float z, float radius) {
+		boundsX = x;
+		boundsY = y;
+		boundsZ = z;
+		boundsRadius = radius;
+		return this;
+	}
+	
+	/**
+	 * Sets the bounding sphere of this mesh to enclose the given vertex positions.
+	 * The sphere is centred on their bounding box, which is close enough for culling.
+	 * @param vertices packed (x, y, z) vertex positions.
+	 * @param length the number of floats in use.
+	 * @return this.
+	 */
+	public Mesh computeBounds(float[] vertices, int length) {
+		
+		if(length < 3) return setBounds(0.0F, 0.0F, 0.0F, 0.0F);
+		
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		
+		for(int i = 0; i + 2 < length; i += 3) {
+			minX = Math.min(minX, vertices[i]);
+			minY = Math.min(minY, vertices[i + 1]);
+			minZ = Math.min(minZ, vertices[i + 2]);
+			maxX = Math.max(maxX, vertices[i]);
+			maxY = Math.max(maxY, vertices[i + 1]);
+			maxZ = Math.max(maxZ, vertices[i + 2]);
+		}
+		
+		float x = (minX + maxX) / 2, y = (minY + maxY) / 2, z = (minZ + maxZ) / 2;
+		float r2 = 0.0F;
+		
+		for(int i = 0; i + 2 < length; i += 3) {
+			float dx = vertices[i] - x, dy = vertices[i + 1] - y, dz = vertices[i + 2] - z;
+			r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+		}
+		return setBounds(x, y, z, (float) Math.sqrt(r2));
+	}
+	
+	public float getBoundsX() { return boundsX; }
+	
+	public float getBoundsY() { return boundsY; }
+	
+	public float getBoundsZ() { return boundsZ; }
+	
+	/**
+	 * Returns the radius of the bounding sphere of this mesh,
+	 * which is infinite (never culled) unless bounds have been given.
+	 */
+	public float getBoundsRadius() { return boundsRadius; }
+	
 	private static void loadObj(String fileName) {
 		
 		List<Vector3f> vertexList = new ArrayList<>();
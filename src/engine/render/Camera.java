@@ -14,6 +14,11 @@ public class Camera {
 	private World world;
 	private Transform transf;
 	
+	/** The inverse of the transform, and the version of the transform it was computed from. */
+	private Matrix4f view = new Matrix4f();
+	private int viewVersion;
+	private boolean viewValid = false;
+	
 	public Camera(World world) {
 		this.world = world;
 		transf = new Transform();
@@ -33,10 +38,18 @@ public class Camera {
 	
 	/**
 	 * Returns a view matrix for this camera, for use in transforming rendered objects.
+	 * The matrix is only recomputed when the transform has changed, and is
+	 * reused between calls, so it must not be modified or kept.
 	 */
 	public Matrix4f getViewMatrix() {
-		Matrix4f view = transf.asMatrix();
-		view.invert();
+		
+		//The camera may be attached to something, so the view follows its world matrix.
+		int version = transf.getWorldVersion();
+		if(!viewValid || version != viewVersion) {
+			transf.getWorldMatrix(view).invert();
+			viewVersion = version;
+			viewValid = true;
+		}
 		return view;
 	}
 }
\ No newline at end of file
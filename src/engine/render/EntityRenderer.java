@@ -2,24 +2,28 @@ package engine.render;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL33.*;
 
+import java.nio.FloatBuffer;
 import java.util.Map;
 import java.util.Set;
 
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.Display;
 import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector3f;
 
 import engine.World;
 import engine.entity.Entity;
-import engine.model.Material;
 import engine.model.Mesh;
 import engine.model.Texture;
 import engine.render.light.DirectionalLight;
 import engine.temp.Shapes;
 import engine.util.Colour;
+import engine.util.math.Frustum;
 import engine.util.math.Matrix;
 
 public class EntityRenderer extends Renderer {
@@ -33,12 +37,40 @@ public class EntityRenderer extends Renderer {
 	
 	private static final int NUM_LIGHTS = 4;
 	
+	/** Attribute locations of the per-instance model matrix (4 columns), material colour and lighting. */
+	private static final int MODEL_ATTRIB = 3, COLOUR_ATTRIB = 7, LIGHT_ATTRIB = 8;
+	
+	/** The number of vertex attributes enabled for each mesh, including those per instance. */
+	private static final int NUM_ATTRIBS = 9;
+	
 	private Camera camera;
 	private World world;
 	private Viewport viewport;
 	
 	private Map<Mesh, Map<Texture, Set<Entity>>> entities;
 	
+	/** The projection last loaded, and the frustum it forms with the current view. */
+	private Matrix4f projection = new Matrix4f();
+	private Frustum frustum = new Frustum();
+	
+	/** The world matrix of the entity being culled, copied so that it can't change while in use. */
+	private Matrix4f entityMatrix = new Matrix4f();
+	
+	/** The number of entities culled and drawn in the last frame. */
+	private int culled, drawn;
+	
+	/** Uniform handles, looked up once so that no names are built or hashed per frame. */
+	private int projectionUniform, viewUniform;
+	private int[] lightColourUniforms = new int[NUM_LIGHTS], lightDirectionUniforms = new int[NUM_LIGHTS];
+	
+	/** The number of draw calls issued in the last frame. */
+	private int drawCalls;
+	
+	/** Instance data for the current mesh and texture, and the buffer it is streamed through. */
+	private InstanceBuffer instances = new InstanceBuffer();
+	private FloatBuffer staging = BufferUtils.createFloatBuffer(64 * InstanceBuffer.FLOATS_PER_INSTANCE);
+	private int instanceVbo;
+	
 	public EntityRenderer(Camera camera) {
 		this(camera, new Viewport());
 	}
@@ -56,6 +88,9 @@ public class EntityRenderer extends Renderer {
 		bindAttrib(0, "vertex");
 		bindAttrib(1, "normal");
 		bindAttrib(2, "texmap");
+		bindAttrib(MODEL_ATTRIB, "model");
+		bindAttrib(COLOUR_ATTRIB, "materialColour");
+		bindAttrib(LIGHT_ATTRIB, "materialLight");
 	}
 	
 	@Override
@@ -63,17 +98,33 @@ public class EntityRenderer extends Renderer {
 		
 		Shapes.CUBE.getClass();
 		
+		instanceVbo = glGenBuffers();
+		
+		projectionUniform = uniformHandle("projection");
+		viewUniform = uniformHandle("view");
+		
+		for(int i = 0; i < NUM_LIGHTS; i++) {
+			lightColourUniforms[i] = uniformHandle("lights[" + i + "].colour");
+			lightDirectionUniforms[i] = uniformHandle("lights[" + i + "].direction");
+		}
+		
 		loadProjection();
 		
 		for(int i = 0; i < NUM_LIGHTS; i++) {
-			setUniform("lights[" + i + "].colour", Colour.BLACK.asVector());
-			setUniform("lights[" + i + "].direction", new Vector3f(0.0F, 0.0F, -1.0F));
+			setUniform(lightColourUniforms[i], Colour.BLACK);
+			setUniform(lightDirectionUniforms[i], 0.0F, 0.0F, -1.0F);
 		}
 	}
 	
 	@Override
 	protected void onWindowResize() { loadProjection(); }
 	
+	@Override
+	public void destroy() {
+		glDeleteBuffers(instanceVbo);
+		super.destroy();
+	}
+	
 	private void loadProjection() {
 		
 		float aspect = getAspectRatio();
@@ -81,10 +132,9 @@ public class EntityRenderer extends Renderer {
 		Matrix4f perspective = Matrix.projection(FOV, aspect, NEAR_CLIP, FAR_CLIP);
 		Matrix4f viewport = this.viewport.getMatrix();
 		
-		Matrix4f projection = new Matrix4f();
 		Matrix4f.mul(viewport, perspective, projection);
 		
-		setUniform("projection", projection);
+		setUniform(projectionUniform, projection);
 	}
 	
 	private float getAspectRatio() {
@@ -98,6 +148,7 @@ public class EntityRenderer extends Renderer {
 	protected void render() {
 		
 		loadFrame();
+		culled = drawn = drawCalls = 0;
 		
 		for(Mesh mesh : entities.keySet()) {
 			Map<Texture, Set<Entity>> meshGroup = entities.get(mesh);
@@ -107,56 +158,139 @@ public class EntityRenderer extends Renderer {
 			for(Texture texture : entities.get(mesh).keySet()) {
 				Set<Entity> textureGroup = meshGroup.get(texture);
 				
-				loadTexture(texture);
+				instances.clear();
 				
 				for(Entity entity : textureGroup) {
 					
-					renderEntity(entity);
+					//Culled before anything is packed for the entity.
+					if(isVisible(entity, mesh)) {
+						instances.add(entity.getTransform(), entity.getModel().getMaterial());
+					} else culled++;
+				}
+				
+				if(!instances.isEmpty()) {
+					loadTexture(texture);
+					renderInstances(mesh);
 				}
 			}
 			unloadMesh();
 		}
 	}
 	
-	private void renderEntity(Entity e) {
+	/**
+	 * Uploads the packed instances and draws them all with a single call.
+	 */
+	private void renderInstances(Mesh mesh) {
 		
-		setUniform("model", e.getTransform().asMatrix());
-		loadMaterial(e.getModel().getMaterial());
-		glDrawArrays(GL_TRIANGLES, 0, e.getModel().getMesh().getNumVertices());
+		int length = instances.getLength();
+		if(staging.capacity() < length)
+			staging = BufferUtils.createFloatBuffer(Math.max(length, staging.capacity() * 2));
+		
+		staging.clear();
+		staging.put(instances.getData(), 0, length);
+		staging.flip();
+		
+		//Reallocating the store each time lets the driver avoid waiting on the previous draw.
+		glBindBuffer(GL_ARRAY_BUFFER, instanceVbo);
+		glBufferData(GL_ARRAY_BUFFER, staging, GL_STREAM_DRAW);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		
+		glDrawArraysInstanced(GL_TRIANGLES, 0, mesh.getNumVertices(), instances.size());
+		drawn += instances.size();
+		drawCalls++;
 	}
 	
-	private void loadMaterial(Material m) {
+	/**
+	 * Returns whether the bounding sphere of the given entity's mesh intersects the view frustum.
+	 */
+	private boolean isVisible(Entity e, Mesh mesh) {
+		
+		float radius = mesh.getBoundsRadius();
+		if(radius == Float.POSITIVE_INFINITY) return true;
+		
+		//Entities may be attached to others, so their bounds follow their world matrix.
+		Matrix4f w = e.getTransform().getWorldMatrix(entityMatrix);
+		float bx = mesh.getBoundsX(), by = mesh.getBoundsY(), bz = mesh.getBoundsZ();
+		float x = w.m00 * bx + w.m10 * by + w.m20 * bz + w.m30;
+		float y = w.m01 * bx + w.m11 * by + w.m21 * bz + w.m31;
+		float z = w.m02 * bx + w.m12 * by + w.m22 * bz + w.m32;
 		
-		setUniform("material.colour", m.getColour().asVector());
-		setUniform("material.ambientLight", m.getAmbientLight());
-		setUniform("material.diffuseLight", m.getDiffuseLight());
-		setUniform("material.specularLight", m.getSpecularLight());
-		setUniform("material.specularDamping", m.getSpecularDamping());
+		float sx = w.m00 * w.m00 + w.m01 * w.m01 + w.m02 * w.m02;
+		float sy = w.m10 * w.m10 + w.m11 * w.m11 + w.m12 * w.m12;
+		float sz = w.m20 * w.m20 + w.m21 * w.m21 + w.m22 * w.m22;
+		float scale = (float) Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+		
+		return frustum.intersectsSphere(x, y, z, radius * scale);
 	}
 	
+	/**
+	 * Returns the number of entities which were skipped by frustum culling in the last frame.
+	 */
+	public int getCulledCount() { return culled; }
+	
+	/**
+	 * Returns the number of entities which were drawn in the last frame.
+	 */
+	public int getDrawnCount() { return drawn; }
+	
+	/**
+	 * Returns the number of draw calls issued in the last frame,
+	 * which is at most the number of distinct mesh and texture pairs.
+	 */
+	public int getDrawCallCount() { return drawCalls; }
+	
 	private void loadFrame() {
 		
-		setUniform("view", camera.getViewMatrix());
+		Matrix4f view = camera.getViewMatrix();
+		setUniform(viewUniform, view);
+		frustum.set(projection, view);
 		
-		for(int i = 0; i < world.getLights().size(); i++) {
+		//Unchanged lights are skipped by the uniform cache.
+		int lights = Math.min(world.getLights().size(), NUM_LIGHTS);
+		for(int i = 0; i < lights; i++) {
 			
-			setUniform("lights[" + i + "].colour",
-					world.getLights().get(i).getColour().asVector());
+			setUniform(lightColourUniforms[i], world.getLights().get(i).getColour());
 			
-			setUniform("lights[" + i + "].direction",
+			setUniform(lightDirectionUniforms[i],
 					((DirectionalLight) world.getLights().get(i)).getDirection());
 		}
 	}
 	
 	private void loadMesh(Mesh m) {
 		glBindVertexArray(m.getVaoId());
-		for(int i = 0; i < 3; i++) {
+		loadInstanceAttribs();
+		for(int i = 0; i < NUM_ATTRIBS; i++) {
 			glEnableVertexAttribArray(i);
 		}
 	}
 	
+	/**
+	 * Points the per-instance attributes of the bound VAO at the instance buffer.
+	 */
+	private void loadInstanceAttribs() {
+		
+		glBindBuffer(GL_ARRAY_BUFFER, instanceVbo);
+		
+		//A mat4 attribute occupies one location per column.
+		for(int i = 0; i < 4; i++) {
+			glVertexAttribPointer(MODEL_ATTRIB + i, 4, GL_FLOAT, false,
+					InstanceBuffer.STRIDE, InstanceBuffer.MODEL_OFFSET + i * 16);
+			glVertexAttribDivisor(MODEL_ATTRIB + i, 1);
+		}
+		
+		glVertexAttribPointer(COLOUR_ATTRIB, 4, GL_FLOAT, false,
+				InstanceBuffer.STRIDE, InstanceBuffer.COLOUR_OFFSET);
+		glVertexAttribDivisor(COLOUR_ATTRIB, 1);
+		
+		glVertexAttribPointer(LIGHT_ATTRIB, 4, GL_FLOAT, false,
+				InstanceBuffer.STRIDE, InstanceBuffer.LIGHT_OFFSET);
+		glVertexAttribDivisor(LIGHT_ATTRIB, 1);
+		
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+	}
+	
 	private void unloadMesh() {
-		for(int i = 0; i < 3; i++) {
+		for(int i = 0; i < NUM_ATTRIBS; i++) {
 			glDisableVertexAttribArray(i);
 		}
 		glBindVertexArray(0);
@@ -0,0 +1,103 @@
+package engine.render;
+
+import java.util.Arrays;
+
+import engine.model.Material;
+import engine.util.Colour;
+import engine.util.math.Transform;
+
+/**
+ * CPU-side builder for per-instance vertex data, used to draw every entity
+ * sharing a mesh and texture with a single instanced draw call.
+ * Each instance is packed as its model matrix (column-major, as OpenGL expects),
+ * the material colour, and then the ambient, diffuse and specular light and specular damping.
+ * Nothing here touches OpenGL, so packing can be tested without a GPU.
+ * @author Alec
+ */
+public class InstanceBuffer {
+	
+	/** The number of floats in the model matrix, material colour and material lighting of each instance. */
+	public static final int MODEL_FLOATS = 16, COLOUR_FLOATS = 4, LIGHT_FLOATS = 4;
+	
+	/** The number of floats used by each instance. */
+	public static final int FLOATS_PER_INSTANCE = MODEL_FLOATS + COLOUR_FLOATS + LIGHT_FLOATS;
+	
+	/** The byte stride between instances, and the byte offsets of each part of an instance. */
+	public static final int STRIDE = FLOATS_PER_INSTANCE * 4,
+							MODEL_OFFSET = 0,
+							COLOUR_OFFSET = MODEL_FLOATS * 4,
+							LIGHT_OFFSET = (MODEL_FLOATS + COLOUR_FLOATS) * 4;
+	
+	private float[] data;
+	
+	/** The number of instances added since the last clear(). */
+	private int size = 0;
+	
+	public InstanceBuffer() {
+		this(64);
+	}
+	
+	/**
+	 * @param capacity the number of instances to allocate space for initially.
+	 */
+	public InstanceBuffer(int capacity) {
+		data = new float[Math.max(1, capacity) * FLOATS_PER_INSTANCE];
+	}
+	
+	/**
+	 * Appends an instance with the given transform and material.
+	 */
+	public void add(Transform transform, Material material) {
+		
+		int i = reserve();
+		transform.store(data, i);
+		i += MODEL_FLOATS;
+		
+		Colour c = material.getColour();
+		data[i++] = c.R;
+		data[i++] = c.G;
+		data[i++] = c.B;
+		data[i++] = c.A;
+		
+		data[i++] = material.getAmbientLight();
+		data[i++] = material.getDiffuseLight();
+		data[i++] = material.getSpecularLight();
+		data[i] = material.getSpecularDamping();
+	}
+	
+	/**
+	 * Removes every instance, keeping the allocated space.
+	 */
+	public void clear() { size = 0; }
+	
+	/**
+	 * Returns the number of instances added since the last clear().
+	 */
+	public int size() { return size; }
+	
+	public boolean isEmpty() { return size == 0; }
+	
+	/**
+	 * Returns the packed instance data. Only the first getLength() floats are in use,
+	 * and the array may be replaced when more instances are added.
+	 */
+	public float[] getData() { return data; }
+	
+	/**
+	 * Returns the number of floats in use.
+	 */
+	public int getLength() { return size * FLOATS_PER_INSTANCE; }
+	
+	/**
+	 * Makes room for one more instance, returning the offset at which to write it.
+	 */
+	private int reserve() {
+		
+		int offset = getLength();
+		if(offset + FLOATS_PER_INSTANCE > data.length)
+			data = Arrays.copyOf(data, data.length * 2);
+		
+		size++;
+		return offset;
+	}
+}
\ No newline at end of file
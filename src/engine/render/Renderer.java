@@ -5,7 +5,9 @@ import static org.lwjgl.opengl.GL20.*;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.lwjgl.BufferUtils;
@@ -17,6 +19,7 @@ import org.lwjgl.util.vector.Vector4f;
 
 import engine.event.Event;
 import engine.render.Window.WindowResizeEvent;
+import engine.util.Colour;
 import engine.util.Files;
 import engine.util.math.Transform;
 
@@ -30,7 +33,12 @@ public abstract class Renderer {
 	private int shaderProgramId, vertexShaderId, fragmentShaderId;
 	private String vertexShaderFile, fragmentShaderFile;
 	
-	private Map<String, Integer> uniforms = new HashMap<>();
+	/** Uniform handles by name, and the uniform for each handle. */
+	private Map<String, Integer> handles = new HashMap<>();
+	private List<Uniform> uniforms = new ArrayList<>();
+	
+	/** The number of uniform updates sent to the driver, and skipped as redundant. */
+	private long issued = 0, skipped = 0;
 	
 	private volatile boolean resized = false;
 	
@@ -63,6 +71,12 @@ public abstract class Renderer {
 		glLinkProgram(shaderProgramId);
 		glValidateProgram(shaderProgramId);
 		
+		//Any handles given out before linking need their locations looking up again.
+		for(Uniform u : uniforms) {
+			u.location = glGetUniformLocation(shaderProgramId, u.name);
+			u.known = false;
+		}
+		
 		//Run any shader specific initialisation.
 		glUseProgram(shaderProgramId);
 		init();
@@ -109,28 +123,117 @@ public abstract class Renderer {
 		glBindAttribLocation(shaderProgramId, vaoId, name);
 	}
 	
+	/**
+	 * Returns a handle for the uniform variable of the given name, for use with the
+	 * handle based setUniform() methods. Handles should be looked up once, ahead of time,
+	 * so that setting a uniform is just an array access.
+	 */
+	protected int uniformHandle(String name) {
+		
+		Integer handle = handles.get(name);
+		if(handle == null) {
+			handle = uniforms.size();
+			uniforms.add(new Uniform(name, glGetUniformLocation(shaderProgramId, name)));
+			handles.put(name, handle);
+		}
+		return handle;
+	}
+	
+	protected void setUniform(int handle, int value) {
+		Uniform u = uniforms.get(handle);
+		if(u.update(value)) glUniform1i(u.location, value);
+	}
+	
+	protected void setUniform(int handle, float value) {
+		Uniform u = uniforms.get(handle);
+		if(u.update(value)) glUniform1f(u.location, value);
+	}
+	
+	protected void setUniform(int handle, boolean value) {
+		setUniform(handle, value ? 1.0F : 0.0F);
+	}
+	
+	protected void setUniform(int handle, float x, float y) {
+		Uniform u = uniforms.get(handle);
+		if(u.update(x, y)) glUniform2f(u.location, x, y);
+	}
+	
+	protected void setUniform(int handle, float x, float y, float z) {
+		Uniform u = uniforms.get(handle);
+		if(u.update(x, y, z)) glUniform3f(u.location, x, y, z);
+	}
+	
+	protected void setUniform(int handle, float x, float y, float z, float w) {
+		Uniform u = uniforms.get(handle);
+		if(u.update(x, y, z, w)) glUniform4f(u.location, x, y, z, w);
+	}
+	
+	protected void setUniform(int handle, Vector2f vector) {
+		setUniform(handle, vector.x, vector.y);
+	}
+	
+	protected void setUniform(int handle, Vector3f vector) {
+		setUniform(handle, vector.x, vector.y, vector.z);
+	}
+	
+	protected void setUniform(int handle, Vector4f vector) {
+		setUniform(handle, vector.x, vector.y, vector.z, vector.w);
+	}
+	
+	protected void setUniform(int handle, Colour colour) {
+		setUniform(handle, colour.R, colour.G, colour.B, colour.A);
+	}
+	
+	/**
+	 * Uploads the matrix of the given transform, straight from the transform
+	 * into a reused direct buffer.
+	 */
+	protected void setUniform(int handle, Transform transform) {
+		Uniform u = uniforms.get(handle);
+		m4b.clear();
+		transform.store(m4b);
+		m4b.flip();
+		if(u.update(m4b)) glUniformMatrix4(u.location, false, m4b);
+	}
+	
+	protected void setUniform(int handle, Matrix3f matrix) {
+		Uniform u = uniforms.get(handle);
+		m3b.clear();
+		matrix.store(m3b);
+		m3b.flip();
+		if(u.update(m3b)) glUniformMatrix3(u.location, false, m3b);
+	}
+	
+	protected void setUniform(int handle, Matrix4f matrix) {
+		Uniform u = uniforms.get(handle);
+		m4b.clear();
+		matrix.store(m4b);
+		m4b.flip();
+		if(u.update(m4b)) glUniformMatrix4(u.location, false, m4b);
+	}
+	
 	protected void setUniform(String name, int value) {
-		glUniform1i(locationOf(name), value);
+		setUniform(uniformHandle(name), value);
 	}
 	
 	protected void setUniform(String name, float value) {
-		glUniform1f(locationOf(name), value);
+		setUniform(uniformHandle(name), value);
 	}
 	
 	protected void setUniform(String name, boolean value) {
-		glUniform1f(locationOf(name), value ? 1 : 0);
+		setUniform(uniformHandle(name), value);
 	}
 	
 	protected void setUniform(String name, Vector2f vector) {
-		glUniform2f(locationOf(name), vector.x, vector.y);
+		setUniform(uniformHandle(name), vector);
 	}
 	
 	protected void setUniform(String name, Vector3f vector) {
-		glUniform3f(locationOf(name), vector.x, vector.y, vector.z);
+		setUniform(uniformHandle(name), vector);
 	}
 	
 	protected void setUniform(String name, Vector4f vector) {
-		glUniform4f(locationOf(name), vector.x, vector.y, vector.z, vector.w);
+		setUniform(uniformHandle(name), vector);
 	}
 	
 	protected void setUniform(String name, int[] values) {
@@ -171,27 +274,43 @@ public abstract class Renderer {
 	private static FloatBuffer m3b = BufferUtils.createFloatBuffer(9);
 	private static FloatBuffer m4b = BufferUtils.createFloatBuffer(16);
 	
+	protected void setUniform(String name, Colour colour) {
+		setUniform(uniformHandle(name), colour);
+	}
+	
+	protected void setUniform(String name, Transform transform) {
+		setUniform(uniformHandle(name), transform);
+	}
+	
 	protected void setUniform(String name, Matrix3f matrix) {
-		matrix.store(m3b);
-		m3b.flip();
-		glUniformMatrix3(locationOf(name), false, m3b);
+		setUniform(uniformHandle(name), matrix);
 	}
 	
 	protected void setUniform(String name, Matrix4f matrix) {
-		matrix.store(m4b);
-		m4b.flip();
-		glUniformMatrix4(locationOf(name), false, m4b);
+		setUniform(uniformHandle(name), matrix);
 	}
 	
+	/**
+	 * Returns the number of uniform updates which have been sent to the driver.
+	 * Arrays are always sent, and counted here.
+	 */
+	public long getUniformsIssued() { return issued; }
+	
+	/**
+	 * Returns the number of uniform updates which were skipped,
+	 * because the uniform already held the given value.
+	 */
+	public long getUniformsSkipped() { return skipped; }
+	
 	/**
 	 * Returns the location of the uniform variable of the given name.
+	 * Values set this way aren't cached, so the uniform is forgotten.
 	 */
 	private int locationOf(String name) {
-		//Query OpenGL for the uniform location if it isn't yet stored in uniforms.
-		if(!uniforms.containsKey(name)) {
-			uniforms.put(name, glGetUniformLocation(shaderProgramId, name));
-		}
-		return uniforms.get(name);
+		Uniform u = uniforms.get(uniformHandle(name));
+		u.known = false;
+		issued++;
+		return u.location;
 	}
 	
 	/*
@@ -216,6 +335,85 @@ public abstract class Renderer {
 		return shaderId;
 	}
 	
+	/**
+	 * A uniform variable, along with a shadow copy of the value last sent to the driver.
+	 */
+	private class Uniform {
+		
+		final String name;
+		int location;
+		
+		/** The last value sent, and whether it is known (it isn't until first sent). */
+		float[] value = new float[4];
+		int intValue;
+		boolean known = false;
+		
+		Uniform(String name, int location) {
+			this.name = name;
+			this.location = location;
+		}
+		
+		boolean update(int x) {
+			if(known && intValue == x) return skip();
+			intValue = x;
+			return issue();
+		}
+		
+		boolean update(float x) {
+			if(known && value[0] == x) return skip();
+			value[0] = x;
+			return issue();
+		}
+		
+		boolean update(float x, float y) {
+			if(known && value[0] == x && value[1] == y) return skip();
+			value[0] = x; value[1] = y;
+			return issue();
+		}
+		
+		boolean update(float x, float y, float z) {
+			if(known && value[0] == x && value[1] == y && value[2] == z) return skip();
+			value[0] = x; value[1] = y; value[2] = z;
+			return issue();
+		}
+		
+		boolean update(float x, float y, float z, float w) {
+			if(known && value[0] == x && value[1] == y && value[2] == z && value[3] == w) return skip();
+			value[0] = x; value[1] = y; value[2] = z; value[3] = w;
+			return issue();
+		}
+		
+		boolean update(FloatBuffer buffer) {
+			
+			int n = buffer.remaining();
+			if(value.length < n) value = new float[n];
+			
+			if(known) {
+				boolean same = true;
+				for(int i = 0; i < n && same; i++) {
+					same = value[i] == buffer.get(i);
+				}
+				if(same) return skip();
+			}
+			
+			for(int i = 0; i < n; i++) {
+				value[i] = buffer.get(i);
+			}
+			return issue();
+		}
+		
+		private boolean issue() {
+			known = true;
+			issued++;
+			return true;
+		}
+		
+		private boolean skip() {
+			skipped++;
+			return false;
+		}
+	}
+	
 	public static class Viewport {
 		
 		public final float X1, Y1, X2, Y2;
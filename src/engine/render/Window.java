@@ -17,6 +17,7 @@ import org.lwjgl.opengl.PixelFormat;
 
 import engine.util.Colour;
 import engine.event.Event;
+import engine.event.EventQueue;
 
 public class Window {
 	
@@ -127,6 +128,7 @@ public class Window {
 				while(!Display.isCloseRequested() && open) {
 					
 					update();
+					EventQueue.RENDER.drain();
 					renderers.forEach(Renderer::doRender);
 				}
 				
@@ -150,7 +152,8 @@ public class Window {
 	private void create() {
 		
 		//Create new OpenGL context to attach to window.
-		ContextAttribs context = new ContextAttribs(3, 2)
+		//3.3 is needed for instanced vertex attributes.
+		ContextAttribs context = new ContextAttribs(3, 3)
 				.withForwardCompatible(true)
 				.withProfileCore(true);
 		
@@ -36,7 +36,7 @@ public class Shapes {
 						 1.0F, 0.0F,
 						 0.0F, 1.0F,
 						 1.0F, 1.0F})
-	, 6);
+	, 6).setBounds(0.0F, 0.0F, 0.0F, (float) Math.sqrt(0.5));
 	
 	public static final Mesh CUBE = new Mesh(createVao(
 			
@@ -165,7 +165,7 @@ public class Shapes {
 						 1.0F, 0.0F,
 						 0.0F, 1.0F,
 						 1.0F, 1.0F})
-	, 36);
+	, 36).setBounds(0.0F, 0.0F, 0.0F, (float) Math.sqrt(0.75));
 	
 	private static int createVao(float[] vertices, float[] normals, float[] textures) {
 		
@@ -1,6 +1,8 @@
 package engine.util;
 
 import engine.event.Event;
+import engine.event.EventPool;
+import engine.event.EventQueue;
 import engine.render.Window;
 
 /**
@@ -42,7 +44,10 @@ public class Timing {
 					
 					//Trigger the event if a sufficient time has passed.
 					if(getTime() - lastTick >= TICK_LENGTH_MS) {
-						new GameTickEvent(getTime() - lastTick);
+						
+						//Deliver anything queued for this thread first, such as input.
+						EventQueue.TICK.drain();
+						GameTickEvent.fire(getTime() - lastTick);
 						lastTick += TICK_LENGTH_MS;
 					}
 				}
@@ -50,21 +55,41 @@ public class Timing {
 		}.start();
 	}
 	
+	/**
+	 * Triggered once per tick. Instances are pooled and reused, so handlers
+	 * may only use the event during the call, unless they retain() it.
+	 */
 	public static class GameTickEvent extends Event {
 		
+		private static final EventPool<GameTickEvent> POOL = new EventPool<>(GameTickEvent::new);
+		
 		/**
 		 * The amount of time which has passed (in milliseconds) since the previous tick.
 		 * This may not be exactly equal to TICK_LENGTH_MS (although it should be close).
+		 * Only exposed through a getter, since events are reused.
+		 */
+		private double delta;
+		
+		private GameTickEvent() {}
+		
+		/**
+		 * Returns the amount of time which has passed (in milliseconds) since the previous tick.
 		 */
-		public final double DELTA;
+		public double getDelta() { return delta; }
 		
 		/**
-		 * Constructs a new GameTickEvent with the given delta time.
+		 * Triggers a GameTickEvent with the given delta time, reusing a pooled instance.
 		 * @param delta the time passed since the previous such event.
 		 */
-		private GameTickEvent(double delta) {
-			DELTA = delta;
-			trigger();
+		private static void fire(double delta) {
+			
+			GameTickEvent e = POOL.acquire();
+			try {
+				e.delta = delta;
+				e.trigger();
+			} finally {
+				e.release();
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package engine.util.math;
+
+/**
+ * A mutable axis-aligned bounding box.
+ * Boxes are mutable so that they can be updated in place every tick without allocating.
+ * @author Alec
+ */
+public class AABB {
+	
+	private float minX, minY, minZ, maxX, maxY, maxZ;
+	
+	/**
+	 * Constructs an empty box at the origin.
+	 */
+	public AABB() {}
+	
+	public AABB(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		set(minX, minY, minZ, maxX, maxY, maxZ);
+	}
+	
+	public AABB(AABB box) {
+		set(box);
+	}
+	
+	public AABB set(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		return this;
+	}
+	
+	public AABB set(AABB box) {
+		return set(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
+	}
+	
+	/**
+	 * Sets this box to the given centre and half-widths along each axis.
+	 */
+	public AABB setCentred(float x, float y, float z, float hx, float hy, float hz) {
+		return set(x - hx, y - hy, z - hz, x + hx, y + hy, z + hz);
+	}
+	
+	/**
+	 * Moves this box by the given amount.
+	 */
+	public AABB offset(float dx, float dy, float dz) {
+		return set(minX + dx, minY + dy, minZ + dz, maxX + dx, maxY + dy, maxZ + dz);
+	}
+	
+	/**
+	 * Moves this box by the given amount along a single axis (0 x, 1 y, 2 z).
+	 */
+	public AABB offset(int axis, float d) {
+		
+		switch(axis) {
+			case 0: return offset(d, 0, 0);
+			case 1: return offset(0, d, 0);
+			default: return offset(0, 0, d);
+		}
+	}
+	
+	/**
+	 * Returns whether the interiors of this box and the given box overlap.
+	 * Boxes which only touch don't intersect.
+	 */
+	public boolean intersects(AABB box) {
+		return minX < box.maxX && maxX > box.minX && minY < box.maxY
+				&& maxY > box.minY && minZ < box.maxZ && maxZ > box.minZ;
+	}
+	
+	/**
+	 * Returns whether the given point lies within this box (inclusive).
+	 */
+	public boolean contains(float x, float y, float z) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+	}
+	
+	/**
+	 * Returns the lower bound of this box along the given axis (0 x, 1 y, 2 z).
+	 */
+	public float getMin(int axis) { return axis == 0 ? minX : axis == 1 ? minY : minZ; }
+	
+	/**
+	 * Returns the upper bound of this box along the given axis (0 x, 1 y, 2 z).
+	 */
+	public float getMax(int axis) { return axis == 0 ? maxX : axis == 1 ? maxY : maxZ; }
+	
+	public float getMinX() { return minX; }
+	
+	public float getMinY() { return minY; }
+	
+	public float getMinZ() { return minZ; }
+	
+	public float getMaxX() { return maxX; }
+	
+	public float getMaxY() { return maxY; }
+	
+	public float getMaxZ() { return maxZ; }
+	
+	public float getCentreX() { return (minX + maxX) / 2; }
+	
+	public float getCentreY() { return (minY + maxY) / 2; }
+	
+	public float getCentreZ() { return (minZ + maxZ) / 2; }
+	
+	@Override
+	public String toString() {
+		return "AABB[" + minX + ", " + minY + ", " + minZ + " -> " + maxX + ", " + maxY + ", " + maxZ + "]";
+	}
+}
\ No newline at end of file
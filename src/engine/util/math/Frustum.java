@@ -0,0 +1,114 @@
+package engine.util.math;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * The view frustum of a camera, as six planes in world space,
+ * used to cull objects which can't possibly be seen.
+ * The planes are extracted directly from the combined projection and view matrices
+ * (Gribb and Hartmann), so no GL state is involved and culling can be tested headlessly.
+ * Like AABB, frustums are mutable so that they can be updated every frame without allocating.
+ * @author Alec
+ */
+public class Frustum {
+	
+	public static final int LEFT = 0, RIGHT = 1, BOTTOM = 2, TOP = 3, NEAR = 4, FAR = 5;
+	
+	/** (a, b, c, d) for each plane, such that ax + by + cz + d >= 0 inside the frustum. */
+	private final float[] planes = new float[24];
+	
+	/** Scratch matrix holding projection * view. */
+	private final Matrix4f clip = new Matrix4f();
+	
+	/**
+	 * Sets this frustum from the given projection and view matrices.
+	 * @return this.
+	 */
+	public Frustum set(Matrix4f projection, Matrix4f view) {
+		Matrix4f.mul(projection, view, clip);
+		return set(clip);
+	}
+	
+	/**
+	 * Sets this frustum from the given combined (projection * view) matrix.
+	 * @return this.
+	 */
+	public Frustum set(Matrix4f m) {
+		
+		//Each plane is the sum or difference of the last row and one of the others.
+		setPlane(LEFT,   m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+		setPlane(RIGHT,  m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+		setPlane(BOTTOM, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+		setPlane(TOP,    m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+		setPlane(NEAR,   m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+		setPlane(FAR,    m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+		return this;
+	}
+	
+	/**
+	 * Returns whether any part of the given sphere may be inside this frustum.
+	 * Spheres near the corners may be accepted despite lying outside.
+	 */
+	public boolean intersectsSphere(float x, float y, float z, float radius) {
+		
+		for(int i = 0; i < 24; i += 4) {
+			if(planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns whether any part of the given box may be inside this frustum.
+	 * Boxes near the corners may be accepted despite lying outside.
+	 */
+	public boolean intersectsBox(float minX, float minY, float minZ,
+			float maxX, float maxY, float maxZ) {
+		
+		for(int i = 0; i < 24; i += 4) {
+			
+			float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+			
+			//Only the corner furthest along the plane's normal needs to be tested.
+			float x = a >= 0 ? maxX : minX;
+			float y = b >= 0 ? maxY : minY;
+			float z = c >= 0 ? maxZ : minZ;
+			
+			if(a * x + b * y + c * z + planes[i + 3] < 0) return false;
+		}
+		return true;
+	}
+	
+	public boolean intersects(AABB box) {
+		return intersectsBox(box.getMinX(), box.getMinY(), box.getMinZ(),
+				box.getMaxX(), box.getMaxY(), box.getMaxZ());
+	}
+	
+	/**
+	 * Returns whether the given point is inside this frustum.
+	 */
+	public boolean contains(float x, float y, float z) {
+		return intersectsSphere(x, y, z, 0.0F);
+	}
+	
+	/**
+	 * Returns the signed distance of the given point from the given plane,
+	 * which is positive on the inside.
+	 * @param plane one of LEFT, RIGHT, BOTTOM, TOP, NEAR or FAR.
+	 */
+	public float distance(int plane, float x, float y, float z) {
+		int i = plane * 4;
+		return planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+	}
+	
+	private void setPlane(int plane, float a, float b, float c, float d) {
+		
+		//Normalised, so that distances can be compared against radii.
+		float length = (float) Math.sqrt(a * a + b * b + c * c);
+		int i = plane * 4;
+		planes[i] = a / length;
+		planes[i + 1] = b / length;
+		planes[i + 2] = c / length;
+		planes[i + 3] = d / length;
+	}
+}
\ No newline at end of file
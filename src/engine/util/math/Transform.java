@@ -1,5 +1,11 @@
 package engine.util.math;
 
+import java.nio.FloatBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Quaternion;
 import org.lwjgl.util.vector.Vector2f;
@@ -9,13 +15,38 @@ import org.lwjgl.util.vector.Vector3f;
  * Object representing any 3D geometric transformation,
  * featuring tools to manipulate said transformation.
  * Relies on Matrix.java for most calculations.
+ * Transformations may be attached to a parent, in which case they are relative to it;
+ * the combined world matrix is cached, and only recomputed once something above it has changed.
+ * A Transformation may be changed on one thread while its world matrix is read on another.
+ * Every change and every read holds the lock on the Transformation, and the world matrix
+ * is recomputed holding the locks on it and every ancestor, so it is never seen half written.
  * @author Alec
  */
 public class Transform {
 	
 	//Matrix back-end storing the transformation
 	//represented by this Transformation object.
-	private volatile Matrix4f transf;
+	//Guarded by the lock on this Transformation.
+	private Matrix4f transf;
+	
+	//The transformation this one is relative to (or null),
+	//and those which are relative to this one.
+	//The parent is only changed while holding the lock on this Transformation.
+	//The children are copied on write, so they may be walked while the hierarchy changes.
+	private volatile Transform parent;
+	private final List<Transform> children = new CopyOnWriteArrayList<>();
+	
+	//Cached product of every transformation from the root down to this one.
+	//It is stale while worldDirty is set, which implies it is for every descendant too.
+	//Only written by updateWorld(), while holding the locks on this Transformation and its ancestors,
+	//and the flag is only cleared once it has been written.
+	private final Matrix4f world = new Matrix4f();
+	private volatile boolean worldDirty = true;
+	private volatile int worldVersion = 0;
+	
+	//Whether some descendant may have a stale world matrix.
+	//Set on every ancestor of a changed transformation, so that clean subtrees can be skipped.
+	private volatile boolean childrenDirty = false;
 	
 	/**
 	 * Default constructor; initializes as identity transformation.
@@ -29,7 +60,7 @@ public class Transform {
 	 * @param t a Transformation3D instance.
 	 */
 	public Transform(Transform t) {
-		transf = new Matrix4f(t.transf);
+		transf = t.asMatrix();
 	}
 	
 	/**
@@ -91,17 +122,212 @@ public class Transform {
 	 * This matrix will represent the same geometric transformation as this object.
 	 * @return a transformation matrix.
 	 */
-	public Matrix4f asMatrix() {
+	public synchronized Matrix4f asMatrix() {
 		return new Matrix4f(transf);
 	}
 	
+	/**
+	 * Writes the world matrix of this Transformation into the given buffer,
+	 * in column-major order (as OpenGL expects), without allocating.
+	 * The buffer's position is advanced by 16.
+	 * @param dest the buffer in which to store the matrix.
+	 */
+	public synchronized void store(FloatBuffer dest) {
+		
+		if(worldDirty) updateWorld();
+		world.store(dest);
+	}
+	
+	/**
+	 * Copies the transformation from this Transformation's local space into world space;
+	 * that is, the product of every parent's transformation and this one, into the given matrix.
+	 * The world matrix is cached, and only recomputed if this or a parent has changed since.
+	 * @param dest the matrix in which to store the world matrix.
+	 * @return dest.
+	 */
+	public synchronized Matrix4f getWorldMatrix(Matrix4f dest) {
+		
+		if(worldDirty) updateWorld();
+		dest.load(world);
+		return dest;
+	}
+	
+	/**
+	 * Returns a counter which changes whenever the world matrix is recomputed,
+	 * bringing the world matrix up to date first.
+	 * @return the current world version.
+	 */
+	public synchronized int getWorldVersion() {
+		
+		if(worldDirty) updateWorld();
+		return worldVersion;
+	}
+	
+	/**
+	 * Stores the position of this Transformation in world space in the given vector.
+	 * Without a parent, this is the same as getPosition().
+	 * @param dest the vector in which to store the position.
+	 * @return dest.
+	 */
+	public synchronized Vector3f getWorldPosition(Vector3f dest) {
+		
+		if(worldDirty) updateWorld();
+		dest.set(world.m30, world.m31, world.m32);
+		return dest;
+	}
+	
+	/**
+	 * Returns the Transformation this one is relative to, or null if there is none.
+	 */
+	public Transform getParent() { return parent; }
+	
+	/**
+	 * Makes this Transformation relative to the given one, such that it follows it around.
+	 * The local transformation is unchanged, so the world transformation will likely move.
+	 * The hierarchy may be walked while it changes, but should only be changed by one thread.
+	 * @param parent the new parent, or null to detach this Transformation.
+	 */
+	public synchronized void setParent(Transform parent) {
+		
+		for(Transform t = parent; t != null; t = t.parent) {
+			if(t == this) throw new IllegalArgumentException("A transform can't be its own ancestor.");
+		}
+		
+		if(this.parent != null) this.parent.children.remove(this);
+		this.parent = parent;
+		if(parent != null) parent.children.add(this);
+		
+		markWorldDirty();
+	}
+	
+	/**
+	 * Returns the Transformations which are relative to this one.
+	 */
+	public List<Transform> getChildren() {
+		return Collections.unmodifiableList(children);
+	}
+	
+	/**
+	 * Brings the world matrix of every given Transformation, and every descendant thereof,
+	 * up to date. Subtrees in which nothing has changed are skipped, and separate trees
+	 * are updated in parallel. Nothing may modify these Transformations in the meantime.
+	 * @param transforms any transformations; those with parents are covered by their roots.
+	 */
+	public static void updateAll(Collection<Transform> transforms) {
+		transforms.parallelStream()
+				.filter(t -> t.parent == null && (t.worldDirty || t.childrenDirty))
+				.forEach(Transform::updateSubtree);
+	}
+	
+	/**
+	 * Updates the world matrix of this Transformation and of every stale descendant.
+	 */
+	private void updateSubtree() {
+		
+		boolean moved = worldDirty;
+		if(moved) updateWorld();
+		
+		//Every child of a transformation which moved is stale too.
+		if(moved || childrenDirty) {
+			childrenDirty = false;
+			for(Transform child : children) {
+				if(child.worldDirty || child.childrenDirty) child.updateSubtree();
+			}
+		}
+	}
+	
+	/**
+	 * Recomputes the world matrix of this Transformation, and of any stale ancestors.
+	 * The locks on this Transformation and every ancestor are taken first (always from
+	 * the bottom up), so that no change above can slip in between computing a world matrix
+	 * and marking it up to date, which would otherwise leave it stale but marked clean.
+	 */
+	private void updateWorld() {
+		lockAndUpdate(this, this);
+	}
+	
+	private static void lockAndUpdate(Transform locked, Transform target) {
+		
+		synchronized(locked) {
+			Transform parent = locked.parent;
+			if(parent != null) lockAndUpdate(parent, target);
+			else target.computeWorld();
+		}
+	}
+	
+	/**
+	 * Computes the world matrix from the top down. Only called holding every lock from here to the root.
+	 */
+	private void computeWorld() {
+		
+		//Another thread may have got here first.
+		if(!worldDirty) return;
+		
+		if(parent == null) world.load(transf);
+		else {
+			parent.computeWorld();
+			Matrix4f.mul(parent.world, transf, world);
+		}
+		
+		worldVersion++;
+		worldDirty = false;
+	}
+	
+	/**
+	 * Records a change to the local transformation. Only called holding the lock on this Transformation,
+	 * so that it can't happen while this or any descendant is recomputing its world matrix.
+	 */
+	private void changed() {
+		markWorldDirty();
+	}
+	
+	/**
+	 * Marks the world matrix of this Transformation and its descendants as stale,
+	 * and flags each ancestor so that the next updateAll() visits them.
+	 */
+	private void markWorldDirty() {
+		
+		markSubtreeDirty();
+		
+		for(Transform t = parent; t != null && !t.childrenDirty; t = t.parent) {
+			t.childrenDirty = true;
+		}
+	}
+	
+	private void markSubtreeDirty() {
+		
+		//Descendants of a stale transformation are already stale.
+		if(worldDirty) return;
+		
+		worldDirty = true;
+		for(Transform child : children) child.markSubtreeDirty();
+	}
+	
+	/**
+	 * Stores the world matrix of this Transformation in the given array,
+	 * in column-major order (as OpenGL expects), without allocating.
+	 * Without a parent, this is the same as asMatrix().
+	 * @param dest the array in which to store the matrix.
+	 * @param offset the index of the first of the 16 elements to write.
+	 */
+	public synchronized void store(float[] dest, int offset) {
+		
+		if(worldDirty) updateWorld();
+		Matrix4f t = world;
+		dest[offset]      = t.m00; dest[offset + 1]  = t.m01; dest[offset + 2]  = t.m02; dest[offset + 3]  = t.m03;
+		dest[offset + 4]  = t.m10; dest[offset + 5]  = t.m11; dest[offset + 6]  = t.m12; dest[offset + 7]  = t.m13;
+		dest[offset + 8]  = t.m20; dest[offset + 9]  = t.m21; dest[offset + 10] = t.m22; dest[offset + 11] = t.m23;
+		dest[offset + 12] = t.m30; dest[offset + 13] = t.m31; dest[offset + 14] = t.m32; dest[offset + 15] = t.m33;
+	}
+	
 	/**
 	 * Changes this Transformation to represent an equivalent
 	 * geometric transformation as the given transformation matrix.
 	 * @param t a transformation matrix.
 	 */
-	public void loadMatrix(Matrix4f t) {
+	public synchronized void loadMatrix(Matrix4f t) {
 		transf = new Matrix4f(t);
+		changed();
 	}
 	
 	/**
@@ -109,7 +335,7 @@ public class Transform {
 	 * @param t a transformation.
 	 */
 	public void loadTransformation(Transform t) {
-		transf = new Matrix4f(t.transf);
+		loadMatrix(t.asMatrix());
 	}
 	
 	/**
@@ -120,8 +346,9 @@ public class Transform {
 	 * method name indicates local and global transformations respectively.
 	 * @param t a transformation matrix.
 	 */
-	public void transform(Matrix4f t) {
+	public synchronized void transform(Matrix4f t) {
 		Matrix4f.mul(transf, t, transf);
+		changed();
 	}
 	
 	/**
@@ -133,7 +360,7 @@ public class Transform {
 	 * @param t a transformation.
 	 */
 	public void transform(Transform t) {
-		Matrix4f.mul(transf, t.asMatrix(), transf);
+		transform(t.asMatrix());
 	}
 	
 	/**
@@ -144,8 +371,9 @@ public class Transform {
 	 * method name indicates local and global transformations respectively.
 	 * @param t a transformation matrix.
 	 */
-	public void Transform(Matrix4f T) {
+	public synchronized void Transform(Matrix4f T) {
 		Matrix4f.mul(T, transf, transf);
+		changed();
 	}
 	
 	/**
@@ -157,7 +385,7 @@ public class Transform {
 	 * @param t a transformation.
 	 */
 	public void Transform(Transform T) {
-		Matrix4f.mul(T.asMatrix(), transf, transf);
+		Transform(T.asMatrix());
 	}
 	
 	/**
@@ -166,7 +394,7 @@ public class Transform {
 	 * The position is in global world space coordinates.
 	 * @return the position/translation.
 	 */
-	public Vector3f getPosition() {
+	public synchronized Vector3f getPosition() {
 		return Matrix.extrTranslation(transf);
 	}
 	
@@ -176,7 +404,7 @@ public class Transform {
 	 * The position is in global world space coordinates.
 	 * @param pos a position/translation.
 	 */
-	public void setPosition(Vector3f pos) {
+	public synchronized void setPosition(Vector3f pos) {
 		transf = Matrix.remTranslation(transf);
 		Transform(Matrix.genTranslation(pos));
 	}
@@ -193,8 +421,16 @@ public class Transform {
 	 * method name indicates local and global transformations respectively.
 	 * @param transl a translation vector.
 	 */
-	public void translate(Vector3f transl) {
-		transform(Matrix.genTranslation(transl));
+	public synchronized void translate(Vector3f transl) {
+		
+		//Equivalent to transform(Matrix.genTranslation(transl)), without the matrices.
+		Matrix4f t = transf;
+		float x = transl.x, y = transl.y, z = transl.z;
+		t.m30 += t.m00 * x + t.m10 * y + t.m20 * z;
+		t.m31 += t.m01 * x + t.m11 * y + t.m21 * z;
+		t.m32 += t.m02 * x + t.m12 * y + t.m22 * z;
+		t.m33 += t.m03 * x + t.m13 * y + t.m23 * z;
+		changed();
 	}
 	
 	public void translate(Vector2f transl) {
@@ -209,14 +445,39 @@ public class Transform {
 	 * method name indicates local and global transformations respectively.
 	 * @param transl a translation vector.
 	 */
-	public void Translate(Vector3f Transl) {
-		Transform(Matrix.genTranslation(Transl));
+	public synchronized void Translate(Vector3f Transl) {
+		
+		//Equivalent to Transform(Matrix.genTranslation(Transl)), without the matrices.
+		Matrix4f t = transf;
+		float x = Transl.x, y = Transl.y, z = Transl.z;
+		t.m00 += x * t.m03; t.m01 += y * t.m03; t.m02 += z * t.m03;
+		t.m10 += x * t.m13; t.m11 += y * t.m13; t.m12 += z * t.m13;
+		t.m20 += x * t.m23; t.m21 += y * t.m23; t.m22 += z * t.m23;
+		t.m30 += x * t.m33; t.m31 += y * t.m33; t.m32 += z * t.m33;
+		changed();
 	}
 	
 	public void Translate(Vector2f transl) {
 		Translate(new Vector3f(transl.x, transl.y, 0.0F));
 	}
 	
+	/**
+	 * Converts a direction in local object space into global world space,
+	 * such that Translate(toGlobal(v)) is equivalent to translate(v).
+	 * @param local a direction in local object space.
+	 * @param dest the vector in which to store the global direction.
+	 * @return dest.
+	 */
+	public synchronized Vector3f toGlobal(Vector3f local, Vector3f dest) {
+		
+		Matrix4f t = transf;
+		float x = t.m00 * local.x + t.m10 * local.y + t.m20 * local.z;
+		float y = t.m01 * local.x + t.m11 * local.y + t.m21 * local.z;
+		float z = t.m02 * local.x + t.m12 * local.y + t.m22 * local.z;
+		dest.set(x, y, z);
+		return dest;
+	}
+	
 	/**
 	 * Returns the rotation associated with this Transformation.
 	 * Can be interpreted as the orientation of an object.
@@ -224,7 +485,7 @@ public class Transform {
 	 * but is about the objects local origin.
 	 * @return the orientation/rotation, as a quaternion.
 	 */
-	public Quaternion getOrientation() {
+	public synchronized Quaternion getOrientation() {
 		return Matrix.extrRotation(transf);
 	}
 	
@@ -234,7 +495,7 @@ public class Transform {
 	 * direction of an object is taken to be (0, 0, -1).
 	 * @return unit vector in forward direction.
 	 */
-	public Vector3f getForwardVector() {
+	public synchronized Vector3f getForwardVector() {
 		Vector3f dir = Matrix.transfDirVec(transf, new Vector3f(0.0F, 0.0F, -1.0F));
 		dir.normalise();
 		return dir;
@@ -251,7 +512,7 @@ public class Transform {
 	 * This is overloaded to accept both Euler angles and quaternions.
 	 * @param rot an orientation/rotation, in degrees.
 	 */
-	public void setOrientation(Vector3f rot) {
+	public synchronized void setOrientation(Vector3f rot) {
 		transf = Matrix.remRotation(transf);
 		Rotate(rot);
 	}
@@ -264,7 +525,7 @@ public class Transform {
 	 * This is overloaded to accept both Euler angles and quaternions.
 	 * @param rot an orientation/rotation.
 	 */
-	public void setOrientation(Quaternion rot) {
+	public synchronized void setOrientation(Quaternion rot) {
 		transf = Matrix.remRotation(transf);
 		Rotate(rot);
 	}
@@ -326,7 +587,7 @@ public class Transform {
 	 * This is overloaded to accept both Euler angles and quaternions.
 	 * @param rot a rotation, in degrees (see description above).
 	 */
-	public void Rotate(Vector3f rot) {
+	public synchronized void Rotate(Vector3f rot) {
 		Vector3f pos = Matrix.extrTranslation(transf);
 		transf = Matrix.remTranslation(transf);
 		Transform(Matrix.genRotation(rot));
@@ -343,7 +604,7 @@ public class Transform {
 	 * This is overloaded to accept both Euler angles and quaternions.
 	 * @param rot a rotation.
 	 */
-	public void Rotate(Quaternion rot) {
+	public synchronized void Rotate(Quaternion rot) {
 		Vector3f pos = Matrix.extrTranslation(transf);
 		transf = Matrix.remTranslation(transf);
 		Transform(Matrix.genRotation(rot));
@@ -361,7 +622,7 @@ public class Transform {
 	 * @param rot a rotation (the angle), in degrees.
 	 * @param axis the axis to rotate about.
 	 */
-	public void Rotate(float rot, Vector3f axis) {
+	public synchronized void Rotate(float rot, Vector3f axis) {
 		Vector3f pos = Matrix.extrTranslation(transf);
 		transf = Matrix.remTranslation(transf);
 		Transform(Matrix.genRotation(rot, axis));
@@ -377,7 +638,7 @@ public class Transform {
 	 * @param dir the direction of the line.
 	 * @param point any point on the line.
 	 */
-	public void rotateAboutLine(float rot, Vector3f dir, Vector3f point) {
+	public synchronized void rotateAboutLine(float rot, Vector3f dir, Vector3f point) {
 		Vector3f pos = Matrix.extrTranslation(transf);
 		transf = Matrix.remTranslation(transf);
 		Transform(Matrix.genRotationAboutLine(rot, dir, point));
@@ -390,7 +651,7 @@ public class Transform {
 	 * The scale is in local object space (acting with intrinsic axes).
 	 * @return the scale vector.
 	 */
-	public Vector3f getScale() {
+	public synchronized Vector3f getScale() {
 		return Matrix.extrScale(transf);
 	}
 	
@@ -400,9 +661,10 @@ public class Transform {
 	 * The scale is in local object space (acting with intrinsic axes).
 	 * @param scale a scale vector.
 	 */
-	public void setScale(Vector3f scale) {
+	public synchronized void setScale(Vector3f scale) {
 		transf = Matrix.remScale(transf);
 		Matrix4f.mul(transf, Matrix.genScale(scale), transf);
+		changed();
 	}
 	
 	public void setScale(Vector2f scale) {
@@ -414,4 +676,4 @@ public class Transform {
 		return o instanceof Transform &&
 				Matrix.equal(((Transform) o).asMatrix(), asMatrix());
 	}
-}
+}
\ No newline at end of file
@@ -2,6 +2,11 @@ package engine.voxel;
 
 import engine.model.Texture;
 
+/**
+ * A type of block. A single instance of each block is shared by every voxel of that type,
+ * see BlockRegistry. The block data of a voxel is passed to the methods which depend on it.
+ * @author Alec
+ */
 public abstract class Block {
 	
 	public enum Side { TOP, BOTTOM, NORTH, EAST, SOUTH, WEST }
@@ -10,5 +15,16 @@ public abstract class Block {
 	
 	public Texture getTexture(Side side) { return Texture.BLANK; }
 	
+	public Texture getTexture(Side side, int data) { return getTexture(side); }
+	
 	public boolean isOpaque() { return true; }
+	
+	public boolean isOpaque(int data) { return isOpaque(); }
+	
+	/**
+	 * Returns whether entities collide with this block. By default, opaque blocks are solid.
+	 */
+	public boolean isSolid() { return isOpaque(); }
+	
+	public boolean isSolid(int data) { return isSolid(); }
 }
\ No newline at end of file
@@ -1,5 +1,71 @@
 package engine.voxel;
 
-public class BlockFace {
+import engine.voxel.Block.Side;
 
+/**
+ * The geometry of each side of a block: the axis it faces along, and in which direction.
+ * Axes are numbered 0 (x), 1 (y) and 2 (z); z is up.
+ * @author Alec
+ */
+public final class BlockFace {
+	
+	private static final Side[] SIDES = Side.values();
+	
+	/** The axis each side faces along, indexed by Side.ordinal(). */
+	private static final int[] AXIS = new int[SIDES.length];
+	
+	/** Whether each side faces in the positive direction, indexed by Side.ordinal(). */
+	private static final boolean[] POSITIVE = new boolean[SIDES.length];
+	
+	static {
+		set(Side.TOP, 2, true);
+		set(Side.BOTTOM, 2, false);
+		set(Side.NORTH, 1, true);
+		set(Side.SOUTH, 1, false);
+		set(Side.EAST, 0, true);
+		set(Side.WEST, 0, false);
+	}
+	
+	private BlockFace() {}
+	
+	private static void set(Side side, int axis, boolean positive) {
+		AXIS[side.ordinal()] = axis;
+		POSITIVE[side.ordinal()] = positive;
+	}
+	
+	/**
+	 * Returns the axis along which the given side faces.
+	 */
+	public static int axisOf(Side side) { return AXIS[side.ordinal()]; }
+	
+	/**
+	 * Returns whether the given side faces in the positive direction of its axis.
+	 */
+	public static boolean isPositive(Side side) { return POSITIVE[side.ordinal()]; }
+	
+	/**
+	 * Returns the offset of the neighbouring voxel on the given side, along the given axis.
+	 */
+	public static int offset(Side side, int axis) {
+		if(AXIS[side.ordinal()] != axis) return 0;
+		return POSITIVE[side.ordinal()] ? 1 : -1;
+	}
+	
+	/**
+	 * Returns the side facing along the given axis, in the given direction.
+	 */
+	public static Side sideOf(int axis, boolean positive) {
+		
+		for(Side side : SIDES) {
+			if(AXIS[side.ordinal()] == axis && POSITIVE[side.ordinal()] == positive) return side;
+		}
+		throw new IllegalArgumentException("Invalid axis " + axis + ".");
+	}
+	
+	/**
+	 * Returns the side opposite the given side.
+	 */
+	public static Side opposite(Side side) {
+		return sideOf(axisOf(side), !isPositive(side));
+	}
 }
\ No newline at end of file
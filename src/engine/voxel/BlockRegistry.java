@@ -0,0 +1,73 @@
+package engine.voxel;
+
+import java.util.Arrays;
+
+/**
+ * Maps block ids to a single shared instance of each type of block.
+ * Blocks are flyweights; any per-voxel state is kept in the block data
+ * stored alongside the id, and passed to the block where it is needed.
+ * Id 0 is reserved for air, which has no block instance.
+ * @author Alec
+ */
+public class BlockRegistry {
+	
+	private Block[] blocks = new Block[64];
+	
+	/**
+	 * Registers the block to be used for the given id.
+	 * @param id the block id, greater than 0.
+	 * @param block the shared instance of the block.
+	 */
+	public void register(int id, Block block) {
+		
+		if(id <= 0) throw new IllegalArgumentException("Block id must be positive.");
+		if(block == null) throw new IllegalArgumentException("Block must not be null.");
+		
+		if(id >= blocks.length) {
+			blocks = Arrays.copyOf(blocks, Math.max(id + 1, blocks.length * 2));
+		}
+		blocks[id] = block;
+	}
+	
+	/**
+	 * Registers the block to be used for the given id.
+	 * A single instance is created immediately, using the no-argument constructor.
+	 * @param id the block id, greater than 0.
+	 * @param block the class of the block.
+	 */
+	public <B extends Block> void register(int id, Class<B> block) {
+		
+		try {
+			register(id, block.getConstructor().newInstance());
+		} catch(ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Block " + block.getName()
+					+ " has no accessible no-argument constructor.", e);
+		}
+	}
+	
+	/**
+	 * Returns the shared block with the given id,
+	 * or null for air and any id which hasn't been registered.
+	 */
+	public Block get(int id) {
+		return id > 0 && id < blocks.length ? blocks[id] : null;
+	}
+	
+	/**
+	 * Returns whether a block with the given id is opaque with the given data.
+	 * Air and unregistered ids are never opaque.
+	 */
+	public boolean isOpaque(int id, int data) {
+		Block block = get(id);
+		return block != null && block.isOpaque(data);
+	}
+	
+	/**
+	 * Returns whether a block with the given id is solid with the given data.
+	 * Air and unregistered ids are never solid.
+	 */
+	public boolean isSolid(int id, int data) {
+		Block block = get(id);
+		return block != null && block.isSolid(data);
+	}
+}
\ No newline at end of file
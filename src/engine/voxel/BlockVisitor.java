@@ -0,0 +1,20 @@
+package engine.voxel;
+
+/**
+ * Receives the blocks of a region of a voxel grid, one voxel at a time.
+ * See VoxelGrid.forEachBlock().
+ * @author Alec
+ */
+@FunctionalInterface
+public interface BlockVisitor {
+	
+	/**
+	 * Called for each voxel in the region.
+	 * @param x the x coordinate of the voxel, in the grid.
+	 * @param y the y coordinate of the voxel, in the grid.
+	 * @param z the z coordinate of the voxel, in the grid.
+	 * @param id the block id of the voxel (0 for air).
+	 * @param data the block data of the voxel.
+	 */
+	void visit(int x, int y, int z, int id, int data);
+}
\ No newline at end of file
@@ -1,89 +1,329 @@
 package engine.voxel;
 
-import java.io.DataInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import engine.voxel.storage.BlockStorage;
+import engine.voxel.storage.UniformStorage;
 
 public class Chunk {
     
+    /** The width of a section, the unit in which chunks are remeshed. */
+    public static final int SECTION_SIZE = 16;
+    
     private VoxelGrid grid;
     
     private int size;
 	
 	private int cx, cy, cz;
 	
-	private int[][][] blocks;
-	private int[][][] data;
+	/** log2 of the size, or -1 if the size isn't a power of two. */
+	private int shift;
+	
+	/**
+	 * Block ids and data, indexed by indexOf(x, y, z).
+	 * Chunks start out uniform (all air), and are only given
+	 * full palette storage once they hold more than one block.
+	 */
+	private BlockStorage storage;
+	
+	/** Incremented by every change, so that a save can tell whether it is still current. */
+	private volatile int version = 0;
+	
+	/**
+	 * The latest version known to be saved (or loaded). Only ever raised, and only by compare and set,
+	 * so that a save finishing on another thread can never hide a change made in the meantime.
+	 */
+	private final AtomicInteger savedVersion;
+	
+	/** The width of each section, and the number of sections along each axis. */
+	private int sectionSize, sections;
+	
+	/** Sections which have changed since they were last meshed, by sectionIndex(). */
+	private BitSet meshDirty;
 	
 	public Chunk(VoxelGrid grid, int size, int cx, int cy, int cz) {
 	    
 	    this.grid = grid;
         this.size = size;
+        shift = Integer.bitCount(size) == 1 ? Integer.numberOfTrailingZeros(size) : -1;
 	    this.cx = cx;
         this.cy = cy;
         this.cz = cz;
         
-        blocks = new int[size][size][size];
-        data = new int[size][size][size];
+        storage = new UniformStorage(size * size * size, 0, 0);
+        savedVersion = new AtomicInteger(version);
+        
+        //Chunks which don't divide evenly into sections are treated as a single section.
+        sectionSize = size % SECTION_SIZE == 0 ? SECTION_SIZE : size;
+        sections = size / sectionSize;
+        meshDirty = new BitSet(sections * sections * sections);
+        markAllSectionsDirty();
+	}
+	
+	/**
+	 * Copy constructor; see snapshot().
+	 */
+	private Chunk(Chunk chunk) {
+	    
+	    grid = chunk.grid;
+	    size = chunk.size;
+	    shift = chunk.shift;
+	    cx = chunk.cx;
+	    cy = chunk.cy;
+	    cz = chunk.cz;
+	    storage = chunk.storage.copy();
+	    version = chunk.version;
+	    savedVersion = new AtomicInteger(chunk.savedVersion.get());
+	    sectionSize = chunk.sectionSize;
+	    sections = chunk.sections;
+	    meshDirty = (BitSet) chunk.meshDirty.clone();
 	}
 	
 	public VoxelGrid getGrid() { return grid; }
 	
+	public int getSize() { return size; }
+	
 	public int getBlockId(int x, int y, int z) {
-	    return blocks[x][y][z];
+	    return storage.getId(indexOf(x, y, z));
 	}
 	
 	public int getBlockData(int x, int y, int z) {
-	    return data[x][y][z];
+	    return storage.getData(indexOf(x, y, z));
+	}
+	
+	/**
+	 * Sets the block at the given local coordinates, marking the affected sections
+	 * for remeshing, and notifying the grid so that it can do the same for neighbours.
+	 * @return whether the block was changed.
+	 */
+	public boolean setBlock(int x, int y, int z, int id, int data) {
+	    
+	    int index = indexOf(x, y, z);
+	    if(storage.getId(index) == id && storage.getData(index) == data) return false;
+	    
+	    storage = storage.set(index, id, data);
+	    version++;
+	    
+	    //Faces of the neighbouring voxels may be revealed or hidden too.
+	    markSectionsDirty(x - 1, y - 1, z - 1, x + 1, y + 1, z + 1);
+	    grid.regionChanged(this, x, y, z, x, y, z);
+	    return true;
+	}
+	
+	/**
+	 * Returns whether this chunk has changed since it was last saved or loaded.
+	 */
+	public boolean isDirty() { return version != savedVersion.get(); }
+	
+	/**
+	 * Returns a copy of this chunk, which can be safely saved (or otherwise read)
+	 * on another thread. Later changes to this chunk won't affect the copy.
+	 */
+	public Chunk snapshot() { return new Chunk(this); }
+	
+	/**
+	 * Returns the number of changes made to this chunk (and the chunk it was copied from).
+	 */
+	public int getVersion() { return version; }
+	
+	/**
+	 * Marks this chunk as saved up to the given version, once a snapshot of it has been written.
+	 * The chunk stays dirty if it has changed since the snapshot was taken.
+	 * @param version the version of the snapshot which was written.
+	 */
+	void markSaved(int version) {
+	    
+	    int saved;
+	    do {
+	        saved = savedVersion.get();
+	        if(version - saved <= 0) return;
+	    } while(!savedVersion.compareAndSet(saved, version));
+	}
+	
+	/**
+	 * Sets every block in the given box of local coordinates (inclusive), without any bookkeeping;
+	 * see edited(). Filling the whole chunk replaces its storage with a single value.
+	 * @return whether any block was changed.
+	 */
+	boolean fillRaw(int x0, int y0, int z0, int x1, int y1, int z1, int id, int data) {
+	    
+	    //Runs of z are contiguous in storage, as are whole yz planes.
+	    boolean planes = y0 == 0 && y1 == size - 1 && z0 == 0 && z1 == size - 1;
+	    
+	    if(planes) return fillRange(indexOf(x0, 0, 0), indexOf(x1, size - 1, size - 1) + 1, id, data);
+	    
+	    boolean changed = false;
+	    for(int x = x0; x <= x1; x++) {
+	        for(int y = y0; y <= y1; y++) {
+	            if(fillRange(indexOf(x, y, z0), indexOf(x, y, z1) + 1, id, data)) changed = true;
+	        }
+	    }
+	    return changed;
+	}
+	
+	private boolean fillRange(int from, int to, int id, int data) {
+	    
+	    if(storage.isFilled(from, to, id, data)) return false;
+	    storage = storage.fill(from, to, id, data);
+	    return true;
+	}
+	
+	/**
+	 * Sets a single block without any bookkeeping; see edited().
+	 * @return whether the block was changed.
+	 */
+	boolean setRaw(int x, int y, int z, int id, int data) {
+	    
+	    int index = indexOf(x, y, z);
+	    if(storage.getId(index) == id && storage.getData(index) == data) return false;
+	    
+	    storage = storage.set(index, id, data);
+	    return true;
+	}
+	
+	/**
+	 * Records that the blocks in the given box of local coordinates (inclusive)
+	 * have been written with fillRaw() or setRaw(), marking the chunk for saving,
+	 * the affected sections for remeshing, and notifying the grid.
+	 */
+	void edited(int x0, int y0, int z0, int x1, int y1, int z1) {
+	    
+	    version++;
+	    markSectionsDirty(x0 - 1, y0 - 1, z0 - 1, x1 + 1, y1 + 1, z1 + 1);
+	    grid.regionChanged(this, x0, y0, z0, x1, y1, z1);
+	}
+	
+	/**
+	 * Returns the width of each section of this chunk.
+	 */
+	public int getSectionSize() { return sectionSize; }
+	
+	/**
+	 * Returns the number of sections along each axis of this chunk.
+	 */
+	public int getSections() { return sections; }
+	
+	/**
+	 * Returns the index of the section with the given section coordinates.
+	 */
+	public int sectionIndex(int sx, int sy, int sz) {
+	    return (sx * sections + sy) * sections + sz;
+	}
+	
+	/**
+	 * Marks every section overlapping the given box of local coordinates (inclusive) for remeshing.
+	 * The box is clipped to the chunk.
+	 */
+	public void markSectionsDirty(int x0, int y0, int z0, int x1, int y1, int z1) {
+	    
+	    int sx0 = Math.max(0, x0) / sectionSize, sx1 = Math.min(size - 1, x1) / sectionSize;
+	    int sy0 = Math.max(0, y0) / sectionSize, sy1 = Math.min(size - 1, y1) / sectionSize;
+	    int sz0 = Math.max(0, z0) / sectionSize, sz1 = Math.min(size - 1, z1) / sectionSize;
+	    
+	    for(int sx = sx0; sx <= sx1; sx++) {
+	        for(int sy = sy0; sy <= sy1; sy++) {
+	            for(int sz = sz0; sz <= sz1; sz++) {
+	                meshDirty.set(sectionIndex(sx, sy, sz));
+	            }
+	        }
+	    }
+	}
+	
+	/**
+	 * Marks every section of this chunk for remeshing.
+	 */
+	public void markAllSectionsDirty() {
+	    meshDirty.set(0, sections * sections * sections);
 	}
 	
+	/**
+	 * Returns the index of the next section at or after the given index
+	 * which needs remeshing, or -1 if there is none.
+	 */
+	public int nextDirtySection(int from) {
+	    return meshDirty.nextSetBit(from);
+	}
+	
+	/**
+	 * Returns whether any section of this chunk needs remeshing.
+	 */
+	public boolean hasDirtySections() { return !meshDirty.isEmpty(); }
+	
+	/**
+	 * Marks the given section as meshed, once a snapshot of it has been taken for meshing.
+	 */
+	public void clearSectionDirty(int section) {
+	    meshDirty.clear(section);
+	}
+	
+	/**
+	 * Returns whether every voxel in this chunk is the same block.
+	 */
+	public boolean isUniform() { return storage.isUniform(); }
+	
 	public int getX() { return cx; }
 	
 	public int getY() { return cy; }
 	
 	public int getZ() { return cz; }
 	
-	public void save() {
+	/**
+	 * Returns the flat storage index of the given local voxel position.
+	 * z varies fastest, so scans in x-y-z order walk memory sequentially.
+	 */
+	public int indexOf(int x, int y, int z) {
+	    
+	    if(shift >= 0) return (((x << shift) | y) << shift) | z;
+	    return (x * size + y) * size + z;
+	}
+	
+	/**
+	 * Writes this chunk to its region file.
+	 * The chunk is only marked as saved once the write has succeeded.
+	 * @return whether the chunk was written.
+	 */
+	public boolean save() {
 	    
-	    try(FileOutputStream fos = new FileOutputStream(getFileName())) {
-	        DataOutputStream dos = new DataOutputStream(fos);
+	    int version = this.version;
+	    try {
+	        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	        
+	        //Uniform chunks are written as a single id and data value.
+	        storage.write(new DataOutputStream(bytes));
+	        grid.getRegions().write(cx, cy, cz, bytes.toByteArray());
+	        
+	        markSaved(version);
+	        return true;
 	        
-	        for(int x = 0; x < size; x++) {
-	            for(int y = 0; y < size; y++) {
-	                for(int z = 0; z < size; z++) {
-	                    
-	                    dos.writeInt(blocks[x][y][z]);
-	                    dos.writeInt(data[x][y][z]);
-	                }
-	            }
-	        }
 	    } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
 	}
 	
-	public void load() {
+	/**
+	 * Reads this chunk from its region file.
+	 * The storage is decoded directly from the memory mapped file.
+	 * @return false if this chunk has never been saved, in which case it is unchanged.
+	 */
+	public boolean load() {
 	    
-	    try(FileInputStream fis = new FileInputStream(getFileName())) {
-	        DataInputStream dis = new DataInputStream(fis);
+	    try {
+	        BlockStorage loaded = grid.getRegions().read(cx, cy, cz,
+	                payload -> BlockStorage.read(payload, size * size * size));
+	        if(loaded == null) return false;
+	        
+	        storage = loaded;
+	        markSaved(version);
+	        return true;
 	        
-	        for(int x = 0; x < size; x++) {
-                for(int y = 0; y < size; y++) {
-                    for(int z = 0; z < size; z++) {
-                        
-                        blocks[x][y][z] = dis.readInt();
-                        data[x][y][z] = dis.readInt();
-                    }
-                }
-	        }
 	    } catch(IOException e) {
 	        e.printStackTrace();
+	        return false;
 	    }
 	}
-	
-	private String getFileName() {
-	    return "saves/" + grid.getName() + "/c" + cx + "," + cy + "," + cz;
-	}
 }
\ No newline at end of file
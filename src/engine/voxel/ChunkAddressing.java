@@ -0,0 +1,61 @@
+package engine.voxel;
+
+/**
+ * Converts voxel coordinates to chunk coordinates and local coordinates within a chunk.
+ * Rounds towards negative infinity, so that voxel -1 is the last voxel of chunk -1.
+ * Power-of-two chunk sizes use a shift and mask, otherwise floorDiv and floorMod are used.
+ * @author Alec
+ */
+public final class ChunkAddressing {
+	
+	private final int size, shift, mask;
+	
+	private final boolean powerOfTwo;
+	
+	/**
+	 * @param size the width of a chunk in voxels.
+	 */
+	public ChunkAddressing(int size) {
+		
+		if(size <= 0) throw new IllegalArgumentException("Chunk size must be positive.");
+		
+		this.size = size;
+		powerOfTwo = Integer.bitCount(size) == 1;
+		shift = Integer.numberOfTrailingZeros(size);
+		mask = size - 1;
+	}
+	
+	/**
+	 * Returns the coordinate of the chunk containing the given voxel coordinate.
+	 */
+	public int chunkOf(int v) {
+		return powerOfTwo ? v >> shift : Math.floorDiv(v, size);
+	}
+	
+	/**
+	 * Returns the coordinate of the given voxel coordinate within its chunk.
+	 */
+	public int localOf(int v) {
+		return powerOfTwo ? v & mask : Math.floorMod(v, size);
+	}
+	
+	/**
+	 * Returns the voxel coordinate of the first voxel in the given chunk.
+	 */
+	public int originOf(int c) {
+		return powerOfTwo ? c << shift : c * size;
+	}
+	
+	/**
+	 * Packs three coordinates into a single value, for use as a hash key.
+	 * Each coordinate keeps its lowest 21 bits, so keys are unique within about a million
+	 * chunks in each direction. Used for chunk and region coordinates alike.
+	 */
+	public static long key(int x, int y, int z) {
+		return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+	}
+	
+	public int getSize() { return size; }
+	
+	public boolean isPowerOfTwo() { return powerOfTwo; }
+}
\ No newline at end of file
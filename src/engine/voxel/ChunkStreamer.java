@@ -0,0 +1,274 @@
+package engine.voxel;
+
+import static engine.voxel.ChunkAddressing.key;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads and saves the chunks of a voxel grid on a small pool of background threads,
+ * so that the render and game-tick threads never wait on the disk.
+ * Loads are served nearest-to-centre first, and may be cancelled if the chunk
+ * leaves the loaded region before they start. Saves are write-behind; a snapshot
+ * of the chunk is taken immediately and written out once no loads are waiting.
+ * Loaded chunks are queued until the owning thread installs them, see poll().
+ * @author Alec
+ */
+public class ChunkStreamer {
+	
+	/** Saves are queued behind every load. */
+	private static final long SAVE_PRIORITY = Long.MAX_VALUE;
+	
+	private final VoxelGrid grid;
+	
+	private final ThreadPoolExecutor executor;
+	
+	/** Loads which have been requested but haven't yet completed, by chunk position. */
+	private final Map<Long, LoadTask> loads = new ConcurrentHashMap<>();
+	
+	/** Snapshots which have been queued for saving but not yet written, by chunk position. */
+	private final Map<Long, Chunk> saves = new ConcurrentHashMap<>();
+	
+	/** Serialises the writes of each chunk, striped by chunk position. */
+	private final Object[] writeLocks = new Object[64];
+	
+	/** Chunks which have finished loading, waiting to be installed. */
+	private final Queue<Chunk> loaded = new ConcurrentLinkedQueue<>();
+	
+	/** Breaks ties between tasks of equal priority, in order of submission. */
+	private final AtomicLong sequence = new AtomicLong();
+	
+	/**
+	 * Constructs a new streamer for the given grid.
+	 * @param grid the grid whose chunks are to be loaded and saved.
+	 * @param threads the maximum number of I/O threads.
+	 */
+	public ChunkStreamer(VoxelGrid grid, int threads) {
+		
+		this.grid = grid;
+		for(int i = 0; i < writeLocks.length; i++) writeLocks[i] = new Object();
+		
+		AtomicInteger count = new AtomicInteger();
+		ThreadFactory factory = r -> {
+			Thread thread = new Thread(r, "chunk-io-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<>(), factory);
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Requests that the given chunk be loaded in the background.
+	 * If the chunk is already being loaded, the existing request is returned,
+	 * unless it has been cancelled.
+	 * Once complete, the chunk will also be available from poll().
+	 * @param cx the x coordinate of the chunk.
+	 * @param cy the y coordinate of the chunk.
+	 * @param cz the z coordinate of the chunk.
+	 * @param priority lower values are loaded first, such as the distance to the centre.
+	 * @return a future which completes with the loaded chunk.
+	 */
+	public CompletableFuture<Chunk> load(int cx, int cy, int cz, long priority) {
+		
+		long key = key(cx, cy, cz);
+		LoadTask task = new LoadTask(cx, cy, cz, priority);
+		
+		//A cancelled load may still be running, but it will never deliver its chunk, so replace it.
+		LoadTask current = loads.compute(key,
+				(k, existing) -> existing == null || existing.cancelled ? task : existing);
+		if(current != task) return current.future;
+		
+		executor.execute(task);
+		return task.future;
+	}
+	
+	/**
+	 * Cancels any pending loads for chunks outside of the given region.
+	 * Loads which have already started are allowed to finish,
+	 * but their chunks will not be returned from poll().
+	 * @param cx the x coordinate of the central chunk.
+	 * @param cy the y coordinate of the central chunk.
+	 * @param cz the z coordinate of the central chunk.
+	 * @param radius the number of chunks in each direction to keep.
+	 */
+	public void cancelOutside(int cx, int cy, int cz, int radius) {
+		
+		for(LoadTask task : loads.values()) {
+			
+			if(Math.abs(task.cx - cx) > radius || Math.abs(task.cy - cy) > radius
+					|| Math.abs(task.cz - cz) > radius) {
+				task.cancel();
+			}
+		}
+	}
+	
+	/**
+	 * Queues the given chunk to be saved in the background, if it has changed.
+	 * A snapshot is taken immediately, so the chunk may continue to be modified,
+	 * or be discarded. Any load of the same chunk requested before the save
+	 * completes will see the snapshot rather than the outdated file.
+	 * The chunk remains dirty until the write succeeds; if it fails,
+	 * the snapshot is kept for loads and the chunk is saved again next time.
+	 * @param chunk the chunk to save.
+	 */
+	public void save(Chunk chunk) {
+		
+		if(!chunk.isDirty()) return;
+		
+		long key = key(chunk.getX(), chunk.getY(), chunk.getZ());
+		Chunk snapshot = chunk.snapshot();
+		saves.put(key, snapshot);
+		
+		executor.execute(new Task(SAVE_PRIORITY) {
+			@Override void run0() {
+				
+				//Writes of the same chunk mustn't overtake one another.
+				synchronized(writeLock(key)) {
+					
+					//Only write the latest snapshot, if a newer one hasn't already been written.
+					//It stays visible to loads until the write has finished.
+					if(saves.get(key) != snapshot) return;
+					
+					if(snapshot.save()) {
+						chunk.markSaved(snapshot.getVersion());
+						saves.remove(key, snapshot);
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns the next chunk which has finished loading, or null if there is none.
+	 * Intended to be called by the thread which owns the grid, see VoxelGrid.update().
+	 */
+	public Chunk poll() {
+		return loaded.poll();
+	}
+	
+	/**
+	 * Returns the number of loads which have been requested but haven't yet completed.
+	 */
+	public int getPendingLoads() { return loads.size(); }
+	
+	/**
+	 * Stops accepting requests, and waits for any queued saves to be written.
+	 * Queued loads which haven't yet started are abandoned.
+	 */
+	public void shutdown() {
+		
+		for(LoadTask task : loads.values()) task.cancel();
+		executor.shutdown();
+		
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private Object writeLock(long key) {
+		return writeLocks[(int) (key ^ (key >>> 21) ^ (key >>> 42)) & (writeLocks.length - 1)];
+	}
+	
+	/**
+	 * A unit of work for the I/O threads, ordered by priority and then by submission.
+	 */
+	private abstract class Task implements Runnable, Comparable<Task> {
+		
+		final long priority, order = sequence.getAndIncrement();
+		
+		Task(long priority) {
+			this.priority = priority;
+		}
+		
+		@Override
+		public void run() {
+			
+			try {
+				run0();
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		abstract void run0();
+		
+		@Override
+		public int compareTo(Task t) {
+			if(priority != t.priority) return Long.compare(priority, t.priority);
+			else return Long.compare(order, t.order);
+		}
+	}
+	
+	/**
+	 * A request to load a single chunk.
+	 */
+	private class LoadTask extends Task {
+		
+		final int cx, cy, cz;
+		
+		final CompletableFuture<Chunk> future = new CompletableFuture<>();
+		
+		volatile boolean cancelled = false;
+		
+		LoadTask(int cx, int cy, int cz, long priority) {
+			super(priority);
+			this.cx = cx;
+			this.cy = cy;
+			this.cz = cz;
+		}
+		
+		@Override void run0() {
+			
+			long key = key(cx, cy, cz);
+			
+			try {
+				if(cancelled) return;
+				
+				//Prefer an unsaved snapshot over the (outdated) file.
+				Chunk pending = saves.get(key);
+				Chunk chunk;
+				
+				if(pending != null) {
+					chunk = pending.snapshot();
+				
+				} else {
+					chunk = new Chunk(grid, grid.getChunkSize(), cx, cy, cz);
+					chunk.load();
+				}
+				
+				if(!cancelled) loaded.add(chunk);
+				future.complete(chunk);
+			
+			} catch(RuntimeException e) {
+				future.completeExceptionally(e);
+				throw e;
+			
+			} finally {
+				loads.remove(key, this);
+			}
+		}
+		
+		void cancel() {
+			
+			cancelled = true;
+			future.cancel(false);
+			
+			//Remove queued requests now, rather than waiting for them to be dequeued.
+			if(executor.remove(this)) loads.remove(key(cx, cy, cz), this);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,235 @@
+package engine.voxel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of block edits to a voxel grid, applied all at once.
+ * Edits are grouped by chunk, and each chunk applies all of its edits in a single pass,
+ * with contiguous runs of voxels written as ranges rather than one at a time
+ * (so that filling a whole chunk just replaces its storage).
+ * Bookkeeping (saving, remeshing and ChunkEditEvents) happens once per touched chunk.
+ * Edits are applied in the order they were added. Edits to chunks which aren't loaded are ignored.
+ * Obtain a batch with VoxelGrid.edit(); batches must be applied on the thread which owns the grid.
+ * @author Alec
+ */
+public class EditBatch {
+	
+	private final VoxelGrid grid;
+	
+	private final ChunkAddressing addressing;
+	
+	private final List<Edit> edits = new ArrayList<>();
+	
+	EditBatch(VoxelGrid grid) {
+		this.grid = grid;
+		addressing = grid.getAddressing();
+	}
+	
+	/**
+	 * Sets a single block.
+	 */
+	public EditBatch set(int x, int y, int z, int id, int data) {
+		return fillBox(x, y, z, x, y, z, id, data);
+	}
+	
+	/**
+	 * Sets every block in the given box (inclusive).
+	 */
+	public EditBatch fillBox(int x0, int y0, int z0, int x1, int y1, int z1, int id, int data) {
+		
+		edits.add(new Edit(Math.min(x0, x1), Math.min(y0, y1), Math.min(z0, z1),
+				Math.max(x0, x1), Math.max(y0, y1), Math.max(z0, z1)) {
+			
+			@Override boolean apply(Chunk chunk, int ox, int oy, int oz,
+					int ax, int ay, int az, int bx, int by, int bz) {
+				
+				return chunk.fillRaw(ax - ox, ay - oy, az - oz, bx - ox, by - oy, bz - oz, id, data);
+			}
+		});
+		return this;
+	}
+	
+	/**
+	 * Sets every block whose centre is within the given radius of the given voxel.
+	 */
+	public EditBatch fillSphere(int cx, int cy, int cz, float radius, int id, int data) {
+		
+		int r = (int) Math.floor(radius);
+		float r2 = radius * radius;
+		
+		edits.add(new Edit(cx - r, cy - r, cz - r, cx + r, cy + r, cz + r) {
+			
+			@Override boolean apply(Chunk chunk, int ox, int oy, int oz,
+					int ax, int ay, int az, int bx, int by, int bz) {
+				
+				boolean changed = false;
+				for(int x = ax; x <= bx; x++) {
+					for(int y = ay; y <= by; y++) {
+						
+						//Each row of the sphere along z is a single contiguous run.
+						float h2 = r2 - (x - cx) * (x - cx) - (y - cy) * (y - cy);
+						if(h2 < 0) continue;
+						
+						int h = (int) Math.floor(Math.sqrt(h2));
+						int z0 = Math.max(az, cz - h), z1 = Math.min(bz, cz + h);
+						
+						if(z0 <= z1 && chunk.fillRaw(x - ox, y - oy, z0 - oz, x - ox, y - oy, z1 - oz, id, data)) {
+							changed = true;
+						}
+					}
+				}
+				return changed;
+			}
+		});
+		return this;
+	}
+	
+	/**
+	 * Pastes the given clipboard with its minimum corner at the given voxel.
+	 * @param skipAir whether air in the clipboard should leave the existing blocks unchanged.
+	 */
+	public EditBatch paste(VoxelClipboard clipboard, int x, int y, int z, boolean skipAir) {
+		
+		edits.add(new Edit(x, y, z, x + clipboard.getWidth() - 1,
+				y + clipboard.getDepth() - 1, z + clipboard.getHeight() - 1) {
+			
+			@Override boolean apply(Chunk chunk, int ox, int oy, int oz,
+					int ax, int ay, int az, int bx, int by, int bz) {
+				
+				boolean changed = false;
+				for(int i = ax; i <= bx; i++) {
+					for(int j = ay; j <= by; j++) {
+						for(int k = az; k <= bz; k++) {
+							
+							int id = clipboard.getBlockId(i - x, j - y, k - z);
+							if(id == 0 && skipAir) continue;
+							
+							if(chunk.setRaw(i - ox, j - oy, k - oz, id, clipboard.getBlockData(i - x, j - y, k - z))) {
+								changed = true;
+							}
+						}
+					}
+				}
+				return changed;
+			}
+		});
+		return this;
+	}
+	
+	/**
+	 * Applies every edit in this batch, and then clears it.
+	 * @return the number of chunks which were changed.
+	 */
+	public int apply() {
+		
+		//Group the edits by chunk, keeping the order in which they were added.
+		Map<Chunk, ChunkEdits> chunks = new LinkedHashMap<>();
+		
+		for(Edit edit : edits) {
+			for(int cx = addressing.chunkOf(edit.x0); cx <= addressing.chunkOf(edit.x1); cx++) {
+				for(int cy = addressing.chunkOf(edit.y0); cy <= addressing.chunkOf(edit.y1); cy++) {
+					for(int cz = addressing.chunkOf(edit.z0); cz <= addressing.chunkOf(edit.z1); cz++) {
+						
+						Chunk chunk = grid.getChunk(cx, cy, cz);
+						if(chunk == null) continue;
+						
+						ChunkEdits group = chunks.get(chunk);
+						if(group == null) chunks.put(chunk, group = new ChunkEdits(chunk));
+						group.edits.add(edit);
+					}
+				}
+			}
+		}
+		edits.clear();
+		
+		int changed = 0;
+		for(ChunkEdits group : chunks.values()) {
+			if(group.apply()) changed++;
+		}
+		return changed;
+	}
+	
+	/**
+	 * Returns the number of edits waiting to be applied.
+	 */
+	public int size() { return edits.size(); }
+	
+	/**
+	 * A single edit, affecting at most the given box of voxels (inclusive).
+	 */
+	private abstract static class Edit {
+		
+		final int x0, y0, z0, x1, y1, z1;
+		
+		Edit(int x0, int y0, int z0, int x1, int y1, int z1) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.z0 = z0;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.z1 = z1;
+		}
+		
+		/**
+		 * Applies the part of this edit which falls within a single chunk.
+		 * @param ox the x coordinate of the chunk's first voxel (and likewise oy, oz).
+		 * @param ax the lowest x coordinate of the edit within the chunk (and likewise ay, az).
+		 * @param bx the highest x coordinate of the edit within the chunk (and likewise by, bz).
+		 * @return whether any block was changed.
+		 */
+		abstract boolean apply(Chunk chunk, int ox, int oy, int oz,
+				int ax, int ay, int az, int bx, int by, int bz);
+	}
+	
+	/**
+	 * The edits touching a single chunk.
+	 */
+	private class ChunkEdits {
+		
+		final Chunk chunk;
+		
+		final List<Edit> edits = new ArrayList<>();
+		
+		ChunkEdits(Chunk chunk) {
+			this.chunk = chunk;
+		}
+		
+		/**
+		 * @return whether any block in the chunk was changed.
+		 */
+		boolean apply() {
+			
+			int size = chunk.getSize();
+			int ox = addressing.originOf(chunk.getX());
+			int oy = addressing.originOf(chunk.getY());
+			int oz = addressing.originOf(chunk.getZ());
+			
+			//The union of every edit within this chunk, in local coordinates.
+			int minX = size, minY = size, minZ = size, maxX = -1, maxY = -1, maxZ = -1;
+			
+			for(Edit edit : edits) {
+				
+				int ax = Math.max(edit.x0, ox), bx = Math.min(edit.x1, ox + size - 1);
+				int ay = Math.max(edit.y0, oy), by = Math.min(edit.y1, oy + size - 1);
+				int az = Math.max(edit.z0, oz), bz = Math.min(edit.z1, oz + size - 1);
+				
+				//Edits which change nothing needn't be saved, remeshed or reported.
+				if(!edit.apply(chunk, ox, oy, oz, ax, ay, az, bx, by, bz)) continue;
+				
+				minX = Math.min(minX, ax - ox);
+				minY = Math.min(minY, ay - oy);
+				minZ = Math.min(minZ, az - oz);
+				maxX = Math.max(maxX, bx - ox);
+				maxY = Math.max(maxY, by - oy);
+				maxZ = Math.max(maxZ, bz - oz);
+			}
+			if(maxX < 0) return false;
+			
+			chunk.edited(minX, minY, minZ, maxX, maxY, maxZ);
+			return true;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package engine.voxel;
+
+import engine.voxel.Block.Side;
+
+/**
+ * The result of a ray cast through a voxel grid; see VoxelRaycaster.
+ * Results are mutable so that they can be reused between casts without allocating.
+ * @author Alec
+ */
+public class RayHit {
+	
+	private boolean hit;
+	
+	private int x, y, z, id, data;
+	
+	private Side side;
+	
+	private float distance;
+	
+	/**
+	 * Returns whether the ray hit anything; if not, the other values are meaningless.
+	 */
+	public boolean isHit() { return hit; }
+	
+	/** Returns the x coordinate of the voxel which was hit. */
+	public int getX() { return x; }
+	
+	/** Returns the y coordinate of the voxel which was hit. */
+	public int getY() { return y; }
+	
+	/** Returns the z coordinate of the voxel which was hit. */
+	public int getZ() { return z; }
+	
+	/** Returns the id of the block which was hit. */
+	public int getBlockId() { return id; }
+	
+	/** Returns the data of the block which was hit. */
+	public int getBlockData() { return data; }
+	
+	/**
+	 * Returns the side of the voxel through which the ray entered it,
+	 * or null if the ray started inside the voxel.
+	 */
+	public Side getSide() { return side; }
+	
+	/**
+	 * Returns the distance along the ray to the point at which it entered the voxel.
+	 */
+	public float getDistance() { return distance; }
+	
+	void set(int x, int y, int z, int id, int data, Side side, float distance) {
+		
+		hit = true;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.id = id;
+		this.data = data;
+		this.side = side;
+		this.distance = distance;
+	}
+	
+	void miss(float distance) {
+		hit = false;
+		side = null;
+		this.distance = distance;
+	}
+}
\ No newline at end of file
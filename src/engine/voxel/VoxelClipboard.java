@@ -0,0 +1,61 @@
+package engine.voxel;
+
+/**
+ * A copy of a box of voxels, which can be pasted elsewhere with EditBatch.paste().
+ * @author Alec
+ */
+public class VoxelClipboard {
+	
+	private final int width, depth, height;
+	
+	private final int[] ids, data;
+	
+	/**
+	 * Constructs an empty (all air) clipboard of the given dimensions.
+	 */
+	public VoxelClipboard(int width, int depth, int height) {
+		
+		if(width <= 0 || depth <= 0 || height <= 0)
+			throw new IllegalArgumentException("Clipboard dimensions must be positive.");
+		
+		this.width = width;
+		this.depth = depth;
+		this.height = height;
+		ids = new int[width * depth * height];
+		data = new int[width * depth * height];
+	}
+	
+	/**
+	 * Copies the given box (inclusive) of a grid. Voxels in unloaded chunks are copied as air.
+	 */
+	public static VoxelClipboard copy(VoxelGrid grid, int x0, int y0, int z0, int x1, int y1, int z1) {
+		
+		VoxelClipboard clipboard = new VoxelClipboard(x1 - x0 + 1, y1 - y0 + 1, z1 - z0 + 1);
+		grid.forEachBlock(x0, y0, z0, x1, y1, z1,
+				(x, y, z, id, data) -> clipboard.set(x - x0, y - y0, z - z0, id, data));
+		return clipboard;
+	}
+	
+	public void set(int x, int y, int z, int id, int data) {
+		int index = indexOf(x, y, z);
+		ids[index] = id;
+		this.data[index] = data;
+	}
+	
+	public int getBlockId(int x, int y, int z) { return ids[indexOf(x, y, z)]; }
+	
+	public int getBlockData(int x, int y, int z) { return data[indexOf(x, y, z)]; }
+	
+	/** Returns the size of the clipboard along x. */
+	public int getWidth() { return width; }
+	
+	/** Returns the size of the clipboard along y. */
+	public int getDepth() { return depth; }
+	
+	/** Returns the size of the clipboard along z. */
+	public int getHeight() { return height; }
+	
+	private int indexOf(int x, int y, int z) {
+		return (x * depth + y) * height + z;
+	}
+}
\ No newline at end of file
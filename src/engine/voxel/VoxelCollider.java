@@ -0,0 +1,224 @@
+package engine.voxel;
+
+import engine.util.math.AABB;
+
+/**
+ * Moves axis-aligned boxes through a voxel grid without passing through solid blocks.
+ * Motion is resolved one axis at a time (vertical first), so that boxes slide along walls,
+ * and boxes resting on the ground may step up onto low obstacles.
+ * Only the voxels covered by the sweep along each axis are examined.
+ * Voxel centres are at integer coordinates; voxels in chunks which aren't loaded are solid.
+ * A collider reuses its working state and never allocates, so isn't thread safe;
+ * it should be used on the thread which owns the grid.
+ * @author Alec
+ */
+public class VoxelCollider {
+	
+	/** Flags returned by move(), for each axis along which motion was blocked. */
+	public static final int COLLIDED_X = 1, COLLIDED_Y = 2, COLLIDED_Z = 4;
+	
+	/** Gap left between a box and the blocks it collides with. */
+	private static final float EPSILON = 1.0E-4F;
+	
+	/** How far below a box to look for the ground. */
+	private static final float GROUND_PROBE = 0.01F;
+	
+	private final BlockRegistry blocks;
+	
+	private final VoxelCursor cursor;
+	
+	/** The motion actually applied by the last call to move(). */
+	private float movedX, movedY, movedZ;
+	
+	/** Whether the box was resting on a solid block after the last call to move(). */
+	private boolean onGround;
+	
+	/** Working copies of the box, for attempting a step up. */
+	private final AABB start = new AABB(), stepped = new AABB();
+	
+	public VoxelCollider(VoxelGrid grid) {
+		blocks = grid.getBlocks();
+		cursor = new VoxelCursor(grid);
+	}
+	
+	/**
+	 * Moves the given box as far as possible by the given amount, sliding along any
+	 * solid blocks in the way, and stepping up onto any obstacle no higher than stepHeight
+	 * if the box starts on the ground.
+	 * @param box the box to move, which is updated in place.
+	 * @param stepHeight the tallest obstacle to step up onto, or 0 to never step.
+	 * @return a combination of COLLIDED_X, COLLIDED_Y and COLLIDED_Z.
+	 */
+	public int move(AABB box, float dx, float dy, float dz, float stepHeight) {
+		
+		start.set(box);
+		boolean grounded = clip(box, 2, -GROUND_PROBE) > -GROUND_PROBE;
+		
+		int collided = slide(box, dx, dy, dz);
+		
+		//If blocked horizontally while on the ground, try again from higher up.
+		if(stepHeight > 0 && grounded && dz <= 0 && (collided & (COLLIDED_X | COLLIDED_Y)) != 0) {
+			
+			stepped.set(start);
+			float up = clip(stepped, 2, stepHeight);
+			stepped.offset(2, up);
+			int steppedCollided = slide(stepped, dx, dy, 0);
+			stepped.offset(2, clip(stepped, 2, -up + Math.min(dz, 0)));
+			
+			float flat = horizontal(box, start), step = horizontal(stepped, start);
+			if(step > flat + EPSILON) {
+				box.set(stepped);
+				collided = steppedCollided;
+			}
+		}
+		
+		movedX = box.getMinX() - start.getMinX();
+		movedY = box.getMinY() - start.getMinY();
+		movedZ = box.getMinZ() - start.getMinZ();
+		onGround = clip(box, 2, -GROUND_PROBE) > -GROUND_PROBE;
+		
+		return collided;
+	}
+	
+	/** Returns the x motion actually applied by the last call to move(). */
+	public float getMovedX() { return movedX; }
+	
+	/** Returns the y motion actually applied by the last call to move(). */
+	public float getMovedY() { return movedY; }
+	
+	/** Returns the z motion actually applied by the last call to move(). */
+	public float getMovedZ() { return movedZ; }
+	
+	/**
+	 * Returns whether the box was resting on a solid block after the last call to move().
+	 */
+	public boolean isOnGround() { return onGround; }
+	
+	/**
+	 * Returns whether any solid voxel overlaps the given box.
+	 */
+	public boolean intersects(AABB box) {
+		
+		int x0 = lower(box.getMinX()), x1 = upper(box.getMaxX());
+		int y0 = lower(box.getMinY()), y1 = upper(box.getMaxY());
+		int z0 = lower(box.getMinZ()), z1 = upper(box.getMaxZ());
+		
+		for(int x = x0; x <= x1; x++) {
+			for(int y = y0; y <= y1; y++) {
+				for(int z = z0; z <= z1; z++) {
+					if(isSolid(x, y, z)) return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Moves the box along each axis in turn, vertical first.
+	 */
+	private int slide(AABB box, float dx, float dy, float dz) {
+		
+		int collided = 0;
+		
+		float z = clip(box, 2, dz);
+		box.offset(2, z);
+		if(z != dz) collided |= COLLIDED_Z;
+		
+		float x = clip(box, 0, dx);
+		box.offset(0, x);
+		if(x != dx) collided |= COLLIDED_X;
+		
+		float y = clip(box, 1, dy);
+		box.offset(1, y);
+		if(y != dy) collided |= COLLIDED_Y;
+		
+		return collided;
+	}
+	
+	/**
+	 * Returns how far the box can move along the given axis, up to the given distance,
+	 * before touching a solid voxel. Voxel layers are examined nearest first,
+	 * stopping at the first layer containing a solid voxel in the way.
+	 */
+	private float clip(AABB box, int axis, float d) {
+		
+		if(d == 0) return 0;
+		
+		int u = (axis + 1) % 3, v = (axis + 2) % 3;
+		int u0 = lower(box.getMin(u)), u1 = upper(box.getMax(u));
+		int v0 = lower(box.getMin(v)), v1 = upper(box.getMax(v));
+		
+		if(d > 0) {
+			
+			float max = box.getMax(axis);
+			int first = lower(max), last = upper(max + d);
+			
+			for(int layer = first; layer <= last; layer++) {
+				
+				//The face of this layer which the box would run into.
+				float face = layer - 0.5F;
+				if(face < max - EPSILON) continue;
+				if(layerSolid(axis, layer, u, u0, u1, v, v0, v1)) return Math.max(0, Math.min(d, face - max - EPSILON));
+			}
+		
+		} else {
+			
+			float min = box.getMin(axis);
+			int first = upper(min), last = lower(min + d);
+			
+			for(int layer = first; layer >= last; layer--) {
+				
+				float face = layer + 0.5F;
+				if(face > min + EPSILON) continue;
+				if(layerSolid(axis, layer, u, u0, u1, v, v0, v1)) return Math.min(0, Math.max(d, face - min + EPSILON));
+			}
+		}
+		return d;
+	}
+	
+	/**
+	 * Returns whether any voxel in the given rectangle of a layer perpendicular to an axis is solid.
+	 */
+	private boolean layerSolid(int axis, int layer, int u, int u0, int u1, int v, int v0, int v1) {
+		
+		for(int i = u0; i <= u1; i++) {
+			for(int j = v0; j <= v1; j++) {
+				
+				int x = axis == 0 ? layer : u == 0 ? i : j;
+				int y = axis == 1 ? layer : u == 1 ? i : j;
+				int z = axis == 2 ? layer : u == 2 ? i : j;
+				if(isSolid(x, y, z)) return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean isSolid(int x, int y, int z) {
+		
+		if(cursor.chunkAt(x, y, z) == null) return true;
+		int id = cursor.getBlockId(x, y, z);
+		return id != 0 && blocks.isSolid(id, cursor.getBlockData(x, y, z));
+	}
+	
+	/**
+	 * Returns the horizontal distance between the minimum corners of two boxes, squared.
+	 */
+	private static float horizontal(AABB a, AABB b) {
+		float dx = a.getMinX() - b.getMinX(), dy = a.getMinY() - b.getMinY();
+		return dx * dx + dy * dy;
+	}
+	
+	/**
+	 * Returns the lowest voxel whose interior overlaps a box with the given lower bound.
+	 */
+	private static int lower(float min) {
+		return (int) Math.floor(min + 0.5F);
+	}
+	
+	/**
+	 * Returns the highest voxel whose interior overlaps a box with the given upper bound.
+	 */
+	private static int upper(float max) {
+		return (int) Math.ceil(max + 0.5F) - 1;
+	}
+}
\ No newline at end of file
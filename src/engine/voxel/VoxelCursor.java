@@ -0,0 +1,86 @@
+package engine.voxel;
+
+/**
+ * Reads and writes the voxels of a grid, remembering the last chunk it visited.
+ * Consecutive queries which fall in the same chunk skip the chunk lookup entirely,
+ * which makes walking over neighbouring voxels much cheaper than going through the grid.
+ * A cursor isn't thread safe, and should be used on the thread which owns the grid.
+ * @author Alec
+ */
+public class VoxelCursor {
+	
+	private final VoxelGrid grid;
+	
+	private final ChunkAddressing addressing;
+	
+	/** The last chunk visited, which may be null if it isn't loaded. */
+	private Chunk chunk;
+	
+	/** The coordinates of the last chunk visited. */
+	private int cx, cy, cz;
+	
+	/** The grid's window version when the last chunk was looked up; -1 if none. */
+	private long version = -1;
+	
+	public VoxelCursor(VoxelGrid grid) {
+		this.grid = grid;
+		addressing = grid.getAddressing();
+	}
+	
+	/**
+	 * Returns the block id at the given voxel, or 0 (air) if its chunk isn't loaded.
+	 */
+	public int getBlockId(int x, int y, int z) {
+		
+		Chunk chunk = chunkAt(x, y, z);
+		if(chunk == null) return 0;
+		return chunk.getBlockId(addressing.localOf(x), addressing.localOf(y), addressing.localOf(z));
+	}
+	
+	/**
+	 * Returns the block data at the given voxel, or 0 if its chunk isn't loaded.
+	 */
+	public int getBlockData(int x, int y, int z) {
+		
+		Chunk chunk = chunkAt(x, y, z);
+		if(chunk == null) return 0;
+		return chunk.getBlockData(addressing.localOf(x), addressing.localOf(y), addressing.localOf(z));
+	}
+	
+	/**
+	 * Sets the block at the given voxel.
+	 * @return whether the block was changed; false if the chunk isn't loaded.
+	 */
+	public boolean setBlock(int x, int y, int z, int id, int data) {
+		
+		Chunk chunk = chunkAt(x, y, z);
+		if(chunk == null) return false;
+		return chunk.setBlock(addressing.localOf(x), addressing.localOf(y), addressing.localOf(z), id, data);
+	}
+	
+	/**
+	 * Returns the loaded chunk containing the given voxel, or null if it isn't loaded.
+	 */
+	public Chunk chunkAt(int x, int y, int z) {
+		
+		int cx = addressing.chunkOf(x), cy = addressing.chunkOf(y), cz = addressing.chunkOf(z);
+		
+		if(cx != this.cx || cy != this.cy || cz != this.cz || version != grid.getWindowVersion()) {
+			
+			chunk = grid.getChunk(cx, cy, cz);
+			this.cx = cx;
+			this.cy = cy;
+			this.cz = cz;
+			version = grid.getWindowVersion();
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Forgets the last chunk visited.
+	 */
+	public void reset() {
+		chunk = null;
+		version = -1;
+	}
+}
\ No newline at end of file
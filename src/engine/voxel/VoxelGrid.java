@@ -1,77 +1,461 @@
 package engine.voxel;
 
-@SuppressWarnings({ "unchecked", "rawtypes" })
+import java.io.File;
+import java.io.IOException;
+
+import engine.event.Event;
+import engine.voxel.Block.Side;
+import engine.voxel.io.RegionStore;
+import engine.voxel.mesh.MeshScheduler;
+
 public class VoxelGrid {
     
     private String name;
     
-    private Class[] blocks = new Class[1000];
+    /** The shared instance of each type of block, by id. */
+    private BlockRegistry blocks = new BlockRegistry();
     
-    private int chunkSize, loadRadius;
+    private int chunkSize, loadRadius, diameter;
+    
+    /** Converts voxel coordinates to chunk and local coordinates. */
+    private ChunkAddressing addressing;
     
     private int cx, cy, cz;
     
-    private Chunk[][][] chunks;
+    /**
+     * The loaded chunks, as a toroidal ring buffer of diameter^3 slots.
+     * Each chunk lives in the slot given by its coordinates modulo the diameter,
+     * so moving the centre only replaces the slab of chunks that left the window.
+     */
+    private Chunk[] chunks;
+    
+    /** Incremented whenever a chunk is installed in or removed from the window. */
+    private long windowVersion = 0;
+    
+    private RegionStore regions;
+    
+    /** Loads and saves chunks in the background. */
+    private ChunkStreamer streamer;
+    
+    /** Remeshes changed chunks, if the grid is being rendered. */
+    private MeshScheduler mesher;
+    
+    /** Resolves collisions between entities and solid blocks. */
+    private VoxelCollider collider;
     
     public VoxelGrid(String name, int chunkSize, int loadRadius, int cx, int cy, int cz) {
         
         this.name = name;
         this.chunkSize = chunkSize;
+        addressing = new ChunkAddressing(chunkSize);
         this.loadRadius = loadRadius;
         this.cx = cx;
         this.cy = cy;
         this.cz = cz;
-        chunks = new Chunk[2 * loadRadius + 1][2 * loadRadius + 1][2 * loadRadius + 1];
+        diameter = 2 * loadRadius + 1;
+        chunks = new Chunk[diameter * diameter * diameter];
+        regions = new RegionStore(new File("saves", name));
+        streamer = new ChunkStreamer(this,
+                Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+        
+        for(int x = -loadRadius; x <= loadRadius; x++) {
+            for(int y = -loadRadius; y <= loadRadius; y++) {
+                for(int z = -loadRadius; z <= loadRadius; z++) {
+                    requestLoad(cx + x, cy + y, cz + z);
+                }
+            }
+        }
     }
     
     public String getName() { return name; }
     
-    public void moveCentre(int cx, int cy, int cz) {
-        
-        int dx = cx - this.cx;
-        int dy = cy - this.cy;
-        int dz = cz - this.cz;
+    public int getChunkSize() { return chunkSize; }
+    
+    public int getLoadRadius() { return loadRadius; }
+    
+    /**
+     * Returns the coordinates of the chunk at the centre of the loaded region.
+     */
+    public int getCentreX() { return cx; }
+    
+    public int getCentreY() { return cy; }
+    
+    public int getCentreZ() { return cz; }
+    
+    /**
+     * Returns the conversion from voxel coordinates to chunk and local coordinates.
+     */
+    public ChunkAddressing getAddressing() { return addressing; }
+    
+    /**
+     * Returns a number which changes whenever the set of loaded chunks changes,
+     * so that cached chunk references can be validated cheaply.
+     */
+    public long getWindowVersion() { return windowVersion; }
+    
+    /**
+     * Returns the region files in which the chunks of this grid are saved.
+     */
+    public RegionStore getRegions() { return regions; }
+    
+    /**
+     * Returns the background loader/saver for the chunks of this grid.
+     */
+    public ChunkStreamer getStreamer() { return streamer; }
+    
+    public MeshScheduler getMeshScheduler() { return mesher; }
+    
+    /**
+     * Returns the collider for moving boxes through this grid.
+     * Should only be used by the thread which owns this grid.
+     */
+    public VoxelCollider getCollider() {
+        if(collider == null) collider = new VoxelCollider(this);
+        return collider;
+    }
+    
+    /**
+     * Sets the scheduler to be notified whenever a chunk needs remeshing,
+     * and requests meshes for every chunk which is already loaded.
+     */
+    public void setMeshScheduler(MeshScheduler mesher) {
         
-        Chunk[][][] newChunks = new Chunk[chunkSize][chunkSize][chunkSize];
+        this.mesher = mesher;
+        for(Chunk chunk : chunks) {
+            if(chunk != null) {
+                chunk.markAllSectionsDirty();
+                requestMesh(chunk);
+            }
+        }
+    }
+    
+    /**
+     * Installs any chunks which have finished loading in the background.
+     * Should be called regularly (e.g. once per tick) by the thread which owns this grid.
+     * Chunks which have since left the loaded region are discarded.
+     */
+    public void update() {
         
-        for(int x = -loadRadius; x <= loadRadius; x++) {
-            for(int y = -loadRadius; y <= loadRadius; y++) {
-                for(int z = -loadRadius; z <= loadRadius; z++) {
+        Chunk chunk;
+        while((chunk = streamer.poll()) != null) {
+            
+            if(inRange(chunk.getX(), chunk.getY(), chunk.getZ())) {
+                
+                int slot = slotOf(chunk.getX(), chunk.getY(), chunk.getZ());
+                if(chunks[slot] == null) {
+                    chunks[slot] = chunk;
+                    windowVersion++;
                     
-                    //If this chunk is in the previously loaded region.
-                    if(x + dx >= 0 && x + dx < chunks.length && y + dy >= 0
-                            && y + dy < chunks.length && z + dz >= 0 && z + dz < chunks.length) {
-                        
-                        
-                    }
+                    //Faces of the neighbours which were facing empty space may now be hidden.
+                    requestMesh(chunk);
+                    for(Side side : Side.values()) borderChanged(chunk, side, 0, 0, chunkSize - 1, chunkSize - 1);
                 }
             }
         }
+    }
+    
+    /**
+     * Returns the loaded chunk at the given chunk coordinates,
+     * or null if it is out of range or hasn't yet finished loading.
+     */
+    public Chunk getChunk(int cx, int cy, int cz) {
+        
+        Chunk chunk = chunks[slotOf(cx, cy, cz)];
+        
+        //The slot may hold a different chunk which maps to the same place.
+        if(chunk == null || chunk.getX() != cx || chunk.getY() != cy || chunk.getZ() != cz)
+            return null;
+        return chunk;
+    }
+    
+    /**
+     * Queues every changed chunk to be saved in the background.
+     * Chunks which haven't changed since they were loaded or last saved are skipped.
+     */
+    public void saveChanged() {
+        
+        for(Chunk chunk : chunks) {
+            if(chunk != null) streamer.save(chunk);
+        }
+    }
+    
+    /**
+     * Saves every changed chunk, waits for the saves to finish,
+     * and then closes any open region files.
+     */
+    public void close() {
+        
+        saveChanged();
+        streamer.shutdown();
+        
+        try {
+            regions.close();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Moves the centre of the loaded region to the given chunk.
+     * Only chunks which leave the region are unloaded (and saved, if changed),
+     * and only chunks which enter it are requested, so a step of one chunk
+     * touches a single slab of the window and allocates no new storage.
+     */
+    public void moveCentre(int cx, int cy, int cz) {
         
+        int ox = this.cx, oy = this.cy, oz = this.cz;
         this.cx = cx;
         this.cy = cy;
         this.cz = cz;
+        
+        for(int x = cx - loadRadius; x <= cx + loadRadius; x++) {
+            
+            //Whole planes of the new region which weren't in the old one.
+            if(Math.abs(x - ox) > loadRadius) {
+                for(int y = cy - loadRadius; y <= cy + loadRadius; y++) {
+                    for(int z = cz - loadRadius; z <= cz + loadRadius; z++) {
+                        replace(x, y, z);
+                    }
+                }
+                continue;
+            }
+            
+            for(int y = cy - loadRadius; y <= cy + loadRadius; y++) {
+                
+                //Rows of the overlapping planes.
+                if(Math.abs(y - oy) > loadRadius) {
+                    for(int z = cz - loadRadius; z <= cz + loadRadius; z++) {
+                        replace(x, y, z);
+                    }
+                    continue;
+                }
+                
+                //Single chunks of the overlapping rows.
+                for(int z = cz - loadRadius; z <= cz + loadRadius; z++) {
+                    if(Math.abs(z - oz) > loadRadius) replace(x, y, z);
+                }
+            }
+        }
+        
+        streamer.cancelOutside(cx, cy, cz, loadRadius);
+    }
+    
+    /**
+     * Returns the block id at the given voxel, or 0 (air) if its chunk isn't loaded.
+     */
+    public int getBlockId(int x, int y, int z) {
+        
+        Chunk chunk = getChunk(addressing.chunkOf(x), addressing.chunkOf(y), addressing.chunkOf(z));
+        if(chunk == null) return 0;
+        
+        return chunk.getBlockId(addressing.localOf(x),
+                addressing.localOf(y), addressing.localOf(z));
     }
     
+    /**
+     * Returns the block data at the given voxel, or 0 if its chunk isn't loaded.
+     */
+    public int getBlockData(int x, int y, int z) {
+        
+        Chunk chunk = getChunk(addressing.chunkOf(x), addressing.chunkOf(y), addressing.chunkOf(z));
+        if(chunk == null) return 0;
+        
+        return chunk.getBlockData(addressing.localOf(x),
+                addressing.localOf(y), addressing.localOf(z));
+    }
+    
+    /**
+     * Returns the shared block at the given voxel,
+     * or null for air, unregistered blocks and unloaded chunks.
+     * Use getBlockData() for the state of this particular voxel.
+     */
     public Block getBlock(int x, int y, int z) {
+        return blocks.get(getBlockId(x, y, z));
+    }
+    
+    /**
+     * Sets the block at the given voxel.
+     * @return whether the block was changed; false if the chunk isn't loaded.
+     */
+    public boolean setBlock(int x, int y, int z, int id, int data) {
         
-        int xx = x / chunkSize - cx + loadRadius;
-        int yy = y / chunkSize - cy + loadRadius;
-        int zz = z / chunkSize - cz + loadRadius;
+        Chunk chunk = getChunk(addressing.chunkOf(x), addressing.chunkOf(y), addressing.chunkOf(z));
+        if(chunk == null) return false;
         
-        int id = chunks[xx][yy][zz].getBlockId(x % chunkSize, y % chunkSize, z % chunkSize);
-        int data = chunks[xx][yy][zz].getBlockData(x % chunkSize, y % chunkSize, z % chunkSize);
+        return chunk.setBlock(addressing.localOf(x),
+                addressing.localOf(y), addressing.localOf(z), id, data);
+    }
+    
+    /**
+     * Visits every voxel in the given box (inclusive), chunk by chunk,
+     * so that each chunk is only looked up once.
+     * Voxels in chunks which aren't loaded are visited as air.
+     */
+    public void forEachBlock(int x0, int y0, int z0, int x1, int y1, int z1, BlockVisitor visitor) {
         
-        Block block = null;
-        try {
-            block = (Block) blocks[id].getConstructor(Integer.class).newInstance(data);
-        } catch (Exception e) {
-            e.printStackTrace();
+        for(int cx = addressing.chunkOf(x0); cx <= addressing.chunkOf(x1); cx++) {
+            for(int cy = addressing.chunkOf(y0); cy <= addressing.chunkOf(y1); cy++) {
+                for(int cz = addressing.chunkOf(z0); cz <= addressing.chunkOf(z1); cz++) {
+                    
+                    Chunk chunk = getChunk(cx, cy, cz);
+                    int ox = addressing.originOf(cx), oy = addressing.originOf(cy), oz = addressing.originOf(cz);
+                    
+                    //The part of the box within this chunk.
+                    int ax = Math.max(x0, ox), bx = Math.min(x1, ox + chunkSize - 1);
+                    int ay = Math.max(y0, oy), by = Math.min(y1, oy + chunkSize - 1);
+                    int az = Math.max(z0, oz), bz = Math.min(z1, oz + chunkSize - 1);
+                    
+                    for(int x = ax; x <= bx; x++) {
+                        for(int y = ay; y <= by; y++) {
+                            for(int z = az; z <= bz; z++) {
+                                
+                                if(chunk == null) visitor.visit(x, y, z, 0, 0);
+                                else {
+                                    int lx = x - ox, ly = y - oy, lz = z - oz;
+                                    visitor.visit(x, y, z, chunk.getBlockId(lx, ly, lz),
+                                            chunk.getBlockData(lx, ly, lz));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the registry of blocks used by this grid.
+     */
+    public BlockRegistry getBlocks() { return blocks; }
+    
+    /**
+     * Registers the shared instance of the block with the given id.
+     */
+    public void registerBlock(int id, Block block) {
+        blocks.register(id, block);
+    }
+    
+    /**
+     * Registers the block with the given id, creating a single shared instance of it.
+     */
+    public <B extends Block> void registerBlock(int id, Class<B> block) {
+        blocks.register(id, block);
+    }
+    
+    private boolean inRange(int cx, int cy, int cz) {
+        
+        return Math.abs(cx - this.cx) <= loadRadius && Math.abs(cy - this.cy) <= loadRadius
+                && Math.abs(cz - this.cz) <= loadRadius;
+    }
+    
+    /**
+     * Returns the ring buffer slot of the given chunk.
+     */
+    private int slotOf(int cx, int cy, int cz) {
+        
+        return (Math.floorMod(cx, diameter) * diameter
+                + Math.floorMod(cy, diameter)) * diameter + Math.floorMod(cz, diameter);
+    }
+    
+    /**
+     * Unloads whichever chunk occupies the slot of the given (newly in range) chunk,
+     * and requests the given chunk in its place.
+     */
+    private void replace(int cx, int cy, int cz) {
+        
+        int slot = slotOf(cx, cy, cz);
+        if(chunks[slot] != null) {
+            streamer.save(chunks[slot]);
+            chunks[slot] = null;
+            windowVersion++;
         }
-        return block;
+        requestLoad(cx, cy, cz);
+    }
+    
+    /**
+     * Returns a new batch of edits to this grid, which are applied all at once by EditBatch.apply().
+     */
+    public EditBatch edit() { return new EditBatch(this); }
+    
+    /**
+     * Called by a chunk whenever a box of its blocks (local coordinates, inclusive) changes.
+     * Requests a remesh of the chunk, and if the box touches the border,
+     * also of the neighbouring chunks whose faces it touches.
+     * Triggers a single ChunkEditEvent for the whole box, if anything handles them.
+     */
+    void regionChanged(Chunk chunk, int x0, int y0, int z0, int x1, int y1, int z1) {
+        
+        requestMesh(chunk);
+        
+        int last = chunkSize - 1;
+        if(x0 == 0) borderChanged(chunk, Side.WEST, y0, z0, y1, z1);
+        if(x1 == last) borderChanged(chunk, Side.EAST, y0, z0, y1, z1);
+        if(y0 == 0) borderChanged(chunk, Side.SOUTH, z0, x0, z1, x1);
+        if(y1 == last) borderChanged(chunk, Side.NORTH, z0, x0, z1, x1);
+        if(z0 == 0) borderChanged(chunk, Side.BOTTOM, x0, y0, x1, y1);
+        if(z1 == last) borderChanged(chunk, Side.TOP, x0, y0, x1, y1);
+        
+        if(Event.hasHandlers(ChunkEditEvent.class)) new ChunkEditEvent(this, chunk, x0, y0, z0, x1, y1, z1);
     }
     
-    public <B extends Block> void registerBlock(int index, Class<B> block) {
-           blocks[index] = block;
+    /**
+     * Marks the sections of the neighbour on the given side of a chunk which touch
+     * the given rectangle of the shared border as dirty, and requests a remesh of it.
+     * The rectangle is given in the two axes following the side's axis (i.e. yz, zx or xy).
+     */
+    private void borderChanged(Chunk chunk, Side side, int u0, int v0, int u1, int v1) {
+        
+        int axis = BlockFace.axisOf(side);
+        Chunk neighbour = getChunk(chunk.getX() + BlockFace.offset(side, 0),
+                chunk.getY() + BlockFace.offset(side, 1), chunk.getZ() + BlockFace.offset(side, 2));
+        if(neighbour == null) return;
+        
+        //The plane of the neighbour which touches the chunk.
+        int plane = BlockFace.isPositive(side) ? 0 : chunkSize - 1;
+        
+        if(axis == 0) neighbour.markSectionsDirty(plane, u0, v0, plane, u1, v1);
+        else if(axis == 1) neighbour.markSectionsDirty(v0, plane, u0, v1, plane, u1);
+        else neighbour.markSectionsDirty(u0, v0, plane, u1, v1, plane);
+        requestMesh(neighbour);
+    }
+    
+    private void requestMesh(Chunk chunk) {
+        if(mesher != null) mesher.request(chunk.getX(), chunk.getY(), chunk.getZ());
+    }
+    
+    /**
+     * Requests a chunk from the streamer, nearest chunks first.
+     */
+    private void requestLoad(int cx, int cy, int cz) {
+        
+        long dx = cx - this.cx, dy = cy - this.cy, dz = cz - this.cz;
+        streamer.load(cx, cy, cz, dx * dx + dy * dy + dz * dz);
+    }
+    
+    /**
+     * Triggered whenever blocks in a loaded chunk are changed; once per chunk for batched edits.
+     * The box of changed blocks is given in the local coordinates of the chunk (inclusive).
+     */
+    public static class ChunkEditEvent extends Event {
+        
+        public final VoxelGrid GRID;
+        
+        public final Chunk CHUNK;
+        
+        public final int MIN_X, MIN_Y, MIN_Z, MAX_X, MAX_Y, MAX_Z;
+        
+        private ChunkEditEvent(VoxelGrid grid, Chunk chunk,
+                int x0, int y0, int z0, int x1, int y1, int z1) {
+            
+            GRID = grid;
+            CHUNK = chunk;
+            MIN_X = x0;
+            MIN_Y = y0;
+            MIN_Z = z0;
+            MAX_X = x1;
+            MAX_Y = y1;
+            MAX_Z = z1;
+            trigger();
+        }
     }
 }
\ No newline at end of file
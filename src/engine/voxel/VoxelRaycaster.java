@@ -0,0 +1,280 @@
+package engine.voxel;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import engine.voxel.Block.Side;
+
+/**
+ * Casts rays through a voxel grid, finding the first voxel hit
+ * using the traversal algorithm of Amanatides and Woo.
+ * Chunks which aren't loaded or which are entirely air are crossed in a single step.
+ * Voxel centres are at integer coordinates, matching the chunk meshes.
+ * A raycaster reuses its working state and never allocates, so isn't thread safe;
+ * it should be used on the thread which owns the grid.
+ * @author Alec
+ */
+public class VoxelRaycaster {
+	
+	private static final Side[] POSITIVE = {
+			BlockFace.sideOf(0, true), BlockFace.sideOf(1, true), BlockFace.sideOf(2, true)};
+	
+	private static final Side[] NEGATIVE = {
+			BlockFace.sideOf(0, false), BlockFace.sideOf(1, false), BlockFace.sideOf(2, false)};
+	
+	private final VoxelGrid grid;
+	
+	private final BlockRegistry blocks;
+	
+	private final ChunkAddressing addressing;
+	
+	private final VoxelCursor cursor;
+	
+	/** Whether only opaque blocks stop a ray; otherwise any non-air block does. */
+	private boolean opaqueOnly = false;
+	
+	/** Traversal state, indexed by axis. */
+	private final int[] voxel = new int[3], step = new int[3];
+	private final float[] tMax = new float[3], tDelta = new float[3];
+	
+	/** Reused by hasLineOfSight(). */
+	private final RayHit scratch = new RayHit();
+	
+	public VoxelRaycaster(VoxelGrid grid) {
+		
+		this.grid = grid;
+		blocks = grid.getBlocks();
+		addressing = grid.getAddressing();
+		cursor = new VoxelCursor(grid);
+	}
+	
+	/**
+	 * Sets whether only opaque blocks stop a ray (e.g. for line of sight),
+	 * rather than any block other than air (e.g. for picking).
+	 */
+	public void setOpaqueOnly(boolean opaqueOnly) { this.opaqueOnly = opaqueOnly; }
+	
+	public boolean isOpaqueOnly() { return opaqueOnly; }
+	
+	/**
+	 * Casts a ray, finding the first voxel it hits.
+	 * @param origin the start of the ray.
+	 * @param direction the direction of the ray, which needn't be normalised.
+	 * @param maxDistance the greatest distance to travel along the ray, which may be infinite;
+	 *     rays never travel beyond the loaded region of the grid.
+	 * @param hit the result, which is overwritten.
+	 * @return whether anything was hit.
+	 */
+	public boolean cast(Vector3f origin, Vector3f direction, float maxDistance, RayHit hit) {
+		return cast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance, hit);
+	}
+	
+	/**
+	 * Casts a ray, finding the first voxel it hits.
+	 * @param ox the x coordinate of the start of the ray (and likewise oy, oz).
+	 * @param dx the x component of the direction of the ray (and likewise dy, dz),
+	 *     which needn't be normalised.
+	 * @param maxDistance the greatest distance to travel along the ray, which may be infinite;
+	 *     rays never travel beyond the loaded region of the grid.
+	 * @param hit the result, which is overwritten.
+	 * @return whether anything was hit.
+	 */
+	public boolean cast(float ox, float oy, float oz, float dx, float dy, float dz,
+			float maxDistance, RayHit hit) {
+		
+		if(Float.isNaN(maxDistance)) throw new IllegalArgumentException("Distance must be a number.");
+		
+		float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if(length == 0) {
+			hit.miss(0);
+			return false;
+		}
+		
+		//Shift by half a voxel, so that voxel boundaries lie on integers.
+		init(0, ox + 0.5F, dx / length);
+		init(1, oy + 0.5F, dy / length);
+		init(2, oz + 0.5F, dz / length);
+		
+		int size = grid.getChunkSize();
+		int axis = -1;
+		float t = 0;
+		
+		//Nothing beyond the loaded region can be hit, and an unbounded ray
+		//would otherwise cross unloaded chunks forever.
+		float limit = Math.min(maxDistance, windowExit(grid.getLoadRadius()));
+		
+		while(t <= limit) {
+			
+			Chunk chunk = cursor.chunkAt(voxel[0], voxel[1], voxel[2]);
+			
+			//Cross empty or unloaded chunks in one step.
+			if(chunk == null || (chunk.isUniform() && chunk.getBlockId(0, 0, 0) == 0)) {
+				
+				axis = skipChunk(size);
+				t = tMax[axis] - tDelta[axis];
+				continue;
+			}
+			
+			int id = chunk.getBlockId(addressing.localOf(voxel[0]),
+					addressing.localOf(voxel[1]), addressing.localOf(voxel[2]));
+			
+			if(id != 0) {
+				
+				int data = chunk.getBlockData(addressing.localOf(voxel[0]),
+						addressing.localOf(voxel[1]), addressing.localOf(voxel[2]));
+				
+				if(!opaqueOnly || blocks.isOpaque(id, data)) {
+					
+					//The ray enters through the side facing back along the last step.
+					Side side = axis == -1 ? null : step[axis] > 0 ? NEGATIVE[axis] : POSITIVE[axis];
+					hit.set(voxel[0], voxel[1], voxel[2], id, data, side, t);
+					return true;
+				}
+			}
+			
+			//Step into whichever neighbouring voxel the ray reaches first.
+			axis = tMax[0] < tMax[1] ? (tMax[0] < tMax[2] ? 0 : 2) : (tMax[1] < tMax[2] ? 1 : 2);
+			t = tMax[axis];
+			voxel[axis] += step[axis];
+			tMax[axis] += tDelta[axis];
+		}
+		
+		hit.miss(maxDistance);
+		return false;
+	}
+	
+	/**
+	 * Casts many rays at once, such as for line of sight checks.
+	 * Ray i starts at (origins[3i], origins[3i + 1], origins[3i + 2]),
+	 * and likewise for directions.
+	 * @param count the number of rays.
+	 * @param maxDistances the greatest distance to travel along each ray.
+	 * @param hits the results, which are overwritten.
+	 * @return the number of rays which hit something.
+	 */
+	public int castAll(float[] origins, float[] directions, float[] maxDistances, RayHit[] hits, int count) {
+		
+		int hitCount = 0;
+		for(int i = 0; i < count; i++) {
+			
+			if(cast(origins[3 * i], origins[3 * i + 1], origins[3 * i + 2],
+					directions[3 * i], directions[3 * i + 1], directions[3 * i + 2],
+					maxDistances[i], hits[i])) {
+				hitCount++;
+			}
+		}
+		return hitCount;
+	}
+	
+	/**
+	 * Returns whether the straight line between two points is unobstructed
+	 * by any block which would stop a ray. The voxel containing the end point is ignored.
+	 */
+	public boolean hasLineOfSight(float x0, float y0, float z0, float x1, float y1, float z1) {
+		
+		float dx = x1 - x0, dy = y1 - y0, dz = z1 - z0;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if(!cast(x0, y0, z0, dx, dy, dz, distance, scratch)) return true;
+		
+		return scratch.getX() == (int) Math.floor(x1 + 0.5F) && scratch.getY() == (int) Math.floor(y1 + 0.5F)
+				&& scratch.getZ() == (int) Math.floor(z1 + 0.5F);
+	}
+	
+	/**
+	 * Sets up the traversal along a single axis.
+	 * @param o the (shifted) start of the ray along this axis.
+	 * @param d the normalised direction of the ray along this axis.
+	 */
+	private void init(int axis, float o, float d) {
+		
+		voxel[axis] = (int) Math.floor(o);
+		
+		if(d > 0) {
+			step[axis] = 1;
+			tDelta[axis] = 1 / d;
+			tMax[axis] = (voxel[axis] + 1 - o) / d;
+		
+		} else if(d < 0) {
+			step[axis] = -1;
+			tDelta[axis] = -1 / d;
+			tMax[axis] = (voxel[axis] - o) / d;
+		
+		} else {
+			step[axis] = 0;
+			tDelta[axis] = Float.POSITIVE_INFINITY;
+			tMax[axis] = Float.POSITIVE_INFINITY;
+		}
+	}
+	
+	/**
+	 * Returns the distance along the ray (as set up by init()) at which it leaves
+	 * the loaded region of the grid, or a negative distance if it never enters it.
+	 */
+	private float windowExit(int radius) {
+		
+		float enter = 0, exit = Float.POSITIVE_INFINITY;
+		
+		for(int a = 0; a < 3; a++) {
+			
+			//The bounds of the region along this axis, in the same (shifted) space as the ray.
+			int centre = a == 0 ? grid.getCentreX() : a == 1 ? grid.getCentreY() : grid.getCentreZ();
+			int min = addressing.originOf(centre - radius);
+			int max = addressing.originOf(centre + radius + 1);
+			
+			//The distance to the next boundary at or beyond each of them.
+			if(step[a] == 0) {
+				if(voxel[a] < min || voxel[a] >= max) return -1;
+				continue;
+			}
+			
+			float toMin = tMax[a] + ((step[a] > 0 ? min - voxel[a] - 1 : voxel[a] - min) * tDelta[a]);
+			float toMax = tMax[a] + ((step[a] > 0 ? max - voxel[a] - 1 : voxel[a] - max) * tDelta[a]);
+			
+			enter = Math.max(enter, Math.min(toMin, toMax));
+			exit = Math.min(exit, Math.max(toMin, toMax));
+		}
+		return enter <= exit ? exit : -1;
+	}
+	
+	/**
+	 * Advances the traversal straight to the first voxel outside the current chunk.
+	 * @return the axis along which the ray leaves the chunk.
+	 */
+	private int skipChunk(int size) {
+		
+		//When the ray would leave the chunk along each axis.
+		int exitAxis = 0;
+		float exit = Float.POSITIVE_INFINITY;
+		
+		for(int a = 0; a < 3; a++) {
+			
+			if(step[a] == 0) continue;
+			
+			int local = addressing.localOf(voxel[a]);
+			int steps = step[a] > 0 ? size - local : local + 1;
+			float t = tMax[a] + (steps - 1) * tDelta[a];
+			
+			if(t < exit) {
+				exit = t;
+				exitAxis = a;
+			}
+		}
+		
+		//Catch up along every axis to the point at which the ray leaves.
+		for(int a = 0; a < 3; a++) {
+			
+			if(step[a] == 0 || tMax[a] > exit) continue;
+			
+			int steps;
+			if(a == exitAxis) {
+				int local = addressing.localOf(voxel[a]);
+				steps = step[a] > 0 ? size - local : local + 1;
+			} else {
+				steps = (int) ((exit - tMax[a]) / tDelta[a]) + 1;
+			}
+			
+			voxel[a] += step[a] * steps;
+			tMax[a] += tDelta[a] * steps;
+		}
+		return exitAxis;
+	}
+}
\ No newline at end of file
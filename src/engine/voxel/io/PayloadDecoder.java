@@ -0,0 +1,21 @@
+package engine.voxel.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a chunk payload directly from a buffer.
+ * The buffer may be a view of a memory mapped file or of a reused scratch array,
+ * so it is only valid for the duration of the call and mustn't be retained.
+ * @author Alec
+ */
+@FunctionalInterface
+public interface PayloadDecoder<T> {
+	
+	/**
+	 * Decodes a payload.
+	 * @param payload the uncompressed payload, positioned at its first byte.
+	 * @return the decoded object.
+	 */
+	T decode(ByteBuffer payload) throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,398 @@
+package engine.voxel.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A single file on disk containing many chunks (REGION_SIZE^3 of them).
+ * The file is divided into fixed size sectors. The first HEADER_SECTORS sectors
+ * hold an offset table giving the first sector and number of sectors for each chunk,
+ * and each chunk payload occupies a contiguous run of sectors after that.
+ * A payload consists of its length, a compression type, and the (possibly deflated) data.
+ * Rewriting a chunk reuses its existing sectors if it still fits, or otherwise
+ * moves it into the first sufficiently large run of free sectors.
+ * Payloads can be decoded straight out of a memory mapping of the file, see read().
+ * @author Alec
+ */
+public class RegionFile implements AutoCloseable {
+	
+	/** The number of chunks along each axis of a region. */
+	public static final int REGION_SIZE = 16;
+	
+	/** The number of chunks in a region. */
+	public static final int CHUNKS = REGION_SIZE * REGION_SIZE * REGION_SIZE;
+	
+	/** The size of a sector in bytes. */
+	static final int SECTOR_SIZE = 4096;
+	
+	/** Header entries are two ints; the first sector and the number of sectors. */
+	static final int HEADER_SECTORS = CHUNKS * 8 / SECTOR_SIZE;
+	
+	/** The size of the length and compression fields preceding each payload. */
+	static final int PAYLOAD_HEADER = 5;
+	
+	/** Compression types. */
+	static final byte NONE = 0, DEFLATE = 1;
+	
+	/** Payloads smaller than this are not worth compressing. */
+	private static final int MIN_COMPRESS = 256;
+	
+	private static final ThreadLocal<Deflater> DEFLATER =
+			ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+	
+	private static final ThreadLocal<Inflater> INFLATER =
+			ThreadLocal.withInitial(Inflater::new);
+	
+	/** Per thread scratch space for inflating mapped payloads; compressed and uncompressed. */
+	private static final ThreadLocal<byte[][]> SCRATCH =
+			ThreadLocal.withInitial(() -> new byte[][] {new byte[SECTOR_SIZE], new byte[SECTOR_SIZE]});
+	
+	private final File file;
+	
+	private final RandomAccessFile raf;
+	
+	private final FileChannel channel;
+	
+	/**
+	 * Readers hold the read lock while decoding from the mapping,
+	 * so that sectors can't be rewritten underneath them.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/** A read-only mapping of (at least) every sector in use, replaced as the file grows. */
+	private volatile MappedByteBuffer mapping;
+	
+	/** First sector and sector count for each chunk; zero where there is none. */
+	private final int[] offsets = new int[CHUNKS], lengths = new int[CHUNKS];
+	
+	/** Which sectors are currently in use, including those of the header. */
+	private final BitSet used = new BitSet();
+	
+	/** The number of sectors in the file. */
+	private int sectors;
+	
+	/**
+	 * Opens the given region file, creating it if it doesn't yet exist.
+	 * @param file the location of the region file.
+	 */
+	public RegionFile(File file) throws IOException {
+		
+		this.file = file;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		
+		//Write an empty header to a new file.
+		if(raf.length() < HEADER_SECTORS * SECTOR_SIZE) {
+			raf.setLength(HEADER_SECTORS * SECTOR_SIZE);
+		}
+		
+		sectors = (int) ((raf.length() + SECTOR_SIZE - 1) / SECTOR_SIZE);
+		used.set(0, HEADER_SECTORS);
+		
+		//Read the offset table and mark the sectors of each chunk as used.
+		ByteBuffer header = map().duplicate();
+		for(int i = 0; i < CHUNKS; i++) {
+			
+			int offset = header.getInt();
+			int length = header.getInt();
+			
+			//Ignore entries which lie outside of the file.
+			if(offset >= HEADER_SECTORS && length > 0 && offset + length <= sectors) {
+				offsets[i] = offset;
+				lengths[i] = length;
+				used.set(offset, offset + length);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the index of a chunk within its region.
+	 * @param x the x coordinate of the chunk within the region.
+	 * @param y the y coordinate of the chunk within the region.
+	 * @param z the z coordinate of the chunk within the region.
+	 * @return the chunk index.
+	 */
+	public static int indexOf(int x, int y, int z) {
+		return (x * REGION_SIZE + y) * REGION_SIZE + z;
+	}
+	
+	/**
+	 * Returns whether a payload has been stored for the given chunk.
+	 * @param index the chunk index.
+	 */
+	public boolean contains(int index) {
+		
+		lock.readLock().lock();
+		try {
+			return lengths[index] > 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Reads and decompresses the payload stored for the given chunk.
+	 * For decoding without copying the payload, see read(int, PayloadDecoder).
+	 * @param index the chunk index.
+	 * @return the payload, or null if none has been stored.
+	 */
+	public byte[] read(int index) throws IOException {
+		
+		return read(index, payload -> {
+			byte[] bytes = new byte[payload.remaining()];
+			payload.get(bytes);
+			return bytes;
+		});
+	}
+	
+	/**
+	 * Decodes the payload stored for the given chunk straight from a memory mapping
+	 * of this file. Uncompressed payloads are handed to the decoder as a view of the
+	 * mapping itself; deflated payloads are inflated into per-thread scratch space.
+	 * The decoder runs while holding a read lock, so it should do no more than decode.
+	 * @param index the chunk index.
+	 * @param decoder decodes the payload.
+	 * @return the result of the decoder, or null if no payload has been stored.
+	 */
+	public <T> T read(int index, PayloadDecoder<T> decoder) throws IOException {
+		
+		lock.readLock().lock();
+		try {
+			
+			if(lengths[index] == 0) return null;
+			
+			long start = (long) offsets[index] * SECTOR_SIZE;
+			long end = start + (long) lengths[index] * SECTOR_SIZE;
+			
+			ByteBuffer buffer = mapping;
+			if(buffer.capacity() < Math.min(end, channel.size())) buffer = map();
+			buffer = buffer.duplicate();
+			
+			buffer.position((int) start);
+			int length = buffer.getInt();
+			byte compression = buffer.get();
+			
+			if(length < 0 || length + PAYLOAD_HEADER > end - start
+					|| buffer.position() + length > buffer.capacity())
+				throw new IOException("Corrupt chunk " + index + " in " + file + ".");
+			
+			buffer.limit(buffer.position() + length);
+			return decoder.decode(decompress(compression, buffer.slice()));
+		
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Compresses and stores the payload for the given chunk,
+	 * replacing any existing payload.
+	 * @param index the chunk index.
+	 * @param payload the uncompressed payload.
+	 */
+	public void write(int index, byte[] payload) throws IOException {
+		
+		//Compress before taking the lock, so that other chunks can be read meanwhile.
+		byte compression = NONE;
+		byte[] stored = payload;
+		
+		if(payload.length >= MIN_COMPRESS) {
+			byte[] deflated = deflate(payload);
+			if(deflated.length < payload.length) {
+				compression = DEFLATE;
+				stored = deflated;
+			}
+		}
+		
+		int needed = (stored.length + PAYLOAD_HEADER + SECTOR_SIZE - 1) / SECTOR_SIZE;
+		
+		lock.writeLock().lock();
+		try {
+			
+			int offset = offsets[index];
+			int length = lengths[index];
+			
+			//Rewrite in place if the new payload fits, freeing any excess sectors.
+			if(length >= needed) {
+				used.clear(offset + needed, offset + length);
+			
+			} else {
+				if(length > 0) used.clear(offset, offset + length);
+				offset = allocate(needed);
+			}
+			
+			raf.seek((long) offset * SECTOR_SIZE);
+			raf.writeInt(stored.length);
+			raf.writeByte(compression);
+			raf.write(stored);
+			
+			setEntry(index, offset, needed);
+		
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes the payload stored for the given chunk, freeing its sectors.
+	 * @param index the chunk index.
+	 */
+	public void delete(int index) throws IOException {
+		
+		lock.writeLock().lock();
+		try {
+			if(lengths[index] > 0) {
+				used.clear(offsets[index], offsets[index] + lengths[index]);
+				setEntry(index, 0, 0);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the location of this region file.
+	 */
+	public File getFile() { return file; }
+	
+	@Override
+	public void close() throws IOException {
+		
+		lock.writeLock().lock();
+		try {
+			raf.close();
+			mapping = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Maps the whole of the file as it currently stands.
+	 * Superseded mappings are released by the garbage collector.
+	 */
+	private synchronized MappedByteBuffer map() throws IOException {
+		
+		long size = channel.size();
+		
+		if(mapping == null || mapping.capacity() < size) {
+			mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		return mapping;
+	}
+	
+	/**
+	 * Finds (and marks as used) the first run of free sectors of the given length,
+	 * extending the file if there is no such run.
+	 * @param needed the number of sectors required.
+	 * @return the first sector of the run.
+	 */
+	private int allocate(int needed) {
+		
+		int start = used.nextClearBit(HEADER_SECTORS);
+		
+		while(start < sectors) {
+			
+			int end = used.nextSetBit(start);
+			if(end == -1 || end >= sectors) end = sectors;
+			
+			if(end - start >= needed) break;
+			start = used.nextClearBit(end);
+		}
+		
+		used.set(start, start + needed);
+		sectors = Math.max(sectors, start + needed);
+		return start;
+	}
+	
+	/**
+	 * Updates the offset table, both in memory and on disk.
+	 */
+	private void setEntry(int index, int offset, int length) throws IOException {
+		
+		offsets[index] = offset;
+		lengths[index] = length;
+		
+		raf.seek(index * 8L);
+		raf.writeInt(offset);
+		raf.writeInt(length);
+	}
+	
+	private static byte[] deflate(byte[] payload) {
+		
+		Deflater deflater = DEFLATER.get();
+		deflater.reset();
+		deflater.setInput(payload);
+		deflater.finish();
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4 + 64);
+		byte[] buffer = new byte[SECTOR_SIZE];
+		
+		while(!deflater.finished()) {
+			int n = deflater.deflate(buffer);
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Returns the uncompressed form of the given stored payload.
+	 * Uncompressed payloads are returned as is. Deflated payloads are inflated
+	 * into a scratch array belonging to the current thread, which is reused
+	 * by the next call, rather than into a newly allocated array.
+	 */
+	private static ByteBuffer decompress(byte compression, ByteBuffer stored) throws IOException {
+		
+		switch(compression) {
+			
+			case NONE:
+				return stored;
+			
+			case DEFLATE:
+				byte[][] scratch = SCRATCH.get();
+				int length = stored.remaining();
+				
+				//Inflater can only read from an array before Java 11.
+				if(scratch[0].length < length) scratch[0] = new byte[Integer.highestOneBit(length) * 2];
+				stored.get(scratch[0], 0, length);
+				
+				Inflater inflater = INFLATER.get();
+				inflater.reset();
+				inflater.setInput(scratch[0], 0, length);
+				
+				int n = 0;
+				try {
+					while(!inflater.finished()) {
+						
+						if(n == scratch[1].length) {
+							byte[] larger = new byte[scratch[1].length * 2];
+							System.arraycopy(scratch[1], 0, larger, 0, n);
+							scratch[1] = larger;
+						}
+						
+						int inflated = inflater.inflate(scratch[1], n, scratch[1].length - n);
+						if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+							throw new IOException("Truncated chunk payload.");
+						n += inflated;
+					}
+				} catch(DataFormatException e) {
+					throw new IOException("Corrupt chunk payload.", e);
+				}
+				return ByteBuffer.wrap(scratch[1], 0, n).slice();
+			
+			default:
+				throw new IOException("Unknown compression type " + compression + ".");
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+package engine.voxel.io;
+
+import static engine.voxel.ChunkAddressing.key;
+import static engine.voxel.io.RegionFile.REGION_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persists the chunks of a single voxel grid, grouped into region files.
+ * Region files are opened lazily, and only a limited number are kept open at once;
+ * once there are too many, the least recently used region which isn't in use is closed.
+ * Chunk coordinates may be negative; region coordinates round towards negative infinity.
+ * @author Alec
+ */
+public class RegionStore implements AutoCloseable {
+	
+	/** The default number of region files to keep open at once. */
+	public static final int DEFAULT_MAX_OPEN = 32;
+	
+	private final File directory;
+	
+	private final int maxOpen;
+	
+	/** Open region files, keyed by their packed region coordinates, least recently used first. */
+	private final Map<Long, Region> regions = new LinkedHashMap<>(16, 0.75F, true);
+	
+	/**
+	 * Constructs a store which keeps its region files in the given directory.
+	 * The directory is created when the first region is written.
+	 * @param directory the save directory.
+	 */
+	public RegionStore(File directory) {
+		this(directory, DEFAULT_MAX_OPEN);
+	}
+	
+	/**
+	 * @param directory the save directory.
+	 * @param maxOpen the number of region files to keep open at once.
+	 * More may be open while they are being read or written.
+	 */
+	public RegionStore(File directory, int maxOpen) {
+		
+		if(maxOpen <= 0) throw new IllegalArgumentException("At least one region must be kept open.");
+		this.directory = directory;
+		this.maxOpen = maxOpen;
+	}
+	
+	/**
+	 * Returns the payload stored for the given chunk.
+	 * @param cx the x coordinate of the chunk.
+	 * @param cy the y coordinate of the chunk.
+	 * @param cz the z coordinate of the chunk.
+	 * @return the payload, or null if the chunk hasn't been saved.
+	 */
+	public byte[] read(int cx, int cy, int cz) throws IOException {
+		
+		Region region = acquire(cx, cy, cz, false);
+		if(region == null) return null;
+		
+		try {
+			return region.file.read(indexOf(cx, cy, cz));
+		} finally {
+			release(region);
+		}
+	}
+	
+	/**
+	 * Decodes the payload stored for the given chunk straight from its mapped region file.
+	 * See RegionFile.read(int, PayloadDecoder).
+	 * @param cx the x coordinate of the chunk.
+	 * @param cy the y coordinate of the chunk.
+	 * @param cz the z coordinate of the chunk.
+	 * @param decoder decodes the payload.
+	 * @return the result of the decoder, or null if the chunk hasn't been saved.
+	 */
+	public <T> T read(int cx, int cy, int cz, PayloadDecoder<T> decoder) throws IOException {
+		
+		Region region = acquire(cx, cy, cz, false);
+		if(region == null) return null;
+		
+		try {
+			return region.file.read(indexOf(cx, cy, cz), decoder);
+		} finally {
+			release(region);
+		}
+	}
+	
+	/**
+	 * Stores the payload for the given chunk, replacing any previous payload.
+	 * @param cx the x coordinate of the chunk.
+	 * @param cy the y coordinate of the chunk.
+	 * @param cz the z coordinate of the chunk.
+	 * @param payload the chunk payload.
+	 */
+	public void write(int cx, int cy, int cz, byte[] payload) throws IOException {
+		
+		Region region = acquire(cx, cy, cz, true);
+		
+		try {
+			region.file.write(indexOf(cx, cy, cz), payload);
+		} finally {
+			release(region);
+		}
+	}
+	
+	/**
+	 * Returns the directory in which region files are stored.
+	 */
+	public File getDirectory() { return directory; }
+	
+	/**
+	 * Returns the number of region files currently open.
+	 */
+	public synchronized int getOpenCount() { return regions.size(); }
+	
+	/**
+	 * Closes every open region file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		
+		for(Region region : regions.values()) {
+			region.file.close();
+		}
+		regions.clear();
+	}
+	
+	/**
+	 * Returns the region file containing the given chunk, opening it if necessary,
+	 * and marks it as in use until release() is called.
+	 * @param create whether to create the region file if it doesn't exist.
+	 * @return the region file, or null if it doesn't exist and create is false.
+	 */
+	private synchronized Region acquire(int cx, int cy, int cz, boolean create)
+			throws IOException {
+		
+		int rx = Math.floorDiv(cx, REGION_SIZE);
+		int ry = Math.floorDiv(cy, REGION_SIZE);
+		int rz = Math.floorDiv(cz, REGION_SIZE);
+		
+		long key = key(rx, ry, rz);
+		Region region = regions.get(key);
+		
+		if(region == null) {
+			
+			File file = new File(directory, "r" + rx + "," + ry + "," + rz + ".region");
+			if(!create && !file.exists()) return null;
+			
+			directory.mkdirs();
+			region = new Region(new RegionFile(file));
+			regions.put(key, region);
+		}
+		
+		region.users++;
+		evict();
+		return region;
+	}
+	
+	/**
+	 * Marks a region file returned by acquire() as no longer in use by the caller.
+	 */
+	private synchronized void release(Region region) {
+		
+		region.users--;
+		evict();
+	}
+	
+	/**
+	 * Closes the least recently used regions which aren't in use, until few enough are open.
+	 * Regions in use are never closed, so that a region is only ever open once.
+	 */
+	private void evict() {
+		
+		Iterator<Region> iterator = regions.values().iterator();
+		while(regions.size() > maxOpen && iterator.hasNext()) {
+			
+			Region region = iterator.next();
+			if(region.users > 0) continue;
+			
+			iterator.remove();
+			try {
+				region.file.close();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the index of a chunk within its region file.
+	 */
+	protected static int indexOf(int cx, int cy, int cz) {
+		return RegionFile.indexOf(
+				Math.floorMod(cx, REGION_SIZE),
+				Math.floorMod(cy, REGION_SIZE),
+				Math.floorMod(cz, REGION_SIZE));
+	}
+	
+	/**
+	 * An open region file, and the number of reads and writes using it.
+	 */
+	private static class Region {
+		
+		final RegionFile file;
+		
+		/** Guarded by the store. */
+		int users = 0;
+		
+		Region(RegionFile file) {
+			this.file = file;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,58 @@
+package engine.voxel.mesh;
+
+import java.util.Collections;
+import java.util.Map;
+
+import engine.model.Texture;
+
+/**
+ * The result of meshing a single chunk or chunk section; one batch of triangles per texture.
+ * Positions are relative to the origin of the chunk,
+ * with the centre of each voxel at integer coordinates.
+ * @author Alec
+ */
+public class ChunkMesh {
+	
+	private final int cx, cy, cz, section;
+	
+	private final Map<Texture, MeshData> batches;
+	
+	public ChunkMesh(int cx, int cy, int cz, int section, Map<Texture, MeshData> batches) {
+		this.cx = cx;
+		this.cy = cy;
+		this.cz = cz;
+		this.section = section;
+		this.batches = Collections.unmodifiableMap(batches);
+	}
+	
+	public int getX() { return cx; }
+	
+	public int getY() { return cy; }
+	
+	public int getZ() { return cz; }
+	
+	/**
+	 * Returns the index of the section this mesh replaces, see Chunk.sectionIndex().
+	 */
+	public int getSection() { return section; }
+	
+	/**
+	 * Returns the triangles of this mesh, grouped by texture.
+	 */
+	public Map<Texture, MeshData> getBatches() { return batches; }
+	
+	/**
+	 * Returns whether this mesh has no visible faces.
+	 */
+	public boolean isEmpty() { return batches.isEmpty(); }
+	
+	/**
+	 * Returns the total number of vertices over all textures.
+	 */
+	public int getNumVertices() {
+		
+		int vertices = 0;
+		for(MeshData batch : batches.values()) vertices += batch.getNumVertices();
+		return vertices;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,154 @@
+package engine.voxel.mesh;
+
+import engine.voxel.Chunk;
+import engine.voxel.ChunkAddressing;
+import engine.voxel.VoxelCursor;
+import engine.voxel.VoxelGrid;
+
+/**
+ * An immutable copy of the blocks of a single chunk section, padded by one voxel on every side
+ * with the blocks around it, so that faces on the border of the section can be
+ * culled without access to the grid. Voxels in neighbours which aren't loaded are air.
+ * Local coordinates are relative to the section, which is at getOffsetX/Y/Z() in its chunk.
+ * Taking a snapshot must happen on the thread which owns the grid,
+ * but the snapshot itself may then be meshed on any thread.
+ * @author Alec
+ */
+public class ChunkSnapshot {
+	
+	private final int cx, cy, cz, section, size, width;
+	
+	/** The position of the section within its chunk. */
+	private final int sx, sy, sz;
+	
+	/** Block ids and data, for local coordinates -1 to size (inclusive). */
+	private final int[] ids, data;
+	
+	/** Whether every voxel within the chunk itself is air. */
+	private boolean empty = true;
+	
+	/**
+	 * Constructs a snapshot of the given chunk and its border.
+	 * @param grid the grid containing the chunk.
+	 * @param cx the x coordinate of the chunk.
+	 * @param cy the y coordinate of the chunk.
+	 * @param cz the z coordinate of the chunk.
+	 */
+	public ChunkSnapshot(VoxelGrid grid, int cx, int cy, int cz) {
+		this(grid, cx, cy, cz, 0, 0, 0, 0, grid.getChunkSize());
+	}
+	
+	/**
+	 * Constructs a snapshot of a single section of the given chunk, and its border.
+	 * @param grid the grid containing the chunk.
+	 * @param chunk the chunk containing the section.
+	 * @param section the index of the section, see Chunk.sectionIndex().
+	 */
+	public ChunkSnapshot(VoxelGrid grid, Chunk chunk, int section) {
+		this(grid, chunk.getX(), chunk.getY(), chunk.getZ(), section,
+				section / (chunk.getSections() * chunk.getSections()) * chunk.getSectionSize(),
+				section / chunk.getSections() % chunk.getSections() * chunk.getSectionSize(),
+				section % chunk.getSections() * chunk.getSectionSize(),
+				chunk.getSectionSize());
+	}
+	
+	private ChunkSnapshot(VoxelGrid grid, int cx, int cy, int cz,
+			int section, int sx, int sy, int sz, int size) {
+		
+		this(cx, cy, cz, section, sx, sy, sz, size);
+		
+		ChunkAddressing addressing = grid.getAddressing();
+		VoxelCursor cursor = new VoxelCursor(grid);
+		int ox = addressing.originOf(cx) + sx;
+		int oy = addressing.originOf(cy) + sy;
+		int oz = addressing.originOf(cz) + sz;
+		
+		for(int x = -1; x <= size; x++) {
+			for(int y = -1; y <= size; y++) {
+				for(int z = -1; z <= size; z++) {
+					
+					int id = cursor.getBlockId(ox + x, oy + y, oz + z);
+					if(id != 0) set(x, y, z, id, cursor.getBlockData(ox + x, oy + y, oz + z));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Constructs a snapshot filled entirely with air, to be filled in with set().
+	 * @param cx the x coordinate of the chunk.
+	 * @param cy the y coordinate of the chunk.
+	 * @param cz the z coordinate of the chunk.
+	 * @param size the width of the chunk in voxels.
+	 */
+	public ChunkSnapshot(int cx, int cy, int cz, int size) {
+		this(cx, cy, cz, 0, 0, 0, 0, size);
+	}
+	
+	private ChunkSnapshot(int cx, int cy, int cz, int section, int sx, int sy, int sz, int size) {
+		
+		this.cx = cx;
+		this.cy = cy;
+		this.cz = cz;
+		this.section = section;
+		this.sx = sx;
+		this.sy = sy;
+		this.sz = sz;
+		this.size = size;
+		width = size + 2;
+		ids = new int[width * width * width];
+		data = new int[width * width * width];
+	}
+	
+	/**
+	 * Sets a voxel of the snapshot, for local coordinates from -1 to size (inclusive).
+	 */
+	public void set(int x, int y, int z, int id, int data) {
+		
+		int index = indexOf(x, y, z);
+		ids[index] = id;
+		this.data[index] = data;
+		
+		if(id != 0 && x >= 0 && x < size && y >= 0 && y < size && z >= 0 && z < size)
+			empty = false;
+	}
+	
+	/**
+	 * Returns the block id at the given local coordinates, from -1 to size (inclusive).
+	 */
+	public int getBlockId(int x, int y, int z) { return ids[indexOf(x, y, z)]; }
+	
+	/**
+	 * Returns the block data at the given local coordinates, from -1 to size (inclusive).
+	 */
+	public int getBlockData(int x, int y, int z) { return data[indexOf(x, y, z)]; }
+	
+	/**
+	 * Returns whether every voxel within the chunk (excluding the border) is air.
+	 */
+	public boolean isEmpty() { return empty; }
+	
+	public int getSize() { return size; }
+	
+	public int getX() { return cx; }
+	
+	public int getY() { return cy; }
+	
+	public int getZ() { return cz; }
+	
+	/** Returns the index of the section within its chunk, or 0 for a whole chunk. */
+	public int getSection() { return section; }
+	
+	/** Returns the x position of the section within its chunk. */
+	public int getOffsetX() { return sx; }
+	
+	/** Returns the y position of the section within its chunk. */
+	public int getOffsetY() { return sy; }
+	
+	/** Returns the z position of the section within its chunk. */
+	public int getOffsetZ() { return sz; }
+	
+	private int indexOf(int x, int y, int z) {
+		return ((x + 1) * width + (y + 1)) * width + (z + 1);
+	}
+}
\ No newline at end of file
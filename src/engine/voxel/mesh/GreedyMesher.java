@@ -0,0 +1,191 @@
+package engine.voxel.mesh;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import engine.model.Texture;
+import engine.voxel.Block;
+import engine.voxel.Block.Side;
+import engine.voxel.BlockFace;
+import engine.voxel.BlockRegistry;
+
+/**
+ * Converts chunks into meshes, emitting only the faces which are visible
+ * (those not covered by an opaque neighbour, including across chunk borders),
+ * and merging adjacent coplanar faces with the same texture into larger quads.
+ * Texture coordinates span the whole quad, one unit per voxel,
+ * so textures are expected to use GL_REPEAT wrapping.
+ * A mesher reuses its working memory, so isn't thread safe; use one per thread.
+ * @author Alec
+ */
+public class GreedyMesher {
+	
+	private static final Side[] SIDES = Side.values();
+	
+	private final BlockRegistry blocks;
+	
+	/** The texture of each visible face in the current slice, or null where there is none. */
+	private Texture[] mask = new Texture[0];
+	
+	/** Working voxel and vertex positions, indexed by axis. */
+	private final int[] voxel = new int[3];
+	private final float[] vertex = new float[3];
+	
+	/** The position of the section being meshed within its chunk. */
+	private float ox, oy, oz;
+	
+	public GreedyMesher(BlockRegistry blocks) {
+		this.blocks = blocks;
+	}
+	
+	/**
+	 * Meshes the given chunk.
+	 * @param chunk a snapshot of the chunk (or section) and its border.
+	 * @return the visible faces, grouped by texture, positioned relative to the chunk.
+	 */
+	public ChunkMesh mesh(ChunkSnapshot chunk) {
+		
+		Map<Texture, MeshData> batches = new HashMap<>();
+		ox = chunk.getOffsetX();
+		oy = chunk.getOffsetY();
+		oz = chunk.getOffsetZ();
+		
+		if(!chunk.isEmpty()) {
+			
+			int size = chunk.getSize();
+			if(mask.length < size * size) mask = new Texture[size * size];
+			
+			for(Side side : SIDES) {
+				for(int slice = 0; slice < size; slice++) {
+					if(fillMask(chunk, side, slice)) mergeMask(side, slice, size, batches);
+				}
+			}
+			for(MeshData batch : batches.values()) batch.trim();
+		}
+		return new ChunkMesh(chunk.getX(), chunk.getY(), chunk.getZ(), chunk.getSection(), batches);
+	}
+	
+	/**
+	 * Finds the visible faces on the given side of each voxel in a slice of the chunk.
+	 * @return whether there are any.
+	 */
+	private boolean fillMask(ChunkSnapshot chunk, Side side, int slice) {
+		
+		int size = chunk.getSize();
+		int d = BlockFace.axisOf(side), u = (d + 1) % 3, v = (d + 2) % 3;
+		int step = BlockFace.isPositive(side) ? 1 : -1;
+		boolean any = false;
+		
+		voxel[d] = slice;
+		for(int j = 0; j < size; j++) {
+			voxel[v] = j;
+			for(int i = 0; i < size; i++) {
+				voxel[u] = i;
+				
+				Texture texture = null;
+				Block block = blocks.get(chunk.getBlockId(voxel[0], voxel[1], voxel[2]));
+				
+				if(block != null) {
+					
+					int data = chunk.getBlockData(voxel[0], voxel[1], voxel[2]);
+					
+					//Look at the neighbour which this face would be pressed against.
+					voxel[d] += step;
+					boolean covered = blocks.isOpaque(chunk.getBlockId(voxel[0], voxel[1], voxel[2]),
+							chunk.getBlockData(voxel[0], voxel[1], voxel[2]));
+					voxel[d] -= step;
+					
+					if(!covered) {
+						texture = block.getTexture(side, data);
+						any = true;
+					}
+				}
+				mask[j * size + i] = texture;
+			}
+		}
+		return any;
+	}
+	
+	/**
+	 * Greedily merges the faces in the mask into as few rectangles as possible,
+	 * adding each to the batch for its texture and clearing the mask as it goes.
+	 */
+	private void mergeMask(Side side, int slice, int size, Map<Texture, MeshData> batches) {
+		
+		for(int j = 0; j < size; j++) {
+			for(int i = 0; i < size; ) {
+				
+				Texture texture = mask[j * size + i];
+				if(texture == null) {
+					i++;
+					continue;
+				}
+				
+				//Extend along u as far as the texture continues.
+				int w = 1;
+				while(i + w < size && mask[j * size + i + w] == texture) w++;
+				
+				//Then extend along v while every face in the next row matches.
+				int h = 1;
+				extend: while(j + h < size) {
+					for(int k = 0; k < w; k++) {
+						if(mask[(j + h) * size + i + k] != texture) break extend;
+					}
+					h++;
+				}
+				
+				for(int l = 0; l < h; l++) {
+					for(int k = 0; k < w; k++) mask[(j + l) * size + i + k] = null;
+				}
+				
+				MeshData batch = batches.get(texture);
+				if(batch == null) batches.put(texture, batch = new MeshData());
+				addQuad(batch, side, slice, i, j, w, h);
+				
+				i += w;
+			}
+		}
+	}
+	
+	/**
+	 * Adds a quad as two triangles, wound anticlockwise when viewed from outside.
+	 * Voxel centres are at integer coordinates, so faces lie half a voxel either side.
+	 */
+	private void addQuad(MeshData batch, Side side, int slice, int i, int j, int w, int h) {
+		
+		int d = BlockFace.axisOf(side);
+		boolean positive = BlockFace.isPositive(side);
+		float plane = slice + (positive ? 0.5F : -0.5F);
+		
+		float n = positive ? 1 : -1;
+		float u0 = i - 0.5F, v0 = j - 0.5F, u1 = u0 + w, v1 = v0 + h;
+		
+		if(positive) {
+			addVertex(batch, d, n, plane, u0, v0, 0, h);
+			addVertex(batch, d, n, plane, u1, v0, w, h);
+			addVertex(batch, d, n, plane, u1, v1, w, 0);
+			addVertex(batch, d, n, plane, u0, v0, 0, h);
+			addVertex(batch, d, n, plane, u1, v1, w, 0);
+			addVertex(batch, d, n, plane, u0, v1, 0, 0);
+		
+		} else {
+			addVertex(batch, d, n, plane, u0, v0, 0, h);
+			addVertex(batch, d, n, plane, u1, v1, w, 0);
+			addVertex(batch, d, n, plane, u1, v0, w, h);
+			addVertex(batch, d, n, plane, u0, v0, 0, h);
+			addVertex(batch, d, n, plane, u0, v1, 0, 0);
+			addVertex(batch, d, n, plane, u1, v1, w, 0);
+		}
+	}
+	
+	private void addVertex(MeshData batch, int d, float n,
+			float plane, float pu, float pv, float tu, float tv) {
+		
+		vertex[d] = plane;
+		vertex[(d + 1) % 3] = pu;
+		vertex[(d + 2) % 3] = pv;
+		
+		batch.add(ox + vertex[0], oy + vertex[1], oz + vertex[2],
+				d == 0 ? n : 0, d == 1 ? n : 0, d == 2 ? n : 0, tu, tv);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+package engine.voxel.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Packed, unindexed triangle data for a single texture, ready to be uploaded to a VAO:
+ * three position and three normal components, and two texture coordinates, per vertex.
+ * While being built, the arrays grow as needed; see trim().
+ * @author Alec
+ */
+public class MeshData {
+	
+	private float[] vertices, normals, texCoords;
+	
+	private int numVertices = 0;
+	
+	public MeshData() {
+		this(64);
+	}
+	
+	/**
+	 * @param capacity the number of vertices to allocate space for initially.
+	 */
+	public MeshData(int capacity) {
+		vertices = new float[capacity * 3];
+		normals = new float[capacity * 3];
+		texCoords = new float[capacity * 2];
+	}
+	
+	/**
+	 * Appends a single vertex.
+	 */
+	public void add(float x, float y, float z, float nx, float ny, float nz, float u, float v) {
+		
+		if(numVertices * 3 == vertices.length) {
+			int capacity = Math.max(16, numVertices * 2);
+			vertices = Arrays.copyOf(vertices, capacity * 3);
+			normals = Arrays.copyOf(normals, capacity * 3);
+			texCoords = Arrays.copyOf(texCoords, capacity * 2);
+		}
+		
+		int i = numVertices * 3, j = numVertices * 2;
+		vertices[i] = x;
+		vertices[i + 1] = y;
+		vertices[i + 2] = z;
+		normals[i] = nx;
+		normals[i + 1] = ny;
+		normals[i + 2] = nz;
+		texCoords[j] = u;
+		texCoords[j + 1] = v;
+		numVertices++;
+	}
+	
+	/**
+	 * Shrinks the arrays to exactly fit the vertices added so far.
+	 */
+	public MeshData trim() {
+		
+		if(vertices.length != numVertices * 3) {
+			vertices = Arrays.copyOf(vertices, numVertices * 3);
+			normals = Arrays.copyOf(normals, numVertices * 3);
+			texCoords = Arrays.copyOf(texCoords, numVertices * 2);
+		}
+		return this;
+	}
+	
+	/** Vertex positions; only the first getNumVertices() * 3 values are used. */
+	public float[] getVertices() { return vertices; }
+	
+	/** Vertex normals; only the first getNumVertices() * 3 values are used. */
+	public float[] getNormals() { return normals; }
+	
+	/** Texture coordinates; only the first getNumVertices() * 2 values are used. */
+	public float[] getTexCoords() { return texCoords; }
+	
+	public int getNumVertices() { return numVertices; }
+}
\ No newline at end of file
@@ -0,0 +1,264 @@
+package engine.voxel.mesh;
+
+import static engine.voxel.ChunkAddressing.key;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import engine.render.Camera;
+import engine.voxel.Chunk;
+import engine.voxel.VoxelGrid;
+
+/**
+ * Remeshes chunks on a pool of worker threads, away from the render and game-tick threads.
+ * Requests may be made from any thread, and repeated requests for the same chunk are merged.
+ * Once per tick, the thread which owns the grid calls dispatch(), which snapshots the
+ * dirty sections of the nearest requested chunks (and their borders) and hands them to the workers.
+ * Only sections which have changed are remeshed; each result replaces a single section.
+ * Finished meshes are queued for the render thread to upload, see poll().
+ * @author Alec
+ */
+public class MeshScheduler {
+	
+	private final VoxelGrid grid;
+	
+	private final ForkJoinPool pool;
+	
+	/** Worker threads each keep their own mesher, as meshers reuse their working memory. */
+	private final ThreadLocal<GreedyMesher> meshers;
+	
+	/** Chunks which have been requested but not yet dispatched, by chunk position. */
+	private final Map<Long, Request> requested = new ConcurrentHashMap<>();
+	
+	/** The most recent dispatch of each chunk section, used to discard outdated meshes. */
+	private final Map<SectionKey, Long> latest = new ConcurrentHashMap<>();
+	
+	/** Meshes which have finished, waiting to be uploaded. */
+	private final Queue<Result> finished = new ConcurrentLinkedQueue<>();
+	
+	/** Ordering of dispatches, so that later meshes of a chunk replace earlier ones. */
+	private final AtomicLong generation = new AtomicLong();
+	
+	/** The maximum number of sections to snapshot per call to dispatch(). */
+	private int budget = 64;
+	
+	/** Reused by dispatch() to sort requests; only touched by the owning thread. */
+	private final List<Request> batch = new ArrayList<>();
+	
+	/**
+	 * Constructs a new scheduler for the given grid.
+	 * @param grid the grid whose chunks are to be meshed.
+	 * @param threads the number of worker threads.
+	 */
+	public MeshScheduler(VoxelGrid grid, int threads) {
+		
+		this.grid = grid;
+		meshers = ThreadLocal.withInitial(() -> new GreedyMesher(grid.getBlocks()));
+		
+		pool = new ForkJoinPool(threads, p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName("chunk-mesher-" + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+	}
+	
+	/**
+	 * Constructs a new scheduler, using all but one of the available processors.
+	 */
+	public MeshScheduler(VoxelGrid grid) {
+		this(grid, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+	
+	/**
+	 * Requests that the given chunk be remeshed.
+	 * Does nothing if the chunk is already waiting to be dispatched.
+	 * @param cx the x coordinate of the chunk.
+	 * @param cy the y coordinate of the chunk.
+	 * @param cz the z coordinate of the chunk.
+	 */
+	public void request(int cx, int cy, int cz) {
+		requested.putIfAbsent(key(cx, cy, cz), new Request(cx, cy, cz));
+	}
+	
+	/**
+	 * Snapshots up to getBudget() dirty sections of the requested chunks, nearest to the camera
+	 * first, and submits them to be meshed. Must be called on the thread which owns the grid.
+	 * Chunks with more dirty sections than the remaining budget stay requested.
+	 * Chunks which aren't loaded are dropped, and should be requested again once they are.
+	 * @param camera the camera whose nearest chunks take priority.
+	 */
+	public void dispatch(Camera camera) {
+		
+		if(requested.isEmpty()) return;
+		
+		Vector3f focus = camera.getTransform().getWorldPosition(new Vector3f());
+		int size = grid.getChunkSize();
+		
+		batch.clear();
+		for(Request request : requested.values()) {
+			
+			float dx = (request.cx + 0.5F) * size - focus.x;
+			float dy = (request.cy + 0.5F) * size - focus.y;
+			float dz = (request.cz + 0.5F) * size - focus.z;
+			request.distance = dx * dx + dy * dy + dz * dz;
+			batch.add(request);
+		}
+		batch.sort(Comparator.comparingDouble(r -> r.distance));
+		
+		int remaining = budget;
+		for(int i = 0; i < batch.size() && remaining > 0; i++) {
+			
+			Request request = batch.get(i);
+			Chunk chunk = grid.getChunk(request.cx, request.cy, request.cz);
+			
+			int section = chunk == null ? -1 : chunk.nextDirtySection(0);
+			for(; section != -1 && remaining > 0; section = chunk.nextDirtySection(section + 1)) {
+				
+				chunk.clearSectionDirty(section);
+				remaining--;
+				
+				SectionKey key = new SectionKey(request.key, section);
+				long gen = generation.incrementAndGet();
+				latest.put(key, gen);
+				pool.execute(new MeshTask(key, gen, new ChunkSnapshot(grid, chunk, section)));
+			}
+			
+			if(chunk == null || !chunk.hasDirtySections()) requested.remove(request.key, request);
+		}
+		batch.clear();
+	}
+	
+	/**
+	 * Returns the next finished mesh, or null if there is none.
+	 * Meshes which have since been superseded by a newer dispatch of the same section are skipped.
+	 * Intended to be called on the render thread, which can then upload the mesh.
+	 */
+	public ChunkMesh poll() {
+		
+		Result result;
+		while((result = finished.poll()) != null) {
+			
+			Long gen = latest.get(result.key);
+			if(gen != null && gen == result.generation) {
+				latest.remove(result.key, gen);
+				return result.mesh;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the number of chunks waiting to be dispatched.
+	 */
+	public int getPending() { return requested.size(); }
+	
+	public int getBudget() { return budget; }
+	
+	/**
+	 * Sets the maximum number of chunks to snapshot per call to dispatch().
+	 */
+	public void setBudget(int budget) { this.budget = budget; }
+	
+	/**
+	 * Stops the worker threads, abandoning any meshes in progress.
+	 */
+	public void shutdown() {
+		
+		requested.clear();
+		pool.shutdownNow();
+		
+		try {
+			pool.awaitTermination(1, TimeUnit.SECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static class Request {
+		
+		final int cx, cy, cz;
+		final long key;
+		
+		/** Squared distance to the camera, as of the last dispatch. */
+		float distance;
+		
+		Request(int cx, int cy, int cz) {
+			this.cx = cx;
+			this.cy = cy;
+			this.cz = cz;
+			key = key(cx, cy, cz);
+		}
+	}
+	
+	private static class SectionKey {
+		
+		final long chunk;
+		final int section;
+		
+		SectionKey(long chunk, int section) {
+			this.chunk = chunk;
+			this.section = section;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof SectionKey && ((SectionKey) o).chunk == chunk
+					&& ((SectionKey) o).section == section;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Long.hashCode(chunk) * 31 + section;
+		}
+	}
+	
+	private static class Result {
+		
+		final SectionKey key;
+		final long generation;
+		final ChunkMesh mesh;
+		
+		Result(SectionKey key, long generation, ChunkMesh mesh) {
+			this.key = key;
+			this.generation = generation;
+			this.mesh = mesh;
+		}
+	}
+	
+	@SuppressWarnings("serial")
+	private class MeshTask extends RecursiveAction {
+		
+		final SectionKey key;
+		final long generation;
+		final ChunkSnapshot snapshot;
+		
+		MeshTask(SectionKey key, long generation, ChunkSnapshot snapshot) {
+			this.key = key;
+			this.generation = generation;
+			this.snapshot = snapshot;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			try {
+				finished.add(new Result(key, generation, meshers.get().mesh(snapshot)));
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
\ No newline at end of file
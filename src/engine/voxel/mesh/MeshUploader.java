@@ -0,0 +1,90 @@
+package engine.voxel.mesh;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lwjgl.BufferUtils;
+
+import engine.model.Mesh;
+
+/**
+ * Uploads mesh data to the GPU, and deletes it again once it is replaced.
+ * Attribute layout matches the rest of the engine: 0 position, 1 normal, 2 texture coordinates.
+ * Must only be used on the render thread.
+ * @author Alec
+ */
+public class MeshUploader {
+	
+	/** The buffers belonging to each uploaded VAO. */
+	private final Map<Integer, int[]> vaos = new HashMap<>();
+	
+	/** Staging buffer, grown as needed and reused between uploads. */
+	private FloatBuffer staging = BufferUtils.createFloatBuffer(1024);
+	
+	/**
+	 * Uploads the given data into a new VAO.
+	 */
+	public Mesh upload(MeshData data) {
+		
+		int vaoId = glGenVertexArrays();
+		glBindVertexArray(vaoId);
+		
+		int n = data.getNumVertices();
+		vaos.put(vaoId, new int[] {
+				createVbo(0, data.getVertices(), n * 3, 3),
+				createVbo(1, data.getNormals(), n * 3, 3),
+				createVbo(2, data.getTexCoords(), n * 2, 2)});
+		
+		glBindVertexArray(0);
+		
+		return new Mesh(vaoId, n).computeBounds(data.getVertices(), n * 3);
+	}
+	
+	/**
+	 * Deletes a mesh previously created by upload(), along with its buffers.
+	 */
+	public void delete(Mesh mesh) {
+		
+		int[] vbos = vaos.remove(mesh.getVaoId());
+		if(vbos == null) return;
+		
+		glDeleteVertexArrays(mesh.getVaoId());
+		for(int vboId : vbos) glDeleteBuffers(vboId);
+	}
+	
+	/**
+	 * Deletes every mesh created by this uploader.
+	 */
+	public void unload() {
+		
+		for(Map.Entry<Integer, int[]> vao : vaos.entrySet()) {
+			glDeleteVertexArrays(vao.getKey());
+			for(int vboId : vao.getValue()) glDeleteBuffers(vboId);
+		}
+		vaos.clear();
+	}
+	
+	private int createVbo(int attrib, float[] data, int length, int dim) {
+		
+		if(staging.capacity() < length)
+			staging = BufferUtils.createFloatBuffer(Math.max(length, staging.capacity() * 2));
+		
+		staging.clear();
+		staging.put(data, 0, length);
+		staging.flip();
+		
+		int vboId = glGenBuffers();
+		glBindBuffer(GL_ARRAY_BUFFER, vboId);
+		glBufferData(GL_ARRAY_BUFFER, staging, GL_STATIC_DRAW);
+		glVertexAttribPointer(attrib, dim, GL_FLOAT, false, 0, 0);
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		
+		return vboId;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package engine.voxel.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Superclass for the block storage backing a single chunk.
+ * Voxels are addressed by a flat index, and each holds a block id and data value.
+ * Storages switch representation as they are written to; writes return the
+ * storage which should be used from then on, which may not be the same object.
+ * @author Alec
+ */
+public abstract class BlockStorage {
+	
+	/** Format tags written ahead of each serialized storage. */
+	static final byte UNIFORM = 0, PALETTE = 1;
+	
+	/** The number of voxels stored. */
+	protected final int volume;
+	
+	protected BlockStorage(int volume) {
+		this.volume = volume;
+	}
+	
+	/**
+	 * Returns the block id of the voxel at the given index.
+	 * @param index a flat voxel index.
+	 * @return the block id.
+	 */
+	public abstract int getId(int index);
+	
+	/**
+	 * Returns the block data of the voxel at the given index.
+	 * @param index a flat voxel index.
+	 * @return the block data.
+	 */
+	public abstract int getData(int index);
+	
+	/**
+	 * Sets the block at the given index.
+	 * @param index a flat voxel index.
+	 * @param id the new block id.
+	 * @param data the new block data.
+	 * @return the storage to use from now on; either this or a replacement.
+	 */
+	public abstract BlockStorage set(int index, int id, int data);
+	
+	/**
+	 * Sets every block in the given range of indices.
+	 * Filling the entire volume always results in a uniform storage.
+	 * @param from the first flat voxel index (inclusive).
+	 * @param to the last flat voxel index (exclusive).
+	 * @param id the new block id.
+	 * @param data the new block data.
+	 * @return the storage to use from now on; either this or a replacement.
+	 */
+	public abstract BlockStorage fill(int from, int to, int id, int data);
+	
+	/**
+	 * Returns whether every block in the given range of indices is already the given block,
+	 * such that filling the range would change nothing.
+	 * @param from the first flat voxel index (inclusive).
+	 * @param to the last flat voxel index (exclusive).
+	 * @param id the block id.
+	 * @param data the block data.
+	 */
+	public abstract boolean isFilled(int from, int to, int id, int data);
+	
+	/**
+	 * Returns whether every voxel holds the same id and data.
+	 */
+	public abstract boolean isUniform();
+	
+	/**
+	 * Returns a storage holding the same blocks as this one, which
+	 * won't be affected by any later writes to this one.
+	 */
+	public abstract BlockStorage copy();
+	
+	/** Returns the number of voxels in this storage. */
+	public int getVolume() { return volume; }
+	
+	/**
+	 * Writes this storage to the given stream, such that it can be
+	 * reconstructed with read().
+	 * @param dos the output stream.
+	 */
+	public abstract void write(DataOutputStream dos) throws IOException;
+	
+	/**
+	 * Reads a storage previously written with write(), directly from a buffer
+	 * (such as a memory mapped region file) with no intermediate copies.
+	 * The buffer must be big-endian, as written by a DataOutputStream.
+	 * @param buffer the buffer, positioned at the start of the storage.
+	 * @param volume the number of voxels expected.
+	 * @return the storage.
+	 */
+	public static BlockStorage read(ByteBuffer buffer, int volume) throws IOException {
+		
+		try {
+			byte format = buffer.get();
+			
+			switch(format) {
+				case UNIFORM: return UniformStorage.decode(buffer, volume);
+				case PALETTE: return PaletteStorage.decode(buffer, volume);
+				default: throw new IOException("Unknown block storage format " + format + ".");
+			}
+		} catch(BufferUnderflowException e) {
+			throw new IOException("Truncated block storage.", e);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,427 @@
+package engine.voxel.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Flat, index-addressed block storage for a single chunk.
+ * Each voxel is stored as an index into a palette of distinct (id, data) pairs,
+ * packed into a long[] using a fixed number of bits per voxel.
+ * The palette, and with it the number of bits, grows on demand (1, 2, 4, 8 or 16 bits;
+ * 32 bits only once a chunk holds more than 65536 distinct values).
+ * Bit widths are powers of two so that no voxel ever straddles two words.
+ * Palette entries are reference counted, so that entries which are no longer
+ * used can be reclaimed, and so that a chunk which becomes uniform can be demoted.
+ * @author Alec
+ */
+public class PaletteStorage extends BlockStorage {
+	
+	/** Largest number of bits used per voxel. */
+	private static final int MAX_BITS = 32;
+	
+	/** The number of bits used to store each voxel, and log2 thereof. */
+	private int bits, bitShift;
+	
+	/** log2 of the number of voxels per word, and the corresponding index mask. */
+	private int wordShift, indexMask;
+	
+	/** Mask used to extract a single voxel from a word. */
+	private long mask;
+	
+	/** Packed palette indices for every voxel. */
+	private long[] words;
+	
+	/** The palette; block id, data and number of voxels for each palette index. */
+	private int[] ids, data, counts;
+	
+	/** The number of palette entries allocated, and the number with a non-zero count. */
+	private int paletteSize, used;
+	
+	/** Open-addressed hash table mapping (id, data) to palette index + 1 (0 is empty). */
+	private long[] keys;
+	private int[] slots;
+	
+	/**
+	 * Constructs a new storage of the given volume, filled with block 0 (data 0).
+	 * @param volume the number of voxels to store.
+	 */
+	public PaletteStorage(int volume) {
+		this(volume, 0, 0);
+	}
+	
+	/**
+	 * Constructs a new storage of the given volume, filled with the given block.
+	 * @param volume the number of voxels to store.
+	 * @param id the block id of every voxel.
+	 * @param data the block data of every voxel.
+	 */
+	public PaletteStorage(int volume, int id, int data) {
+		
+		super(volume);
+		init(1, 2);
+		words = new long[wordCount(bits)];
+		addToPalette(id, data);
+		counts[0] = volume;
+		used = 1;
+	}
+	
+	/**
+	 * Copy constructor; the copy shares no arrays with the original.
+	 */
+	private PaletteStorage(PaletteStorage s) {
+		
+		super(s.volume);
+		
+		setBits(s.bits);
+		words = s.words.clone();
+		ids = s.ids.clone();
+		data = s.data.clone();
+		counts = s.counts.clone();
+		paletteSize = s.paletteSize;
+		used = s.used;
+		keys = s.keys.clone();
+		slots = s.slots.clone();
+	}
+	
+	/**
+	 * Allocates an empty palette with the given bit width and capacity.
+	 */
+	private void init(int bits, int capacity) {
+		
+		ids = new int[capacity];
+		data = new int[capacity];
+		counts = new int[capacity];
+		keys = new long[8];
+		slots = new int[8];
+		
+		setBits(bits);
+	}
+	
+	@Override
+	public int getId(int index) {
+		return ids[paletteIndex(index)];
+	}
+	
+	@Override
+	public int getData(int index) {
+		return data[paletteIndex(index)];
+	}
+	
+	@Override
+	public BlockStorage set(int index, int id, int data) {
+		
+		int old = paletteIndex(index);
+		if(ids[old] == id && this.data[old] == data) return this;
+		
+		int p = find(id, data);
+		if(p == -1) {
+			p = addToPalette(id, data);
+			//Adding to the palette may have compacted it, renumbering the old entry.
+			old = paletteIndex(index);
+		}
+		setPaletteIndex(index, p);
+		
+		if(counts[p]++ == 0) used++;
+		if(--counts[old] == 0) used--;
+		
+		//Demote back to a single value once only one block remains.
+		if(used == 1) return demote();
+		else return this;
+	}
+	
+	@Override
+	public BlockStorage fill(int from, int to, int id, int data) {
+		
+		if(from == 0 && to == volume) return new UniformStorage(volume, id, data);
+		
+		//The palette entry is only looked up once for the whole range.
+		int p = find(id, data);
+		if(p == -1) p = addToPalette(id, data);
+		
+		int changed = 0;
+		for(int i = from; i < to; i++) {
+			
+			int old = paletteIndex(i);
+			if(old != p) {
+				setPaletteIndex(i, p);
+				if(--counts[old] == 0) used--;
+				changed++;
+			}
+		}
+		
+		if(changed == 0) return this;
+		if(counts[p] == 0) used++;
+		counts[p] += changed;
+		
+		if(used == 1) return demote();
+		else return this;
+	}
+	
+	@Override
+	public boolean isFilled(int from, int to, int id, int data) {
+		
+		int p = find(id, data);
+		if(p == -1 || counts[p] < to - from) return from == to;
+		
+		for(int i = from; i < to; i++) {
+			if(paletteIndex(i) != p) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns a uniform storage holding the one palette entry which is still in use.
+	 */
+	private UniformStorage demote() {
+		
+		int p = 0;
+		while(counts[p] == 0) p++;
+		return new UniformStorage(volume, ids[p], data[p]);
+	}
+	
+	@Override
+	public boolean isUniform() { return used == 1; }
+	
+	@Override
+	public BlockStorage copy() { return new PaletteStorage(this); }
+	
+	/** Returns the number of bits currently used per voxel. */
+	public int getBits() { return bits; }
+	
+	/** Returns the number of distinct (id, data) pairs in use. */
+	public int getPaletteSize() { return used; }
+	
+	@Override
+	public void write(DataOutputStream dos) throws IOException {
+		
+		dos.writeByte(PALETTE);
+		dos.writeByte(bits);
+		dos.writeInt(paletteSize);
+		
+		for(int p = 0; p < paletteSize; p++) {
+			dos.writeInt(ids[p]);
+			dos.writeInt(data[p]);
+		}
+		
+		for(long word : words) {
+			dos.writeLong(word);
+		}
+	}
+	
+	static PaletteStorage decode(ByteBuffer buffer, int volume) throws IOException {
+		return new PaletteStorage(volume, buffer);
+	}
+	
+	/**
+	 * Constructs a storage from data previously written with write().
+	 * The packed words are bulk copied straight out of the buffer.
+	 */
+	private PaletteStorage(int volume, ByteBuffer buffer) throws IOException {
+		
+		super(volume);
+		
+		int bits = buffer.get();
+		int paletteSize = buffer.getInt();
+		
+		//Checked before anything is allocated, so that a corrupt size can't exhaust memory.
+		if(Integer.bitCount(bits) != 1 || bits > MAX_BITS
+				|| paletteSize <= 0 || paletteSize > 1L << bits
+				|| paletteSize > volume || paletteSize > buffer.remaining() / 8)
+			throw new IOException("Corrupt palette storage header.");
+		
+		init(bits, paletteSize);
+		
+		for(int p = 0; p < paletteSize; p++) {
+			ids[p] = buffer.getInt();
+			data[p] = buffer.getInt();
+		}
+		
+		words = new long[wordCount(bits)];
+		buffer.asLongBuffer().get(words);
+		buffer.position(buffer.position() + words.length * 8);
+		
+		restorePalette(paletteSize);
+	}
+	
+	/**
+	 * Rebuilds the counts and lookup table once the palette and words have been read.
+	 * @throws IOException if any voxel refers past the end of the palette.
+	 */
+	private void restorePalette(int paletteSize) throws IOException {
+		
+		this.paletteSize = paletteSize;
+		rehash(Math.max(8, Integer.highestOneBit(paletteSize) * 4));
+		
+		for(int i = 0; i < volume; i++) {
+			
+			int p = paletteIndex(i);
+			if(p < 0 || p >= paletteSize) throw new IOException("Corrupt palette index " + p + " at voxel " + i + ".");
+			if(counts[p]++ == 0) used++;
+		}
+	}
+	
+	/**
+	 * Returns the palette index stored for the voxel at the given index.
+	 */
+	private int paletteIndex(int index) {
+		return (int) ((words[index >>> wordShift]
+				>>> ((index & indexMask) << bitShift)) & mask);
+	}
+	
+	/**
+	 * Stores a palette index for the voxel at the given index.
+	 */
+	private void setPaletteIndex(int index, int p) {
+		
+		int word = index >>> wordShift;
+		int offset = (index & indexMask) << bitShift;
+		words[word] = (words[word] & ~(mask << offset)) | ((p & mask) << offset);
+	}
+	
+	/**
+	 * Returns the palette index of the given (id, data) pair, or -1 if there is none.
+	 */
+	private int find(int id, int data) {
+		
+		long key = key(id, data);
+		int m = keys.length - 1;
+		
+		for(int i = hash(key) & m; slots[i] != 0; i = (i + 1) & m) {
+			if(keys[i] == key) return slots[i] - 1;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Adds a new (id, data) pair to the palette, with a count of zero.
+	 * If the palette is full, unused entries are reclaimed first,
+	 * and only if there are none is the bit width increased.
+	 * @return the palette index of the new entry.
+	 */
+	private int addToPalette(int id, int data) {
+		
+		if(paletteSize == 1L << bits) {
+			if(used < paletteSize) compact();
+			else repack(bits << 1, null);
+		}
+		
+		if(paletteSize == ids.length) {
+			int capacity = (int) Math.min(ids.length * 2L, 1L << bits);
+			ids = Arrays.copyOf(ids, capacity);
+			this.data = Arrays.copyOf(this.data, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+		
+		int p = paletteSize++;
+		ids[p] = id;
+		this.data[p] = data;
+		counts[p] = 0;
+		
+		//Keep the hash table at most half full.
+		if(paletteSize * 2 > keys.length) rehash(keys.length * 2);
+		else insert(key(id, data), p);
+		
+		return p;
+	}
+	
+	/**
+	 * Removes every palette entry with a count of zero, renumbering those remaining.
+	 */
+	private void compact() {
+		
+		int[] remap = new int[paletteSize];
+		int n = 0;
+		
+		for(int p = 0; p < paletteSize; p++) {
+			
+			if(counts[p] > 0) {
+				ids[n] = ids[p];
+				data[n] = data[p];
+				counts[n] = counts[p];
+				remap[p] = n++;
+			}
+		}
+		paletteSize = n;
+		rehash(keys.length);
+		
+		repack(bits, remap);
+	}
+	
+	/**
+	 * Repacks every voxel using the given number of bits,
+	 * optionally renumbering palette indices as it goes.
+	 * @param newBits the new number of bits per voxel.
+	 * @param remap old to new palette indices, or null to leave them unchanged.
+	 */
+	private void repack(int newBits, int[] remap) {
+		
+		if(newBits > MAX_BITS)
+			throw new IllegalStateException("Palette exceeds " + MAX_BITS + " bits.");
+		
+		long[] oldWords = words;
+		int oldBits = bits, oldWordShift = wordShift,
+				oldIndexMask = indexMask, oldBitShift = bitShift;
+		long oldMask = mask;
+		
+		//Voxels are rewritten in place if the width is unchanged.
+		setBits(newBits);
+		if(newBits != oldBits) words = new long[wordCount(newBits)];
+		
+		for(int i = 0; i < volume; i++) {
+			int p = (int) ((oldWords[i >>> oldWordShift]
+					>>> ((i & oldIndexMask) << oldBitShift)) & oldMask);
+			setPaletteIndex(i, remap == null ? p : remap[p]);
+		}
+	}
+	
+	/**
+	 * Updates the derived shifts and masks for the given number of bits per voxel.
+	 */
+	private void setBits(int bits) {
+		
+		this.bits = bits;
+		bitShift = Integer.numberOfTrailingZeros(bits);
+		wordShift = 6 - bitShift;
+		indexMask = (1 << wordShift) - 1;
+		mask = (1L << bits) - 1;
+	}
+	
+	/**
+	 * Returns the number of words needed to store every voxel at the given width.
+	 */
+	private int wordCount(int bits) {
+		int perWord = 64 / bits;
+		return (volume + perWord - 1) / perWord;
+	}
+	
+	private void rehash(int capacity) {
+		
+		keys = new long[capacity];
+		slots = new int[capacity];
+		
+		for(int p = 0; p < paletteSize; p++) {
+			insert(key(ids[p], data[p]), p);
+		}
+	}
+	
+	private void insert(long key, int p) {
+		
+		int m = keys.length - 1;
+		int i = hash(key) & m;
+		while(slots[i] != 0) i = (i + 1) & m;
+		
+		keys[i] = key;
+		slots[i] = p + 1;
+	}
+	
+	private static long key(int id, int data) {
+		return ((long) id << 32) | (data & 0xFFFFFFFFL);
+	}
+	
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package engine.voxel.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Block storage for a chunk in which every voxel is the same, such as
+ * a chunk of only air or only stone. Only a single id and data value are kept.
+ * The first write of a different block promotes the chunk to a PaletteStorage.
+ * @author Alec
+ */
+public class UniformStorage extends BlockStorage {
+	
+	private final int id, data;
+	
+	/**
+	 * Constructs a new uniform storage.
+	 * @param volume the number of voxels to store.
+	 * @param id the block id of every voxel.
+	 * @param data the block data of every voxel.
+	 */
+	public UniformStorage(int volume, int id, int data) {
+		super(volume);
+		this.id = id;
+		this.data = data;
+	}
+	
+	@Override
+	public int getId(int index) { return id; }
+	
+	@Override
+	public int getData(int index) { return data; }
+	
+	@Override
+	public BlockStorage set(int index, int id, int data) {
+		
+		if(id == this.id && data == this.data) return this;
+		
+		//Promote to full storage on the first heterogeneous write.
+		return new PaletteStorage(volume, this.id, this.data).set(index, id, data);
+	}
+	
+	@Override
+	public BlockStorage fill(int from, int to, int id, int data) {
+		
+		if(from == to || (id == this.id && data == this.data)) return this;
+		if(from == 0 && to == volume) return new UniformStorage(volume, id, data);
+		
+		return new PaletteStorage(volume, this.id, this.data).fill(from, to, id, data);
+	}
+	
+	@Override
+	public boolean isFilled(int from, int to, int id, int data) {
+		return from == to || (id == this.id && data == this.data);
+	}
+	
+	@Override
+	public boolean isUniform() { return true; }
+	
+	/**
+	 * Uniform storages are never modified in place, so needn't be copied.
+	 */
+	@Override
+	public BlockStorage copy() { return this; }
+	
+	@Override
+	public void write(DataOutputStream dos) throws IOException {
+		dos.writeByte(UNIFORM);
+		dos.writeInt(id);
+		dos.writeInt(data);
+	}
+	
+	static UniformStorage decode(ByteBuffer buffer, int volume) {
+		int id = buffer.getInt();
+		return new UniformStorage(volume, id, buffer.getInt());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+package engine.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lwjgl.util.vector.Vector3f;
+
+import engine.World;
+import engine.model.Material;
+import engine.model.Model;
+import engine.util.math.AABB;
+import engine.util.math.Transform;
+
+/**
+ * Tests the spatial index against a brute-force search over every entity,
+ * including k-nearest queries which stop early or fall back to examining everything.
+ * @author Alec
+ */
+public class SpatialHashTest {
+	
+	private static final Model MODEL = new Model(null, Material.MATTE);
+	
+	private final World world = new World();
+	
+	private final SpatialHash hash = new SpatialHash(1.0F);
+	
+	private final List<Entity> entities = new ArrayList<>();
+	
+	@Test
+	public void nearestMatchesABruteForceSearch() {
+		
+		Random random = new Random(7);
+		for(int i = 0; i < 500; i++) {
+			add(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10);
+		}
+		
+		//Queries both inside and well outside the populated area, which take the fallback scan.
+		for(int q = 0; q < 200; q++) {
+			
+			float spread = q % 2 == 0 ? 24 : 200;
+			float x = (random.nextFloat() - 0.5F) * spread;
+			float y = (random.nextFloat() - 0.5F) * spread;
+			float z = (random.nextFloat() - 0.5F) * spread;
+			int k = 1 + random.nextInt(20);
+			
+			assertNearest(x, y, z, k);
+		}
+	}
+	
+	@Test
+	public void nearerEntitiesInNeighbouringCellsAreNotMissed() {
+		
+		//The first is in the same cell as the query, but the second is nearer.
+		Entity same = add(0.1F, 0.5F, 0.5F);
+		Entity neighbour = add(1.05F, 0.5F, 0.5F);
+		for(int i = 0; i < 100; i++) add(50 + i, 50, 50);
+		
+		List<Entity> nearest = hash.queryNearest(0.9F, 0.5F, 0.5F, 2, new ArrayList<>());
+		assertEquals(2, nearest.size());
+		assertSame(neighbour, nearest.get(0));
+		assertSame(same, nearest.get(1));
+	}
+	
+	@Test(timeout = 10000)
+	public void fewDistantEntitiesAreFoundWithoutSearchingEveryCell() {
+		
+		//Reaching these shell by shell would take billions of empty cells.
+		Entity far = add(3000, 0, 0), further = add(-4000, 0, 0), furthest = add(0, 0, 5000);
+		
+		List<Entity> nearest = hash.queryNearest(0, 0, 0, 5, new ArrayList<>());
+		assertEquals(3, nearest.size());
+		assertSame(far, nearest.get(0));
+		assertSame(further, nearest.get(1));
+		assertSame(furthest, nearest.get(2));
+	}
+	
+	@Test
+	public void movedEntitiesAreFoundAtTheirNewPosition() {
+		
+		Entity entity = add(0, 0, 0);
+		add(5, 5, 5);
+		
+		entity.getTransform().setPosition(new Vector3f(20, 0, 0));
+		hash.update(entity);
+		
+		assertTrue(hash.queryRadius(0, 0, 0, 2, new ArrayList<>()).isEmpty());
+		assertEquals(1, hash.queryRadius(20, 0, 0, 2, new ArrayList<>()).size());
+		assertSame(entity, hash.queryNearest(19, 0, 0, 1, new ArrayList<>()).get(0));
+		
+		hash.remove(entity);
+		hash.remove(entity);
+		assertEquals(1, hash.size());
+		assertTrue(hash.queryRadius(20, 0, 0, 2, new ArrayList<>()).isEmpty());
+	}
+	
+	@Test
+	public void radiusAndBoxQueriesMatchABruteForceSearch() {
+		
+		Random random = new Random(11);
+		for(int i = 0; i < 300; i++) {
+			add(random.nextFloat() * 10, random.nextFloat() * 10, random.nextFloat() * 10);
+		}
+		
+		for(int q = 0; q < 50; q++) {
+			
+			float x = random.nextFloat() * 10, y = random.nextFloat() * 10, z = random.nextFloat() * 10;
+			float r = random.nextFloat() * 3;
+			
+			int expected = 0;
+			for(Entity entity : entities) if(distanceSquared(entity, x, y, z) <= r * r) expected++;
+			assertEquals(expected, hash.queryRadius(x, y, z, r, new ArrayList<>()).size());
+			
+			//Entities overlap the box by their bounds, not just their centre.
+			AABB box = new AABB(x, y, z, x + r, y + r, z + r);
+			expected = 0;
+			for(Entity entity : entities) if(entity.getBounds().intersects(box)) expected++;
+			assertEquals(expected, hash.queryBox(box, new ArrayList<>()).size());
+		}
+	}
+	
+	private void assertNearest(float x, float y, float z, int k) {
+		
+		List<Entity> expected = new ArrayList<>(entities);
+		expected.sort(Comparator.comparingDouble(e -> distanceSquared(e, x, y, z)));
+		
+		List<Entity> nearest = hash.queryNearest(x, y, z, k, new ArrayList<>());
+		assertEquals(Math.min(k, entities.size()), nearest.size());
+		
+		//Compared by distance, in case of ties.
+		for(int i = 0; i < nearest.size(); i++) {
+			assertEquals(distanceSquared(expected.get(i), x, y, z), distanceSquared(nearest.get(i), x, y, z), 1e-4F);
+		}
+	}
+	
+	private Entity add(float x, float y, float z) {
+		
+		Entity entity = new Entity(world, MODEL, new Transform(new Vector3f(x, y, z))) {};
+		entity.setSize(0.5F, 0.5F, 0.5F);
+		
+		//The world indexes it too, so take it out of there to index it here instead.
+		world.getSpatialIndex().remove(entity);
+		hash.add(entity);
+		entities.add(entity);
+		return entity;
+	}
+	
+	private static float distanceSquared(Entity entity, float x, float y, float z) {
+		
+		AABB bounds = entity.getBounds();
+		float dx = bounds.getCentreX() - x, dy = bounds.getCentreY() - y, dz = bounds.getCentreZ() - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,196 @@
+package engine.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests delivery order, coalescing and failure handling of event queues.
+ * @author Alec
+ */
+public class EventQueueTest {
+	
+	/** Handlers registered by these tests, for removal afterwards. */
+	private final Object key = new Object();
+	
+	@After
+	public void tearDown() {
+		Event.removeHandlers(key);
+	}
+	
+	@Test
+	public void handlersRunWhenTheQueueIsDrained() {
+		
+		EventQueue queue = new EventQueue("test");
+		List<Integer> received = new ArrayList<>();
+		Event.addHandler(ValueEvent.class, queue, key, e -> received.add(e.VALUE));
+		
+		for(int i = 0; i < 10; i++) new ValueEvent(i);
+		assertTrue(received.isEmpty());
+		assertEquals(10, queue.size());
+		
+		assertEquals(10, queue.drain());
+		assertEquals(10, received.size());
+		for(int i = 0; i < 10; i++) assertEquals(i, (int) received.get(i));
+		assertEquals(0, queue.drain());
+	}
+	
+	@Test
+	public void coalescableEventsAreMergedWhileWaiting() {
+		
+		EventQueue queue = new EventQueue("test");
+		List<SumEvent> received = new ArrayList<>();
+		Event.addHandler(SumEvent.class, queue, key, received::add);
+		
+		for(int i = 1; i <= 1000; i++) new SumEvent(i);
+		assertEquals(1, queue.size());
+		
+		queue.drain();
+		assertEquals(1, received.size());
+		assertEquals(500500, received.get(0).TOTAL);
+		
+		//Events after a drain start a new merge.
+		new SumEvent(5);
+		queue.drain();
+		assertEquals(2, received.size());
+		assertEquals(5, received.get(1).TOTAL);
+	}
+	
+	@Test
+	public void aFailingHandlerDoesNotStopTheRest() {
+		
+		EventQueue queue = new EventQueue("test");
+		AtomicInteger delivered = new AtomicInteger();
+		
+		Event.addHandler(ValueEvent.class, queue, key, e -> {
+			if(e.VALUE == 0) throw new RuntimeException("Expected by the test.");
+			delivered.incrementAndGet();
+		});
+		
+		new ValueEvent(0);
+		new ValueEvent(1);
+		new ValueEvent(2);
+		
+		assertEquals(3, queue.drain());
+		assertEquals(2, delivered.get());
+	}
+	
+	@Test
+	public void workerQueueIsRescheduledAfterAFailure() throws Exception {
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			EventQueue queue = new EventQueue("test", executor);
+			CountDownLatch latch = new CountDownLatch(1);
+			
+			Event.addHandler(ValueEvent.class, queue, key, e -> {
+				if(e.VALUE == 0) throw new RuntimeException("Expected by the test.");
+				latch.countDown();
+			});
+			
+			//Wait for the failed drain to finish before adding another event.
+			new ValueEvent(0);
+			executor.submit(() -> {}).get();
+			
+			new ValueEvent(1);
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void concurrentProducersKeepTheirOrder() throws InterruptedException {
+		
+		//Much smaller than the number of events, so producers must wait for the drain.
+		EventQueue queue = new EventQueue("test", 64, null);
+		int producers = 4, events = 20000;
+		
+		int[] last = new int[producers];
+		for(int p = 0; p < producers; p++) last[p] = -1;
+		AtomicInteger errors = new AtomicInteger();
+		
+		Event.addHandler(ValueEvent.class, queue, key, e -> {
+			int producer = e.VALUE / events, sequence = e.VALUE % events;
+			if(sequence != last[producer] + 1) errors.incrementAndGet();
+			last[producer] = sequence;
+		});
+		
+		List<Thread> threads = new ArrayList<>();
+		for(int p = 0; p < producers; p++) {
+			int producer = p;
+			Thread thread = new Thread(() -> {
+				for(int i = 0; i < events; i++) new ValueEvent(producer * events + i);
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		int delivered = 0;
+		while(delivered < producers * events) delivered += queue.drain();
+		for(Thread thread : threads) thread.join();
+		
+		assertEquals(producers * events, delivered);
+		assertEquals(0, errors.get());
+		for(int p = 0; p < producers; p++) assertEquals(events - 1, last[p]);
+	}
+	
+	@Test(timeout = 10000)
+	public void theOwnerOfAFullQueueDrainsItInsteadOfWaiting() {
+		
+		EventQueue queue = new EventQueue("test", 4, null);
+		List<Integer> received = new ArrayList<>();
+		Event.addHandler(ValueEvent.class, queue, key, e -> received.add(e.VALUE));
+		
+		//Once this thread has drained the queue, nothing else will, so it mustn't wait for itself.
+		queue.drain();
+		for(int i = 0; i < 10; i++) new ValueEvent(i);
+		
+		assertEquals(8, received.size());
+		assertEquals(2, queue.drain());
+		for(int i = 0; i < 10; i++) assertEquals(i, (int) received.get(i));
+	}
+	
+	static class ValueEvent extends Event {
+		
+		final int VALUE;
+		
+		ValueEvent(int value) {
+			VALUE = value;
+			trigger();
+		}
+	}
+	
+	static class SumEvent extends Event {
+		
+		final int TOTAL;
+		
+		SumEvent(int total) {
+			this(total, true);
+		}
+		
+		private SumEvent(int total, boolean trigger) {
+			TOTAL = total;
+			if(trigger) trigger();
+		}
+		
+		@Override
+		protected boolean isCoalescable() { return true; }
+		
+		@Override
+		protected Event coalesce(Event later) {
+			return new SumEvent(TOTAL + ((SumEvent) later).TOTAL, false);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package engine.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import engine.event.EventMetrics.Histogram;
+
+/**
+ * Tests the bucketing and percentiles of the latency histogram used by EventMetrics.
+ * @author Alec
+ */
+public class HistogramTest {
+	
+	@Test
+	public void emptyHistogramReportsZero() {
+		assertEquals(0, new Histogram().percentile(0.5));
+	}
+	
+	@Test
+	public void smallValuesAreExact() {
+		
+		Histogram histogram = new Histogram();
+		for(int v = 0; v < 32; v++) histogram.record(v);
+		
+		assertEquals(0, histogram.percentile(0));
+		assertEquals(15, histogram.percentile(0.5));
+		assertEquals(31, histogram.percentile(1));
+	}
+	
+	@Test
+	public void percentilesAreWithinTheBucketError() {
+		
+		Random random = new Random(4);
+		long[] values = new long[100000];
+		Histogram histogram = new Histogram();
+		
+		for(int i = 0; i < values.length; i++) {
+			
+			//Spread across many orders of magnitude, as latencies are.
+			values[i] = (long) Math.exp(random.nextDouble() * 30);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+		
+		for(double fraction : new double[] {0.01, 0.5, 0.9, 0.99, 1}) {
+			
+			long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+			long reported = histogram.percentile(fraction);
+			
+			//An upper bound, no more than one sub-bucket (1/16 of the value) too high.
+			assertTrue(reported >= exact);
+			assertTrue(reported <= exact + exact / 16 + 1);
+		}
+	}
+	
+	@Test
+	public void negativeAndHugeValuesAreRecorded() {
+		
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		
+		assertEquals(0, histogram.percentile(0.5));
+		assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package engine.event.input;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import engine.event.Event;
+import engine.event.EventQueue;
+import engine.event.input.InputEvent.MouseEvent.MouseMoveEvent;
+
+/**
+ * Tests that pooled mouse movements are merged correctly while they wait in a queue.
+ * @author Alec
+ */
+public class MouseMoveEventTest {
+	
+	/** Handlers registered by these tests, for removal afterwards. */
+	private final Object key = new Object();
+	
+	@After
+	public void tearDown() {
+		Event.removeHandlers(key);
+	}
+	
+	@Test
+	public void waitingMovementsAreSummedWithTheLatestPosition() {
+		
+		EventQueue queue = new EventQueue("test");
+		List<int[]> received = new ArrayList<>();
+		Event.addHandler(MouseMoveEvent.class, queue, key, e -> received.add(
+				new int[] {e.getMouseDX(), e.getMouseDY(), e.getMouseX(), e.getMouseY()}));
+		
+		//Pooled events are recycled between rounds, so stale deltas would show up here.
+		for(int round = 1; round <= 3; round++) {
+			
+			for(int i = 1; i <= 100; i++) MouseMoveEvent.fire(round, -i, i, round);
+			assertEquals(1, queue.size());
+			queue.drain();
+			
+			assertEquals(round, received.size());
+			assertEquals(100 * round, received.get(round - 1)[0]);
+			assertEquals(-5050, received.get(round - 1)[1]);
+			assertEquals(100, received.get(round - 1)[2]);
+			assertEquals(round, received.get(round - 1)[3]);
+		}
+	}
+	
+	@Test
+	public void eachHandlerSeesEveryMovement() {
+		
+		EventQueue first = new EventQueue("first"), second = new EventQueue("second");
+		int[] firstTotal = new int[1], secondTotal = new int[1];
+		Event.addHandler(MouseMoveEvent.class, first, key, e -> firstTotal[0] += e.getMouseDX());
+		Event.addHandler(MouseMoveEvent.class, second, key, e -> secondTotal[0] += e.getMouseDX());
+		
+		//The same event waits for both handlers, so merging into it would count movements twice.
+		for(int i = 1; i <= 10; i++) {
+			MouseMoveEvent.fire(i, 0, 0, 0);
+			if(i % 3 == 0) first.drain();
+		}
+		first.drain();
+		second.drain();
+		
+		assertEquals(55, firstTotal[0]);
+		assertEquals(55, secondTotal[0]);
+	}
+}
\ No newline at end of file
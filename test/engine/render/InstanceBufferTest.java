@@ -0,0 +1,99 @@
+package engine.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.lwjgl.util.vector.Vector3f;
+
+import engine.model.Material;
+import engine.util.Colour;
+import engine.util.math.Transform;
+
+/**
+ * Tests the layout of packed instance data, and that it survives the buffer growing.
+ * @author Alec
+ */
+public class InstanceBufferTest {
+	
+	private static final float EPSILON = 1e-5F;
+	
+	private static final Material MATERIAL = Material.SHINE.withColour(Colour.rgba(255, 0, 51, 102));
+	
+	@Test
+	public void offsetsMatchTheLayout() {
+		
+		assertEquals(24, InstanceBuffer.FLOATS_PER_INSTANCE);
+		assertEquals(96, InstanceBuffer.STRIDE);
+		assertEquals(64, InstanceBuffer.COLOUR_OFFSET);
+		assertEquals(80, InstanceBuffer.LIGHT_OFFSET);
+	}
+	
+	@Test
+	public void instancesArePackedInOrder() {
+		
+		InstanceBuffer buffer = new InstanceBuffer();
+		buffer.add(new Transform(new Vector3f(1, 2, 3)), Material.MATTE);
+		buffer.add(new Transform(new Vector3f(4, 5, 6)), MATERIAL);
+		
+		assertEquals(2, buffer.size());
+		assertEquals(2 * InstanceBuffer.FLOATS_PER_INSTANCE, buffer.getLength());
+		
+		float[] data = buffer.getData();
+		int second = InstanceBuffer.FLOATS_PER_INSTANCE;
+		
+		//The model matrix is column-major, so the translation is in the last column.
+		assertEquals(1, data[0], EPSILON);
+		assertEquals(1, data[12], EPSILON);
+		assertEquals(2, data[13], EPSILON);
+		assertEquals(3, data[14], EPSILON);
+		assertEquals(1, data[15], EPSILON);
+		assertEquals(4, data[second + 12], EPSILON);
+		assertEquals(6, data[second + 14], EPSILON);
+		
+		int colour = second + InstanceBuffer.COLOUR_OFFSET / 4;
+		assertEquals(1.0F, data[colour], EPSILON);
+		assertEquals(0.0F, data[colour + 1], EPSILON);
+		assertEquals(0.2F, data[colour + 2], EPSILON);
+		assertEquals(0.4F, data[colour + 3], EPSILON);
+		
+		int light = second + InstanceBuffer.LIGHT_OFFSET / 4;
+		assertEquals(0.3F, data[light], EPSILON);
+		assertEquals(1.0F, data[light + 1], EPSILON);
+		assertEquals(0.6F, data[light + 2], EPSILON);
+		assertEquals(64, data[light + 3], EPSILON);
+	}
+	
+	@Test
+	public void growingKeepsEarlierInstances() {
+		
+		InstanceBuffer buffer = new InstanceBuffer(1);
+		for(int i = 0; i < 100; i++) buffer.add(new Transform(new Vector3f(i, 0, 0)), MATERIAL);
+		
+		assertEquals(100, buffer.size());
+		assertTrue(buffer.getData().length >= buffer.getLength());
+		for(int i = 0; i < 100; i++) {
+			assertEquals(i, buffer.getData()[i * InstanceBuffer.FLOATS_PER_INSTANCE + 12], EPSILON);
+		}
+	}
+	
+	@Test
+	public void clearingKeepsTheSpace() {
+		
+		InstanceBuffer buffer = new InstanceBuffer(2);
+		buffer.add(new Transform(), MATERIAL);
+		buffer.add(new Transform(), MATERIAL);
+		float[] data = buffer.getData();
+		
+		buffer.clear();
+		assertTrue(buffer.isEmpty());
+		assertEquals(0, buffer.getLength());
+		
+		//Refilling to the same size needs no more space.
+		buffer.add(new Transform(new Vector3f(7, 0, 0)), MATERIAL);
+		buffer.add(new Transform(), MATERIAL);
+		assertSame(data, buffer.getData());
+		assertEquals(7, data[12], EPSILON);
+	}
+}
\ No newline at end of file
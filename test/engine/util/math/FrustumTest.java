@@ -0,0 +1,94 @@
+package engine.util.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * Tests extraction of the frustum planes from a known projection, and culling against them.
+ * The projection has a 90 degree field of view, so the side planes are at 45 degrees,
+ * and looks down the negative z axis, from 1 to 100 units away.
+ * @author Alec
+ */
+public class FrustumTest {
+	
+	private static final float NEAR = 1, FAR = 100, EPSILON = 1e-3F;
+	
+	private static final float ROOT_2 = (float) Math.sqrt(2);
+	
+	private final Matrix4f projection = Matrix.projection(90, 1, NEAR, FAR);
+	
+	private final Frustum frustum = new Frustum().set(projection, new Matrix4f());
+	
+	@Test
+	public void planesAreExtractedAndNormalised() {
+		
+		assertEquals(0, frustum.distance(Frustum.NEAR, 0, 0, -NEAR), EPSILON);
+		assertEquals(2, frustum.distance(Frustum.NEAR, 0, 0, -3), EPSILON);
+		assertEquals(60, frustum.distance(Frustum.FAR, 0, 0, -40), EPSILON);
+		assertEquals(-5, frustum.distance(Frustum.FAR, 0, 0, -105), EPSILON);
+		
+		//Points on the edge of the view are on the plane; points in the middle are inside it.
+		assertEquals(0, frustum.distance(Frustum.LEFT, -10, 0, -10), EPSILON);
+		assertEquals(0, frustum.distance(Frustum.RIGHT, 10, 0, -10), EPSILON);
+		assertEquals(0, frustum.distance(Frustum.BOTTOM, 0, -10, -10), EPSILON);
+		assertEquals(0, frustum.distance(Frustum.TOP, 0, 10, -10), EPSILON);
+		assertEquals(10 / ROOT_2, frustum.distance(Frustum.LEFT, 0, 0, -10), EPSILON);
+		assertEquals(-10 / ROOT_2, frustum.distance(Frustum.TOP, 0, 20, -10), EPSILON);
+	}
+	
+	@Test
+	public void pointsAreOnlyContainedInsideTheView() {
+		
+		assertTrue(frustum.contains(0, 0, -50));
+		assertTrue(frustum.contains(9, -9, -10));
+		assertFalse(frustum.contains(0, 0, 5));
+		assertFalse(frustum.contains(0, 0, -0.5F));
+		assertFalse(frustum.contains(0, 0, -101));
+		assertFalse(frustum.contains(11, 0, -10));
+	}
+	
+	@Test
+	public void spheresAreCulledOnlyWhenEntirelyOutside() {
+		
+		assertTrue(frustum.intersectsSphere(0, 0, -10, 1));
+		
+		//Behind the camera.
+		assertFalse(frustum.intersectsSphere(0, 0, 5, 1));
+		assertTrue(frustum.intersectsSphere(0, 0, 5, 10));
+		
+		//To the left, 10 / sqrt(2) (about 7.07) from the plane.
+		assertFalse(frustum.intersectsSphere(-20, 0, -10, 7));
+		assertTrue(frustum.intersectsSphere(-20, 0, -10, 7.2F));
+		
+		//Beyond the far plane.
+		assertFalse(frustum.intersectsSphere(0, 0, -105, 4));
+		assertTrue(frustum.intersectsSphere(0, 0, -105, 6));
+	}
+	
+	@Test
+	public void boxesAreCulledOnlyWhenEntirelyOutside() {
+		
+		assertTrue(frustum.intersectsBox(-1, -1, -11, 1, 1, -9));
+		assertTrue(frustum.intersectsBox(-50, -50, -200, 50, 50, 200));
+		assertFalse(frustum.intersectsBox(-1, -1, 2, 1, 1, 4));
+		assertFalse(frustum.intersectsBox(-30, -1, -11, -12, 1, -9));
+		assertTrue(frustum.intersects(new AABB(-30, -1, -11, -8, 1, -9)));
+	}
+	
+	@Test
+	public void theViewMovesTheFrustum() {
+		
+		//The view matrix moves the world the opposite way to the camera.
+		Matrix4f view = new Matrix4f();
+		view.m30 = -50;
+		frustum.set(projection, view);
+		
+		assertTrue(frustum.intersectsSphere(50, 0, -10, 1));
+		assertFalse(frustum.intersectsSphere(0, 0, -10, 1));
+		assertEquals(0, frustum.distance(Frustum.LEFT, 40, 0, -10), EPSILON);
+	}
+}
\ No newline at end of file
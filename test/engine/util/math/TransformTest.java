@@ -0,0 +1,179 @@
+package engine.util.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * Tests the transformation hierarchy, and the propagation of changes to cached world matrices.
+ * @author Alec
+ */
+public class TransformTest {
+	
+	private static final float EPSILON = 1e-5F;
+	
+	@Test
+	public void childrenFollowTheirParents() {
+		
+		Transform parent = new Transform(new Vector3f(1, 0, 0));
+		Transform child = new Transform(new Vector3f(0, 2, 0));
+		Transform grandchild = new Transform(new Vector3f(0, 0, 3));
+		child.setParent(parent);
+		grandchild.setParent(child);
+		
+		assertPosition(1, 2, 3, grandchild);
+		
+		//A change anywhere above is seen below, however many levels down.
+		parent.Translate(new Vector3f(10, 0, 0));
+		assertPosition(11, 2, 3, grandchild);
+		assertPosition(11, 2, 0, child);
+		
+		child.setPosition(new Vector3f(0, 5, 0));
+		assertPosition(11, 5, 3, grandchild);
+		assertPosition(11, 0, 0, parent);
+		
+		//Rotating the parent carries the children round with it.
+		parent.setPosition(new Vector3f(0, 0, 0));
+		parent.rotate(90, new Vector3f(0, 0, 1));
+		assertPosition(-5, 0, 3, grandchild);
+	}
+	
+	@Test
+	public void reparentingMovesTheWorldTransformation() {
+		
+		Transform a = new Transform(new Vector3f(1, 0, 0));
+		Transform b = new Transform(new Vector3f(0, 1, 0));
+		Transform child = new Transform(new Vector3f(0, 0, 1));
+		
+		child.setParent(a);
+		assertPosition(1, 0, 1, child);
+		
+		child.setParent(b);
+		assertPosition(0, 1, 1, child);
+		assertEquals(Arrays.asList(child), b.getChildren());
+		assertTrue(a.getChildren().isEmpty());
+		
+		child.setParent(null);
+		assertPosition(0, 0, 1, child);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void cyclesAreRejected() {
+		
+		Transform a = new Transform(), b = new Transform();
+		b.setParent(a);
+		a.setParent(b);
+	}
+	
+	@Test
+	public void worldMatrixIsOnlyRecomputedAfterAChange() {
+		
+		Transform parent = new Transform();
+		Transform child = new Transform();
+		child.setParent(parent);
+		
+		int version = child.getWorldVersion();
+		assertEquals(version, child.getWorldVersion());
+		child.getWorldPosition(new Vector3f());
+		assertEquals(version, child.getWorldVersion());
+		
+		parent.translate(new Vector3f(1, 0, 0));
+		assertNotEquals(version, child.getWorldVersion());
+	}
+	
+	@Test
+	public void updateAllOnlyVisitsChangedSubtrees() {
+		
+		Transform moved = new Transform(), still = new Transform();
+		Transform movedChild = new Transform(), stillChild = new Transform();
+		movedChild.setParent(moved);
+		stillChild.setParent(still);
+		
+		Transform.updateAll(Arrays.asList(moved, still, movedChild, stillChild));
+		int movedVersion = movedChild.getWorldVersion(), stillVersion = stillChild.getWorldVersion();
+		
+		moved.translate(new Vector3f(0, 0, 4));
+		Transform.updateAll(Arrays.asList(moved, still, movedChild, stillChild));
+		
+		assertNotEquals(movedVersion, movedChild.getWorldVersion());
+		assertEquals(stillVersion, stillChild.getWorldVersion());
+		assertPosition(0, 0, 4, movedChild);
+	}
+	
+	@Test
+	public void storeWritesTheWorldMatrixInColumnMajorOrder() {
+		
+		Transform parent = new Transform(new Vector3f(1, 2, 3));
+		Transform child = new Transform(new Vector3f(1, 1, 1));
+		child.setParent(parent);
+		
+		float[] stored = new float[20];
+		child.store(stored, 4);
+		assertEquals(2, stored[4 + 12], EPSILON);
+		assertEquals(3, stored[4 + 13], EPSILON);
+		assertEquals(4, stored[4 + 14], EPSILON);
+		assertEquals(1, stored[4 + 15], EPSILON);
+		assertEquals(0, stored[0], 0);
+	}
+	
+	@Test
+	public void worldMatricesAreNeverTornOrLeftStale() throws InterruptedException {
+		
+		Transform parent = new Transform();
+		Transform child = new Transform();
+		Transform grandchild = new Transform();
+		child.setParent(parent);
+		grandchild.setParent(child);
+		
+		//The parent is only ever at (n, n, n), so any other position was read half written.
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicInteger bad = new AtomicInteger();
+		Thread[] readers = new Thread[3];
+		
+		for(int i = 0; i < readers.length; i++) {
+			
+			readers[i] = new Thread(() -> {
+				
+				Vector3f position = new Vector3f();
+				Matrix4f matrix = new Matrix4f();
+				while(running.get()) {
+					
+					grandchild.getWorldPosition(position);
+					if(position.x != position.y || position.y != position.z) bad.incrementAndGet();
+					
+					child.getWorldMatrix(matrix);
+					if(matrix.m30 != matrix.m31 || matrix.m31 != matrix.m32) bad.incrementAndGet();
+				}
+			});
+			readers[i].start();
+		}
+		
+		Matrix4f matrix = new Matrix4f();
+		for(int n = 1; n <= 20000; n++) {
+			matrix.setIdentity();
+			matrix.m30 = matrix.m31 = matrix.m32 = n;
+			parent.loadMatrix(matrix);
+		}
+		running.set(false);
+		for(Thread reader : readers) reader.join();
+		
+		assertEquals(0, bad.get());
+		assertPosition(20000, 20000, 20000, grandchild);
+	}
+	
+	private static void assertPosition(float x, float y, float z, Transform transform) {
+		
+		Vector3f position = transform.getWorldPosition(new Vector3f());
+		assertEquals(x, position.x, EPSILON);
+		assertEquals(y, position.y, EPSILON);
+		assertEquals(z, position.z, EPSILON);
+	}
+}
\ No newline at end of file
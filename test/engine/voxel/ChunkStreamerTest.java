@@ -0,0 +1,150 @@
+package engine.voxel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests background loading and saving of chunks, and tracking of unsaved changes.
+ * @author Alec
+ */
+public class ChunkStreamerTest {
+	
+	private VoxelGrid grid;
+	
+	private ChunkStreamer streamer;
+	
+	@Before
+	public void setUp() throws InterruptedException {
+		
+		grid = new VoxelGrid("streamer-test-" + System.nanoTime(), 16, 0, 0, 0, 0);
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		while(grid.getChunk(0, 0, 0) == null) {
+			if(System.currentTimeMillis() > deadline) fail("The chunk took too long to load.");
+			Thread.sleep(5);
+			grid.update();
+		}
+		streamer = new ChunkStreamer(grid, 1);
+	}
+	
+	@After
+	public void tearDown() {
+		
+		streamer.shutdown();
+		File directory = grid.getRegions().getDirectory();
+		grid.close();
+		
+		File[] files = directory.listFiles();
+		if(files != null) for(File file : files) file.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void cancelledLoadIsReplacedWhenRequestedAgain() throws Exception {
+		
+		CompletableFuture<Chunk> first, second;
+		
+		//Hold up the I/O thread inside the first load, so that it is cancelled while running.
+		synchronized(grid.getRegions()) {
+			
+			first = streamer.load(5, 5, 5, 0);
+			awaitBlockedIoThread();
+			
+			streamer.cancelOutside(0, 0, 0, 0);
+			assertTrue(first.isCancelled());
+			
+			second = streamer.load(5, 5, 5, 0);
+			assertNotSame(first, second);
+			assertFalse(second.isCancelled());
+		}
+		
+		Chunk chunk = second.get(10, TimeUnit.SECONDS);
+		assertEquals(5, chunk.getX());
+		
+		//The chunk must still be delivered to the grid, or it would never be installed.
+		long deadline = System.currentTimeMillis() + 10000;
+		Chunk polled;
+		while((polled = streamer.poll()) == null) {
+			if(System.currentTimeMillis() > deadline) fail("The reloaded chunk was never delivered.");
+			Thread.sleep(5);
+		}
+		assertSame(chunk, polled);
+		assertEquals(null, streamer.poll());
+		assertEquals(0, streamer.getPendingLoads());
+	}
+	
+	@Test
+	public void savedChunksAreLoadedAgain() throws Exception {
+		
+		Chunk chunk = grid.getChunk(0, 0, 0);
+		chunk.setBlock(1, 2, 3, 7, 1);
+		assertTrue(chunk.isDirty());
+		
+		streamer.save(chunk);
+		Chunk loaded = streamer.load(0, 0, 0, 0).get(10, TimeUnit.SECONDS);
+		assertEquals(7, loaded.getBlockId(1, 2, 3));
+		assertEquals(1, loaded.getBlockData(1, 2, 3));
+		
+		//Once written, the chunk is no longer dirty, and is read back from the file.
+		streamer.shutdown();
+		assertFalse(chunk.isDirty());
+		
+		Chunk reread = new Chunk(grid, 16, 0, 0, 0);
+		assertTrue(reread.load());
+		assertEquals(7, reread.getBlockId(1, 2, 3));
+		assertFalse(reread.isDirty());
+	}
+	
+	@Test
+	public void savingAnOldSnapshotLeavesLaterChangesDirty() {
+		
+		Chunk chunk = grid.getChunk(0, 0, 0);
+		assertFalse(chunk.isDirty());
+		
+		chunk.setBlock(0, 0, 0, 1, 0);
+		Chunk snapshot = chunk.snapshot();
+		chunk.setBlock(0, 0, 1, 1, 0);
+		
+		chunk.markSaved(snapshot.getVersion());
+		assertTrue(chunk.isDirty());
+		
+		chunk.markSaved(chunk.getVersion());
+		assertFalse(chunk.isDirty());
+		
+		//A save which finishes late never undoes a newer one.
+		chunk.markSaved(snapshot.getVersion());
+		assertFalse(chunk.isDirty());
+		
+		chunk.setBlock(0, 0, 0, 2, 0);
+		assertTrue(chunk.isDirty());
+	}
+	
+	/**
+	 * Waits until an I/O thread is blocked on a lock, such as the region store.
+	 */
+	private static void awaitBlockedIoThread() throws InterruptedException {
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		while(true) {
+			
+			for(Thread thread : Thread.getAllStackTraces().keySet()) {
+				if(thread.getName().startsWith("chunk-io-")
+						&& thread.getState() == Thread.State.BLOCKED) return;
+			}
+			if(System.currentTimeMillis() > deadline) fail("The load never started.");
+			Thread.sleep(1);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,150 @@
+package engine.voxel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import engine.event.Event;
+import engine.voxel.VoxelGrid.ChunkEditEvent;
+
+/**
+ * Tests that batched edits change the right blocks, and that chunks are only
+ * marked for saving and reported as edited if a block in them actually changed.
+ * @author Alec
+ */
+public class EditBatchTest {
+	
+	private static final int CHUNK_SIZE = 16, RADIUS = 1;
+	
+	private VoxelGrid grid;
+	
+	private final List<ChunkEditEvent> events = new ArrayList<>();
+	
+	@Before
+	public void setUp() throws InterruptedException {
+		
+		grid = new VoxelGrid("edit-test-" + System.nanoTime(), CHUNK_SIZE, RADIUS, 0, 0, 0);
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		while(!loaded()) {
+			if(System.currentTimeMillis() > deadline) fail("Chunks took too long to load.");
+			Thread.sleep(5);
+			grid.update();
+		}
+		Event.addHandler(ChunkEditEvent.class, this, e -> {
+			if(e.GRID == grid) events.add(e);
+		});
+	}
+	
+	@After
+	public void tearDown() {
+		
+		Event.removeHandlers(this);
+		File directory = grid.getRegions().getDirectory();
+		grid.close();
+		
+		File[] files = directory.listFiles();
+		if(files != null) for(File file : files) file.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void boxFillSetsEveryBlockAcrossChunks() {
+		
+		assertEquals(8, grid.edit().fillBox(-3, -3, -3, 3, 3, 3, 2, 1).apply());
+		assertEquals(8, events.size());
+		
+		for(int x = -4; x <= 4; x++) {
+			for(int y = -4; y <= 4; y++) {
+				for(int z = -4; z <= 4; z++) {
+					
+					boolean inside = Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z))) <= 3;
+					assertEquals(inside ? 2 : 0, grid.getBlockId(x, y, z));
+					assertEquals(inside ? 1 : 0, grid.getBlockData(x, y, z));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void fillWithTheBlockAlreadyPresentChangesNothing() {
+		
+		assertEquals(0, grid.edit().fillBox(-20, -20, -20, 20, 20, 20, 0, 0).apply());
+		assertTrue(events.isEmpty());
+		assertNoneDirty();
+		
+		grid.edit().fillBox(0, 0, 0, 5, 5, 5, 3, 0).apply();
+		events.clear();
+		
+		assertEquals(0, grid.edit().fillBox(0, 0, 0, 5, 5, 5, 3, 0).set(2, 2, 2, 3, 0).apply());
+		assertTrue(events.isEmpty());
+	}
+	
+	@Test
+	public void sphereOnlyReportsTheChunksItChanges() {
+		
+		//The sphere's bounding box reaches 8 chunks, but the sphere itself only 4.
+		assertEquals(4, grid.edit().fillSphere(15, 15, 15, 1, 1, 0).apply());
+		assertEquals(4, events.size());
+		
+		assertTrue(grid.getChunk(0, 0, 0).isDirty());
+		assertTrue(grid.getChunk(1, 0, 0).isDirty());
+		assertTrue(grid.getChunk(0, 1, 0).isDirty());
+		assertTrue(grid.getChunk(0, 0, 1).isDirty());
+		assertFalse(grid.getChunk(1, 1, 0).isDirty());
+		assertFalse(grid.getChunk(1, 1, 1).isDirty());
+		
+		assertEquals(1, grid.getBlockId(16, 15, 15));
+		assertEquals(0, grid.getBlockId(16, 16, 15));
+	}
+	
+	@Test
+	public void pasteOnlyReportsChunksItChanges() {
+		
+		VoxelClipboard clipboard = VoxelClipboard.copy(grid, 0, 0, 0, 3, 3, 3);
+		assertEquals(0, grid.edit().paste(clipboard, 14, 14, 14, false).apply());
+		assertTrue(events.isEmpty());
+		
+		grid.setBlock(1, 1, 1, 4, 0);
+		events.clear();
+		clipboard = VoxelClipboard.copy(grid, 0, 0, 0, 3, 3, 3);
+		
+		//Only the voxel copied from (1, 1, 1) differs, and it lands in chunk (1, 1, 1).
+		assertEquals(1, grid.edit().paste(clipboard, 15, 15, 15, true).apply());
+		assertEquals(1, events.size());
+		assertEquals(4, grid.getBlockId(16, 16, 16));
+		assertEquals(grid.getChunk(1, 1, 1), events.get(0).CHUNK);
+	}
+	
+	private void assertNoneDirty() {
+		
+		for(int x = -RADIUS; x <= RADIUS; x++) {
+			for(int y = -RADIUS; y <= RADIUS; y++) {
+				for(int z = -RADIUS; z <= RADIUS; z++) {
+					assertFalse(grid.getChunk(x, y, z).isDirty());
+				}
+			}
+		}
+	}
+	
+	private boolean loaded() {
+		
+		for(int x = -RADIUS; x <= RADIUS; x++) {
+			for(int y = -RADIUS; y <= RADIUS; y++) {
+				for(int z = -RADIUS; z <= RADIUS; z++) {
+					if(grid.getChunk(x, y, z) == null) return false;
+				}
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
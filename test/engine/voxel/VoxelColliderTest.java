@@ -0,0 +1,171 @@
+package engine.voxel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import engine.util.math.AABB;
+
+/**
+ * Tests that boxes are clipped against solid blocks however far they move in one step,
+ * slide along walls, step up onto low obstacles, and know when they are on the ground.
+ * @author Alec
+ */
+public class VoxelColliderTest {
+	
+	private static final int CHUNK_SIZE = 16, RADIUS = 1;
+	
+	private static final int STONE = 1, GRASS = 2;
+	
+	/** The collider keeps boxes a tiny distance from the blocks they touch. */
+	private static final float TOLERANCE = 1e-3F;
+	
+	private VoxelGrid grid;
+	
+	private VoxelCollider collider;
+	
+	private final AABB box = new AABB();
+	
+	@Before
+	public void setUp() throws InterruptedException {
+		
+		grid = new VoxelGrid("collider-test-" + System.nanoTime(), CHUNK_SIZE, RADIUS, 0, 0, 0);
+		
+		long deadline = System.currentTimeMillis() + 10000;
+		while(!loaded()) {
+			if(System.currentTimeMillis() > deadline) fail("Chunks took too long to load.");
+			Thread.sleep(5);
+			grid.update();
+		}
+		
+		grid.getBlocks().register(STONE, new Block() {});
+		grid.getBlocks().register(GRASS, new Block() {
+			@Override
+			public boolean isSolid() { return false; }
+		});
+		collider = new VoxelCollider(grid);
+		
+		//A floor whose top is at z = 0.5, and a box standing on it at the origin.
+		grid.edit().fillBox(-10, -10, 0, 20, 20, 0, STONE, 0).apply();
+		box.setCentred(0, 0, 5, 0.3F, 0.3F, 0.9F);
+		collider.move(box, 0, 0, -10, 0);
+	}
+	
+	@After
+	public void tearDown() {
+		
+		File directory = grid.getRegions().getDirectory();
+		grid.close();
+		
+		File[] files = directory.listFiles();
+		if(files != null) for(File file : files) file.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void fallingBoxesLandOnTheGround() {
+		
+		assertEquals(0.5F, box.getMinZ(), TOLERANCE);
+		assertEquals(-3.6F, collider.getMovedZ(), TOLERANCE);
+		assertTrue(collider.isOnGround());
+		
+		//Jumping leaves the ground.
+		assertEquals(0, collider.move(box, 0, 0, 1, 0));
+		assertFalse(collider.isOnGround());
+		assertEquals(1, collider.getMovedZ(), TOLERANCE);
+	}
+	
+	@Test
+	public void fastBoxesDoNotTunnelThroughThinWalls() {
+		
+		grid.edit().fillBox(5, -10, 1, 5, 10, 3, STONE, 0).apply();
+		
+		//Far further than the wall is thick, in a single step.
+		assertEquals(VoxelCollider.COLLIDED_X, collider.move(box, 20, 0, 0, 0));
+		assertEquals(4.5F, box.getMaxX(), TOLERANCE);
+		assertEquals(4.2F, collider.getMovedX(), TOLERANCE);
+		
+		assertEquals(VoxelCollider.COLLIDED_X, collider.move(box, 20, 0, 0, 0));
+		assertEquals(0, collider.getMovedX(), TOLERANCE);
+	}
+	
+	@Test
+	public void boxesSlideAlongWalls() {
+		
+		grid.edit().fillBox(5, -10, 1, 5, 10, 3, STONE, 0).apply();
+		
+		assertEquals(VoxelCollider.COLLIDED_X, collider.move(box, 20, 3, 0, 0));
+		assertEquals(4.5F, box.getMaxX(), TOLERANCE);
+		assertEquals(3, collider.getMovedY(), TOLERANCE);
+		assertTrue(collider.isOnGround());
+	}
+	
+	@Test
+	public void boxesStepUpOntoLowObstacles() {
+		
+		//A platform one block high, from x = 2.5 onwards.
+		grid.edit().fillBox(3, -10, 1, 20, 10, 1, STONE, 0).apply();
+		
+		assertEquals(0, collider.move(box, 4, 0, 0, 1.1F));
+		assertEquals(3.7F, box.getMinX(), TOLERANCE);
+		assertEquals(1.5F, box.getMinZ(), TOLERANCE);
+		assertEquals(1, collider.getMovedZ(), TOLERANCE);
+		assertTrue(collider.isOnGround());
+	}
+	
+	@Test
+	public void tallObstaclesAreNotSteppedOnto() {
+		
+		grid.edit().fillBox(3, -10, 1, 20, 10, 2, STONE, 0).apply();
+		
+		assertEquals(VoxelCollider.COLLIDED_X, collider.move(box, 4, 0, 0, 1.1F));
+		assertEquals(2.5F, box.getMaxX(), TOLERANCE);
+		assertEquals(0.5F, box.getMinZ(), TOLERANCE);
+		
+		//Nor is a low one without any step height.
+		grid.edit().fillBox(3, -10, 2, 20, 10, 2, 0, 0).apply();
+		assertEquals(VoxelCollider.COLLIDED_X, collider.move(box, 4, 0, 0, 0));
+		assertEquals(0.5F, box.getMinZ(), TOLERANCE);
+	}
+	
+	@Test
+	public void boxesInTheAirDoNotStep() {
+		
+		grid.edit().fillBox(3, -10, 1, 20, 10, 1, STONE, 0).apply();
+		collider.move(box, 0, 0, 0.2F, 0);
+		
+		assertEquals(VoxelCollider.COLLIDED_X, collider.move(box, 4, 0, 0, 1.1F));
+		assertEquals(2.5F, box.getMaxX(), TOLERANCE);
+		assertFalse(collider.isOnGround());
+	}
+	
+	@Test
+	public void onlySolidBlocksAndUnloadedChunksBlock() {
+		
+		grid.edit().fillBox(3, -10, 1, 3, 10, 2, GRASS, 0).apply();
+		
+		//The last loaded voxel is at x = 31, so everything beyond is solid.
+		assertEquals(VoxelCollider.COLLIDED_X, collider.move(box, 100, 0, 0, 0));
+		assertEquals(31.5F, box.getMaxX(), TOLERANCE);
+		assertFalse(collider.intersects(box));
+	}
+	
+	private boolean loaded() {
+		
+		for(int x = -RADIUS; x <= RADIUS; x++) {
+			for(int y = -RADIUS; y <= RADIUS; y++) {
+				for(int z = -RADIUS; z <= RADIUS; z++) {
+					if(grid.getChunk(x, y, z) == null) return false;
+				}
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,188 @@
+package engine.voxel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import engine.voxel.Block.Side;
+
+/**
+ * Tests voxel raycasting against a simple voxel-by-voxel traversal.
+ * @author Alec
+ */
+public class VoxelRaycasterTest {
+	
+	private static final int CHUNK_SIZE = 16, RADIUS = 2;
+	
+	private VoxelGrid grid;
+	
+	private VoxelRaycaster raycaster;
+	
+	private final RayHit hit = new RayHit();
+	
+	@Before
+	public void setUp() throws InterruptedException {
+		
+		grid = new VoxelGrid("raycaster-test-" + System.nanoTime(), CHUNK_SIZE, RADIUS, 0, 0, 0);
+		
+		//Wait for every chunk in the window to be loaded and installed.
+		int chunks = (2 * RADIUS + 1) * (2 * RADIUS + 1) * (2 * RADIUS + 1);
+		long deadline = System.currentTimeMillis() + 10000;
+		
+		while(loaded() < chunks) {
+			if(System.currentTimeMillis() > deadline) fail("Chunks took too long to load.");
+			Thread.sleep(5);
+			grid.update();
+		}
+		raycaster = new VoxelRaycaster(grid);
+	}
+	
+	@After
+	public void tearDown() {
+		
+		File directory = grid.getRegions().getDirectory();
+		grid.close();
+		
+		File[] files = directory.listFiles();
+		if(files != null) for(File file : files) file.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void rayHitsTheFirstBlockAlongIt() {
+		
+		grid.setBlock(5, 0, 0, 1, 0);
+		grid.setBlock(9, 0, 0, 2, 0);
+		
+		assertTrue(raycaster.cast(0, 0, 0, 1, 0, 0, 20, hit));
+		assertEquals(5, hit.getX());
+		assertEquals(1, hit.getBlockId());
+		assertEquals(BlockFace.sideOf(0, false), hit.getSide());
+		assertEquals(4.5F, hit.getDistance(), 1e-4F);
+		
+		assertFalse(raycaster.cast(0, 0, 0, 1, 0, 0, 4, hit));
+		assertFalse(raycaster.cast(0, 0, 0, -1, 0, 0, 20, hit));
+	}
+	
+	@Test
+	public void rayStartingInsideABlockHitsIt() {
+		
+		grid.setBlock(-3, 4, 2, 1, 0);
+		assertTrue(raycaster.cast(-3, 4, 2, 0, 0, 1, 10, hit));
+		assertEquals(null, hit.getSide());
+		assertEquals(0, hit.getDistance(), 0);
+	}
+	
+	@Test
+	public void unboundedRaysStopAtTheEdgeOfTheLoadedRegion() {
+		
+		//Nothing to hit, so these would otherwise never end.
+		assertFalse(raycaster.cast(0, 0, 0, 1, 0.3F, -0.2F, Float.POSITIVE_INFINITY, hit));
+		assertFalse(raycaster.cast(0, 0, 0, 0, 0, 1, Float.POSITIVE_INFINITY, hit));
+		assertFalse(raycaster.cast(1000, 0, 0, 1, 0, 0, Float.POSITIVE_INFINITY, hit));
+		
+		grid.setBlock(0, 0, 30, 1, 0);
+		assertTrue(raycaster.cast(0, 0, 0, 0, 0, 1, Float.POSITIVE_INFINITY, hit));
+		assertEquals(30, hit.getZ());
+	}
+	
+	@Test
+	public void rayFromOutsideTheLoadedRegionEntersIt() {
+		
+		grid.setBlock(-20, 0, 0, 1, 0);
+		assertTrue(raycaster.cast(-500, 0, 0, 1, 0, 0, Float.POSITIVE_INFINITY, hit));
+		assertEquals(-20, hit.getX());
+		assertEquals(479.5F, hit.getDistance(), 1e-2F);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void nanDistanceIsRejected() {
+		raycaster.cast(0, 0, 0, 1, 0, 0, Float.NaN, hit);
+	}
+	
+	@Test
+	public void matchesVoxelByVoxelTraversal() {
+		
+		Random random = new Random(5);
+		int extent = CHUNK_SIZE * RADIUS;
+		
+		EditBatch batch = grid.edit();
+		for(int i = 0; i < 80; i++) {
+			batch.set(random.nextInt(2 * extent) - extent, random.nextInt(2 * extent) - extent,
+					random.nextInt(2 * extent) - extent, 1, 0);
+		}
+		batch.apply();
+		
+		for(int i = 0; i < 2000; i++) {
+			
+			float ox = random.nextFloat() * 3 * extent - 1.5F * extent;
+			float oy = random.nextFloat() * 3 * extent - 1.5F * extent;
+			float oz = random.nextFloat() * 3 * extent - 1.5F * extent;
+			float dx = (float) random.nextGaussian(), dy = (float) random.nextGaussian(), dz = (float) random.nextGaussian();
+			float distance = random.nextBoolean() ? Float.POSITIVE_INFINITY : random.nextFloat() * 100;
+			
+			int[] expected = traverse(ox, oy, oz, dx, dy, dz, Math.min(distance, 1000));
+			boolean cast = raycaster.cast(ox, oy, oz, dx, dy, dz, distance, hit);
+			
+			assertEquals(expected != null, cast);
+			if(cast) {
+				assertEquals(expected[0], hit.getX());
+				assertEquals(expected[1], hit.getY());
+				assertEquals(expected[2], hit.getZ());
+			}
+		}
+	}
+	
+	/**
+	 * Steps through every voxel along the ray, without skipping chunks, returning the first hit.
+	 */
+	private int[] traverse(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+		
+		float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		float[] origin = {ox + 0.5F, oy + 0.5F, oz + 0.5F}, direction = {dx / length, dy / length, dz / length};
+		int[] voxel = new int[3], step = new int[3];
+		float[] tMax = new float[3], tDelta = new float[3];
+		
+		for(int a = 0; a < 3; a++) {
+			
+			voxel[a] = (int) Math.floor(origin[a]);
+			step[a] = direction[a] > 0 ? 1 : direction[a] < 0 ? -1 : 0;
+			tDelta[a] = step[a] == 0 ? Float.POSITIVE_INFINITY : step[a] / direction[a];
+			tMax[a] = step[a] == 0 ? Float.POSITIVE_INFINITY
+					: (voxel[a] + (step[a] > 0 ? 1 : 0) - origin[a]) / direction[a];
+		}
+		
+		float t = 0;
+		while(t <= maxDistance) {
+			
+			if(grid.getBlockId(voxel[0], voxel[1], voxel[2]) != 0) return voxel;
+			
+			int axis = tMax[0] < tMax[1] ? (tMax[0] < tMax[2] ? 0 : 2) : (tMax[1] < tMax[2] ? 1 : 2);
+			t = tMax[axis];
+			voxel[axis] += step[axis];
+			tMax[axis] += tDelta[axis];
+		}
+		return null;
+	}
+	
+	private int loaded() {
+		
+		int count = 0;
+		for(int x = -RADIUS; x <= RADIUS; x++) {
+			for(int y = -RADIUS; y <= RADIUS; y++) {
+				for(int z = -RADIUS; z <= RADIUS; z++) {
+					if(grid.getChunk(x, y, z) != null) count++;
+				}
+			}
+		}
+		return count;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,150 @@
+package engine.voxel.io;
+
+import static engine.voxel.io.RegionFile.HEADER_SECTORS;
+import static engine.voxel.io.RegionFile.SECTOR_SIZE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading, writing and sector reallocation of region files,
+ * and the limit on open region files in a RegionStore.
+ * @author Alec
+ */
+public class RegionFileTest {
+	
+	private File directory;
+	
+	private final Random random = new Random(3);
+	
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("region").toFile();
+	}
+	
+	@After
+	public void tearDown() {
+		
+		File[] files = directory.listFiles();
+		if(files != null) for(File file : files) file.delete();
+		directory.delete();
+	}
+	
+	@Test
+	public void payloadsRoundTrip() throws IOException {
+		
+		byte[] small = "chunk".getBytes();
+		byte[] compressible = new byte[20000];
+		Arrays.fill(compressible, (byte) 7);
+		byte[] incompressible = randomBytes(10000);
+		
+		try(RegionFile region = new RegionFile(new File(directory, "r.region"))) {
+			
+			assertFalse(region.contains(0));
+			assertNull(region.read(0));
+			
+			region.write(0, small);
+			region.write(1, compressible);
+			region.write(RegionFile.CHUNKS - 1, incompressible);
+			
+			assertTrue(region.contains(0));
+			assertArrayEquals(small, region.read(0));
+			assertArrayEquals(compressible, region.read(1));
+			assertArrayEquals(incompressible, region.read(RegionFile.CHUNKS - 1));
+		}
+	}
+	
+	@Test
+	public void payloadsPersistAcrossReopening() throws IOException {
+		
+		File file = new File(directory, "r.region");
+		byte[] payload = randomBytes(6000);
+		
+		try(RegionFile region = new RegionFile(file)) {
+			region.write(42, payload);
+			region.write(43, payload);
+			region.delete(43);
+		}
+		
+		try(RegionFile region = new RegionFile(file)) {
+			assertArrayEquals(payload, region.read(42));
+			assertNull(region.read(43));
+		}
+	}
+	
+	@Test
+	public void growingPayloadsMoveAndFreeTheirSectors() throws IOException {
+		
+		File file = new File(directory, "r.region");
+		
+		try(RegionFile region = new RegionFile(file)) {
+			
+			byte[] a = randomBytes(100), b = randomBytes(100);
+			region.write(0, a);
+			region.write(1, b);
+			assertEquals(HEADER_SECTORS + 2, sectors(file));
+			
+			//Too big for its single sector, so it moves to the end of the file.
+			byte[] grown = randomBytes(3 * SECTOR_SIZE - 100);
+			region.write(0, grown);
+			assertEquals(HEADER_SECTORS + 5, sectors(file));
+			
+			//The sector it left behind is reused.
+			region.write(2, randomBytes(100));
+			assertEquals(HEADER_SECTORS + 5, sectors(file));
+			
+			//Shrinking rewrites in place, freeing the excess sectors for later.
+			byte[] shrunk = randomBytes(100);
+			region.write(0, shrunk);
+			region.write(3, randomBytes(SECTOR_SIZE));
+			assertEquals(HEADER_SECTORS + 5, sectors(file));
+			
+			assertArrayEquals(shrunk, region.read(0));
+			assertArrayEquals(b, region.read(1));
+		}
+	}
+	
+	@Test
+	public void storeKeepsAFixedNumberOfRegionsOpen() throws IOException {
+		
+		try(RegionStore store = new RegionStore(directory, 2)) {
+			
+			//Chunks in ten different regions, including negative coordinates.
+			for(int i = 0; i < 10; i++) {
+				store.write(i * RegionFile.REGION_SIZE, -i * RegionFile.REGION_SIZE, 1, ("chunk" + i).getBytes());
+				assertTrue(store.getOpenCount() <= 2);
+			}
+			
+			for(int i = 9; i >= 0; i--) {
+				byte[] payload = store.read(i * RegionFile.REGION_SIZE, -i * RegionFile.REGION_SIZE, 1);
+				assertEquals("chunk" + i, new String(payload));
+			}
+			
+			assertNull(store.read(1000, 1000, 1000));
+			assertEquals(2, store.getOpenCount());
+		}
+	}
+	
+	private byte[] randomBytes(int length) {
+		
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+	
+	private static long sectors(File file) {
+		return (file.length() + SECTOR_SIZE - 1) / SECTOR_SIZE;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,169 @@
+package engine.voxel.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import engine.model.Texture;
+import engine.voxel.Block;
+import engine.voxel.Block.Side;
+import engine.voxel.BlockRegistry;
+
+/**
+ * Tests face culling, merging of faces into quads, and the winding of the triangles produced.
+ * @author Alec
+ */
+public class GreedyMesherTest {
+	
+	private static final int SIZE = 4;
+	
+	private static final Texture STONE = Texture.getTexture("mesher-test-stone.png");
+	private static final Texture DIRT = Texture.getTexture("mesher-test-dirt.png");
+	
+	private static final float EPSILON = 1e-5F;
+	
+	private final BlockRegistry blocks = new BlockRegistry();
+	
+	private final GreedyMesher mesher;
+	
+	public GreedyMesherTest() {
+		
+		blocks.register(1, new TestBlock(STONE, true));
+		blocks.register(2, new TestBlock(DIRT, true));
+		blocks.register(3, new TestBlock(STONE, false));
+		mesher = new GreedyMesher(blocks);
+	}
+	
+	@Test
+	public void emptyChunksHaveNoFaces() {
+		assertTrue(mesher.mesh(new ChunkSnapshot(0, 0, 0, SIZE)).isEmpty());
+	}
+	
+	@Test
+	public void aSingleBlockHasSixQuads() {
+		
+		ChunkSnapshot chunk = new ChunkSnapshot(0, 0, 0, SIZE);
+		chunk.set(1, 2, 3, 1, 0);
+		
+		MeshData batch = mesher.mesh(chunk).getBatches().get(STONE);
+		assertEquals(6 * 6, batch.getNumVertices());
+		assertWound(batch);
+		
+		//Each face lies half a voxel from the centre of the block.
+		float[] vertices = batch.getVertices();
+		for(int i = 0; i < batch.getNumVertices(); i++) {
+			assertEquals(0.5F, Math.abs(vertices[i * 3] - 1), EPSILON);
+			assertEquals(0.5F, Math.abs(vertices[i * 3 + 1] - 2), EPSILON);
+			assertEquals(0.5F, Math.abs(vertices[i * 3 + 2] - 3), EPSILON);
+		}
+	}
+	
+	@Test
+	public void coplanarFacesAreMergedIntoOneQuad() {
+		
+		//A slab covering the whole bottom layer needs just one quad per side.
+		ChunkSnapshot chunk = new ChunkSnapshot(0, 0, 0, SIZE);
+		for(int x = 0; x < SIZE; x++) {
+			for(int y = 0; y < SIZE; y++) chunk.set(x, y, 0, 1, 0);
+		}
+		
+		MeshData batch = mesher.mesh(chunk).getBatches().get(STONE);
+		assertEquals(6 * 6, batch.getNumVertices());
+		assertWound(batch);
+		
+		//The top quad spans the whole slab, and its texture repeats once per voxel.
+		int top = findQuad(batch, 0, 0, 1);
+		float[] vertices = batch.getVertices(), texCoords = batch.getTexCoords();
+		float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxU = 0, maxV = 0;
+		
+		for(int i = top; i < top + 6; i++) {
+			minX = Math.min(minX, vertices[i * 3]);
+			maxX = Math.max(maxX, vertices[i * 3]);
+			maxU = Math.max(maxU, texCoords[i * 2]);
+			maxV = Math.max(maxV, texCoords[i * 2 + 1]);
+			assertEquals(0.5F, vertices[i * 3 + 2], EPSILON);
+		}
+		assertEquals(-0.5F, minX, EPSILON);
+		assertEquals(SIZE - 0.5F, maxX, EPSILON);
+		assertEquals(SIZE, maxU, EPSILON);
+		assertEquals(SIZE, maxV, EPSILON);
+	}
+	
+	@Test
+	public void differentTexturesAreNotMerged() {
+		
+		ChunkSnapshot chunk = new ChunkSnapshot(0, 0, 0, SIZE);
+		chunk.set(0, 0, 0, 1, 0);
+		chunk.set(1, 0, 0, 2, 0);
+		
+		//The faces between the two blocks are hidden, leaving five on each.
+		ChunkMesh mesh = mesher.mesh(chunk);
+		assertEquals(2, mesh.getBatches().size());
+		assertEquals(5 * 6, mesh.getBatches().get(STONE).getNumVertices());
+		assertEquals(5 * 6, mesh.getBatches().get(DIRT).getNumVertices());
+	}
+	
+	@Test
+	public void facesAreCulledAcrossTheBorderOnlyByOpaqueBlocks() {
+		
+		ChunkSnapshot chunk = new ChunkSnapshot(0, 0, 0, SIZE);
+		chunk.set(0, 0, 0, 1, 0);
+		chunk.set(-1, 0, 0, 1, 0);
+		chunk.set(0, -1, 0, 3, 0);
+		
+		//The opaque neighbour hides the west face, but the transparent one hides nothing.
+		MeshData batch = mesher.mesh(chunk).getBatches().get(STONE);
+		assertEquals(5 * 6, batch.getNumVertices());
+		assertEquals(-1, findQuad(batch, -1, 0, 0));
+		assertTrue(findQuad(batch, 0, -1, 0) >= 0);
+	}
+	
+	/**
+	 * Checks that every triangle is wound anticlockwise when viewed from the side its normal faces.
+	 */
+	private static void assertWound(MeshData batch) {
+		
+		float[] v = batch.getVertices(), n = batch.getNormals();
+		for(int t = 0; t < batch.getNumVertices(); t += 3) {
+			
+			int a = t * 3, b = a + 3, c = a + 6;
+			float ux = v[b] - v[a], uy = v[b + 1] - v[a + 1], uz = v[b + 2] - v[a + 2];
+			float wx = v[c] - v[a], wy = v[c + 1] - v[a + 1], wz = v[c + 2] - v[a + 2];
+			
+			float dot = (uy * wz - uz * wy) * n[a]
+					+ (uz * wx - ux * wz) * n[a + 1]
+					+ (ux * wy - uy * wx) * n[a + 2];
+			assertTrue("Triangle " + t / 3 + " faces inwards.", dot > 0);
+		}
+	}
+	
+	/**
+	 * Returns the first vertex of the first quad with the given normal, or -1 if there is none.
+	 */
+	private static int findQuad(MeshData batch, float nx, float ny, float nz) {
+		
+		float[] n = batch.getNormals();
+		for(int i = 0; i < batch.getNumVertices(); i += 6) {
+			if(n[i * 3] == nx && n[i * 3 + 1] == ny && n[i * 3 + 2] == nz) return i;
+		}
+		return -1;
+	}
+	
+	private static class TestBlock extends Block {
+		
+		private final Texture texture;
+		private final boolean opaque;
+		
+		TestBlock(Texture texture, boolean opaque) {
+			this.texture = texture;
+			this.opaque = opaque;
+		}
+		
+		@Override
+		public Texture getTexture(Side side) { return texture; }
+		
+		@Override
+		public boolean isOpaque() { return opaque; }
+	}
+}
\ No newline at end of file
@@ -0,0 +1,240 @@
+package engine.voxel.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests promotion and demotion between storage formats, palette bit widths,
+ * and round trips through write() and read().
+ * @author Alec
+ */
+public class BlockStorageTest {
+	
+	private static final int VOLUME = 16 * 16 * 16;
+	
+	@Test
+	public void uniformStorageIsPromotedOnFirstDifferentBlock() {
+		
+		BlockStorage storage = new UniformStorage(VOLUME, 0, 0);
+		assertTrue(storage.set(5, 0, 0) instanceof UniformStorage);
+		
+		storage = storage.set(5, 3, 1);
+		assertTrue(storage instanceof PaletteStorage);
+		assertEquals(3, storage.getId(5));
+		assertEquals(1, storage.getData(5));
+		assertEquals(0, storage.getId(4));
+	}
+	
+	@Test
+	public void paletteStorageIsDemotedOnceOneBlockRemains() {
+		
+		BlockStorage storage = new UniformStorage(VOLUME, 0, 0).set(7, 2, 0);
+		assertFalse(storage instanceof UniformStorage);
+		
+		storage = storage.set(7, 0, 0);
+		assertTrue(storage instanceof UniformStorage);
+		assertEquals(0, storage.getId(7));
+		
+		storage = new UniformStorage(VOLUME, 0, 0).fill(0, 100, 4, 0);
+		assertTrue(storage.fill(0, VOLUME, 9, 0) instanceof UniformStorage);
+		assertTrue(storage.fill(100, VOLUME, 4, 0).isUniform());
+	}
+	
+	@Test
+	public void emptyFillChangesNothing() {
+		
+		BlockStorage uniform = new UniformStorage(VOLUME, 3, 1);
+		assertSame(uniform, uniform.fill(10, 10, 5, 0));
+		
+		//A palette storage which holds only one block.
+		BlockStorage palette = new PaletteStorage(VOLUME, 3, 1);
+		BlockStorage filled = palette.fill(10, 10, 5, 0);
+		assertSame(palette, filled);
+		assertEquals(3, filled.getId(10));
+		assertEquals(1, filled.getData(VOLUME - 1));
+		
+		//Filling part of it with the same block leaves a uniform storage of that block.
+		filled = palette.fill(0, 10, 3, 1);
+		assertEquals(3, filled.getId(0));
+		assertEquals(3, filled.getId(VOLUME - 1));
+	}
+	
+	@Test
+	public void isFilledChecksEveryVoxelInTheRange() {
+		
+		BlockStorage storage = new UniformStorage(VOLUME, 0, 0).fill(10, 20, 4, 0);
+		assertTrue(storage.isFilled(10, 20, 4, 0));
+		assertTrue(storage.isFilled(12, 15, 4, 0));
+		assertFalse(storage.isFilled(9, 20, 4, 0));
+		assertFalse(storage.isFilled(10, 21, 4, 0));
+		assertFalse(storage.isFilled(10, 20, 4, 1));
+		assertTrue(storage.isFilled(30, VOLUME, 0, 0));
+		assertTrue(storage.isFilled(5, 5, 9, 0));
+		
+		assertTrue(new UniformStorage(VOLUME, 2, 0).isFilled(0, VOLUME, 2, 0));
+		assertFalse(new UniformStorage(VOLUME, 2, 0).isFilled(0, 1, 3, 0));
+	}
+	
+	@Test
+	public void bitWidthGrowsWithThePalette() {
+		
+		PaletteStorage storage = new PaletteStorage(VOLUME, 0, 0);
+		int bits = storage.getBits();
+		
+		for(int i = 1; i < 300; i++) {
+			assertTrue(storage.set(i, i, 0) == storage);
+		}
+		
+		assertTrue(storage.getBits() > bits);
+		assertTrue(1 << storage.getBits() >= 300);
+		assertEquals(300, storage.getPaletteSize());
+		
+		for(int i = 0; i < 300; i++) assertEquals(i, storage.getId(i));
+	}
+	
+	@Test
+	public void unusedPaletteEntriesAreReclaimedBeforeGrowing() {
+		
+		PaletteStorage storage = new PaletteStorage(VOLUME, 0, 0);
+		for(int id = 1; id < 4; id++) storage.set(0, id, 0);
+		int bits = storage.getBits();
+		
+		//Only ever two blocks in use at once, so the width needn't grow any further.
+		for(int id = 4; id < 1000; id++) storage.set(0, id, 0);
+		
+		assertEquals(bits, storage.getBits());
+		assertEquals(2, storage.getPaletteSize());
+		assertEquals(999, storage.getId(0));
+		assertEquals(0, storage.getId(1));
+	}
+	
+	@Test
+	public void storageMatchesReferenceUnderRandomEdits() {
+		
+		Random random = new Random(1);
+		int[] ids = new int[VOLUME], data = new int[VOLUME];
+		BlockStorage storage = new UniformStorage(VOLUME, 0, 0);
+		
+		for(int n = 0; n < 20000; n++) {
+			
+			int from = random.nextInt(VOLUME);
+			int id = random.nextInt(random.nextBoolean() ? 4 : 200), value = random.nextInt(3);
+			
+			if(random.nextInt(50) == 0) {
+				int to = from + random.nextInt(VOLUME - from) + 1;
+				storage = storage.fill(from, to, id, value);
+				for(int i = from; i < to; i++) {
+					ids[i] = id;
+					data[i] = value;
+				}
+			} else {
+				storage = storage.set(from, id, value);
+				ids[from] = id;
+				data[from] = value;
+			}
+		}
+		
+		for(int i = 0; i < VOLUME; i++) {
+			assertEquals(ids[i], storage.getId(i));
+			assertEquals(data[i], storage.getData(i));
+		}
+	}
+	
+	@Test
+	public void uniformStorageRoundTrips() throws IOException {
+		
+		BlockStorage read = roundTrip(new UniformStorage(VOLUME, 6, 2));
+		assertTrue(read instanceof UniformStorage);
+		assertEquals(6, read.getId(100));
+		assertEquals(2, read.getData(100));
+	}
+	
+	@Test
+	public void paletteStorageRoundTrips() throws IOException {
+		
+		Random random = new Random(2);
+		BlockStorage storage = new UniformStorage(VOLUME, 0, 0);
+		for(int i = 0; i < VOLUME; i++) storage = storage.set(i, random.nextInt(40), random.nextInt(2));
+		
+		BlockStorage read = roundTrip(storage);
+		for(int i = 0; i < VOLUME; i++) {
+			assertEquals(storage.getId(i), read.getId(i));
+			assertEquals(storage.getData(i), read.getData(i));
+		}
+		
+		//The counts are rebuilt on reading, so demotion still works afterwards.
+		BlockStorage small = roundTrip(new UniformStorage(VOLUME, 0, 0).set(3, 1, 0));
+		assertTrue(small.set(3, 0, 0) instanceof UniformStorage);
+	}
+	
+	@Test(expected = IOException.class)
+	public void outOfRangePaletteIndexIsRejected() throws IOException {
+		
+		//Three blocks need two bits each, so index 3 is past the end of the palette.
+		BlockStorage storage = new UniformStorage(VOLUME, 0, 0).set(0, 1, 0).set(1, 2, 0);
+		byte[] bytes = write(storage);
+		
+		//Format, bit width and palette size, followed by the palette itself.
+		int words = 6 + 8 * ByteBuffer.wrap(bytes, 2, 4).getInt();
+		for(int i = 0; i < 8; i++) bytes[words + i] = (byte) 0xFF;
+		
+		BlockStorage.read(ByteBuffer.wrap(bytes), VOLUME);
+	}
+	
+	@Test(expected = IOException.class)
+	public void negativePaletteIndexIsRejected() throws IOException {
+		
+		//At 32 bits, an index with the top bit set would be read as negative.
+		ByteBuffer buffer = ByteBuffer.allocate(6 + 2 * 8 + VOLUME * 4);
+		buffer.put(BlockStorage.PALETTE).put((byte) 32).putInt(2);
+		buffer.putInt(0).putInt(0).putInt(1).putInt(0);
+		buffer.putLong(0xFFFFFFFFL);
+		buffer.rewind();
+		
+		BlockStorage.read(buffer, VOLUME);
+	}
+	
+	@Test(expected = IOException.class)
+	public void oversizedPaletteIsRejected() throws IOException {
+		
+		//Claims far more entries than there are voxels or bytes, which mustn't be allocated.
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put(BlockStorage.PALETTE).put((byte) 32).putInt(Integer.MAX_VALUE);
+		buffer.rewind();
+		
+		BlockStorage.read(buffer, VOLUME);
+	}
+	
+	@Test(expected = IOException.class)
+	public void truncatedStorageIsRejected() throws IOException {
+		
+		byte[] bytes = write(new UniformStorage(VOLUME, 0, 0).set(0, 1, 0));
+		BlockStorage.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1).slice(), VOLUME);
+	}
+	
+	@Test(expected = IOException.class)
+	public void unknownFormatIsRejected() throws IOException {
+		BlockStorage.read(ByteBuffer.wrap(new byte[] {42, 0, 0, 0, 0}), VOLUME);
+	}
+	
+	private static BlockStorage roundTrip(BlockStorage storage) throws IOException {
+		return BlockStorage.read(ByteBuffer.wrap(write(storage)), VOLUME);
+	}
+	
+	private static byte[] write(BlockStorage storage) throws IOException {
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		storage.write(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+}
\ No newline at end of file